@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.benchmark;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.index.Index;
+import org.apache.cassandra.service.ElassandraDaemon;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.network.NetworkModule;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.node.InternalSettingsPreparer;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeValidationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Single node elassandra embedded in the benchmark JVM, without client transports (no native protocol, no thrift, no http,
+ * local elasticsearch transport), so that benchmarks measure the elassandra code paths rather than the network.
+ *
+ * The node is started once per forked JVM in a temporary directory, unless the cassandra.* system properties
+ * used by the elassandra tests are provided. The default configuration from conf/cassandra.yaml has 256 vnodes.
+ */
+public final class EmbeddedElassandra {
+
+    private static final String[] CONF_FILES = new String[] { "cassandra.yaml", "cassandra-rackdc.properties", "logback.xml" };
+
+    private EmbeddedElassandra() {
+        throw new AssertionError("Do not instantiate");
+    }
+
+    public static synchronized Node node() throws Exception {
+        if (ElassandraDaemon.instance == null)
+            start();
+        return ElassandraDaemon.instance.node();
+    }
+
+    public static ClusterService clusterService() throws Exception {
+        return node().clusterService();
+    }
+
+    public static UntypedResultSet process(String query, Object... values) throws Exception {
+        return clusterService().process(ConsistencyLevel.ONE, query, values);
+    }
+
+    /**
+     * Create (or recreate) an index on the keyspace of the same name and wait for it.
+     */
+    public static void createIndex(String index) throws Exception {
+        Node node = node();
+        if (node.client().admin().indices().prepareExists(index).get().isExists())
+            node.client().admin().indices().prepareDelete(index).get();
+        node.client().admin().indices().prepareCreate(index)
+            .setSettings(Settings.builder().put("index.number_of_replicas", 0).put("index.refresh_interval", -1))
+            .get();
+        ClusterHealthResponse health = node.client().admin().cluster().prepareHealth(index).setWaitForGreenStatus().get();
+        if (health.isTimedOut())
+            throw new IllegalStateException("index [" + index + "] not started");
+    }
+
+    /**
+     * Put a mapping for a table of the index keyspace, usually a discover mapping of a table created with {@link #process(String, Object...)}.
+     */
+    public static IndexService putMapping(String index, String type, String mapping) throws Exception {
+        Node node = node();
+        node.client().admin().indices().preparePutMapping(index).setType(type).setSource(mapping).get();
+        return node.clusterService().getIndicesService().indexServiceSafe(node.clusterService().state().metaData().index(index).getIndex());
+    }
+
+    public static ElasticSecondaryIndex secondaryIndex(String ksName, String cfName) {
+        ColumnFamilyStore cfs = Keyspace.open(ksName).getColumnFamilyStore(cfName);
+        for(Index index : cfs.indexManager.listIndexes()) {
+            if (index instanceof ElasticSecondaryIndex)
+                return (ElasticSecondaryIndex) index;
+        }
+        throw new IllegalStateException("No elasticsearch index on table " + ksName + "." + cfName);
+    }
+
+    private static void start() throws Exception {
+        if (System.getProperty("cassandra.config") == null) {
+            Path home = Files.createTempDirectory("elassandra-benchmarks");
+            Path conf = Files.createDirectories(home.resolve("conf"));
+            for(String file : CONF_FILES) {
+                try (InputStream is = EmbeddedElassandra.class.getResourceAsStream("/conf/" + file)) {
+                    Files.copy(is, conf.resolve(file), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            System.setProperty("cassandra.home", home.toString());
+            System.setProperty("cassandra.logdir", home.toString());
+            System.setProperty("cassandra.storagedir", home.toString());
+            System.setProperty("cassandra.config.dir", conf.toString());
+            System.setProperty("cassandra.config", conf.resolve("cassandra.yaml").toUri().toString());
+            System.setProperty("cassandra-rackdc.properties", conf.resolve("cassandra-rackdc.properties").toUri().toString());
+            System.setProperty("cassandra.config.loader", "org.elassandra.config.YamlTestConfigurationLoader");
+            System.setProperty("logback.configurationFile", conf.resolve("logback.xml").toString());
+            System.setProperty("cassandra.ring_delay_ms", "0");
+        }
+
+        DatabaseDescriptor.daemonInitialization();
+        DatabaseDescriptor.createAllDirectories();
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        ElassandraDaemon.instance = new ElassandraDaemon(InternalSettingsPreparer.prepareEnvironment(Settings.builder()
+                .put(Environment.PATH_HOME_SETTING.getKey(), System.getProperty("cassandra.home"))
+                .put(Environment.PATH_CONF_SETTING.getKey(), System.getProperty("cassandra.config.dir"))
+                .build(), null)) {
+            @Override
+            public Settings nodeSettings(Settings settings) {
+                return Settings.builder()
+                    .put(Environment.PATH_HOME_SETTING.getKey(), System.getProperty("cassandra.home"))
+                    .put(Environment.PATH_CONF_SETTING.getKey(), System.getProperty("cassandra.config.dir"))
+                    .put(Environment.PATH_DATA_SETTING.getKey(), DatabaseDescriptor.getAllDataFileLocations()[0] + File.separatorChar + "elasticsearch.data")
+                    .put(NetworkModule.TRANSPORT_TYPE_KEY, NetworkModule.LOCAL_TRANSPORT)
+                    .put(NetworkModule.HTTP_ENABLED.getKey(), false)
+                    .put("client.type", "node")
+                    .put(settings)
+                    .build();
+            }
+
+            @Override
+            public void ringReady() {
+                startLatch.countDown();
+            }
+        };
+
+        Settings settings = ElassandraDaemon.instance.nodeSettings(Settings.EMPTY);
+        ElassandraDaemon.instance.activate(false, false, settings, new Environment(settings), Collections.emptyList());
+        startLatch.await();
+
+        Node node = ElassandraDaemon.instance.newNode(settings, Collections.emptyList());
+        try {
+            node.activate();
+            node.start();
+        } catch (NodeValidationException e) {
+            throw new IOException(e);
+        }
+        ClusterHealthResponse health = node.client().admin().cluster().prepareHealth().setWaitForGreenStatus().get();
+        if (health.isTimedOut())
+            throw new IllegalStateException("elassandra node not started");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.benchmark;
+
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetch phase conversion of a CQL row into the document source map ({@link ClusterService#rowAsMap}) and the JSON _source
+ * ({@link ClusterService#source}), for a flat document and a document with a nested UDT.
+ */
+@Fork(2)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class FetchSourceBenchmark {
+
+    public int numRows = 256;
+
+    private ClusterService clusterService;
+    private IndexService indexService;
+    private DocumentMapper docMapper;
+    private List<UntypedResultSet.Row> rows;
+    private List<Map<String, Object>> maps;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedElassandra.createIndex("fetch");
+        EmbeddedElassandra.process("CREATE TYPE fetch.address (street text, city text, zip int)");
+        EmbeddedElassandra.process("CREATE TABLE fetch.doc (id text PRIMARY KEY, name text, tags list<text>, count int, price double, "
+            + "ts timestamp, address frozen<address>)");
+        indexService = EmbeddedElassandra.putMapping("fetch", "doc", "{ \"doc\" : { \"discover\" : \".*\" }}");
+        clusterService = EmbeddedElassandra.clusterService();
+        docMapper = indexService.mapperService().documentMapper("doc");
+
+        for (int i = 0; i < numRows; i++) {
+            EmbeddedElassandra.process("INSERT INTO fetch.doc (id, name, tags, count, price, ts, address) VALUES (?, ?, ['a', 'b', 'c'], ?, ?, toTimestamp(now()), "
+                + "{ street : 'main street', city : 'paris', zip : 75000 })", Integer.toString(i), "name" + i, i, i * 1.5);
+        }
+
+        rows = new ArrayList<>(numRows);
+        maps = new ArrayList<>(numRows);
+        for (UntypedResultSet.Row row : EmbeddedElassandra.process("SELECT * FROM fetch.doc")) {
+            rows.add(row);
+            maps.add(clusterService.rowAsMap(indexService, "doc", row));
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> measureRowAsMap() throws Exception {
+        return clusterService.rowAsMap(indexService, "doc", rows.get(next++ % rows.size()));
+    }
+
+    @Benchmark
+    public BytesReference measureSource() throws Exception {
+        int i = next++ % maps.size();
+        return clusterService.source(indexService, docMapper, maps.get(i), rows.get(i).getString("id"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.benchmark;
+
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.index.Index;
+import org.apache.cassandra.index.transactions.IndexTransaction;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexing of a cassandra row by the {@link ElasticSecondaryIndex} indexer, as called by the cassandra write path:
+ * rowcument build, document parsing (buildContext) and lucene indexing, without the commitlog and memtable writes.
+ *
+ * Run with <code>-prof gc</code> to check the allocation rate per indexed row.
+ */
+@Fork(2)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class IndexingBenchmark {
+
+    @Param({"skinny", "wide"})
+    public String table = "skinny";
+
+    public int numRows = 1024;
+
+    private ElasticSecondaryIndex index;
+    private PartitionUpdate[] updates;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedElassandra.createIndex("indexing");
+        if ("skinny".equals(table)) {
+            EmbeddedElassandra.process("CREATE TABLE indexing.skinny (id int PRIMARY KEY, name text, count int, price double, ts timestamp)");
+        } else {
+            EmbeddedElassandra.process("CREATE TABLE indexing.wide (id int, seq int, name text, count int, price double, ts timestamp, "
+                + "PRIMARY KEY (id, seq))");
+        }
+        EmbeddedElassandra.putMapping("indexing", table, "{ \"" + table + "\" : { \"discover\" : \".*\" }}");
+        index = EmbeddedElassandra.secondaryIndex("indexing", table);
+
+        updates = new PartitionUpdate[numRows];
+        for (int i = 0; i < numRows; i++) {
+            PartitionUpdate.SimpleBuilder builder = PartitionUpdate.simpleBuilder(Keyspace.open("indexing").getColumnFamilyStore(table).metadata, i);
+            Row.SimpleBuilder row = ("skinny".equals(table)) ? builder.row() : builder.row(i % 16);
+            row.add("name", "name" + i).add("count", i).add("price", i * 1.5).add("ts", new Date(1500000000000L + i));
+            updates[i] = builder.build();
+        }
+    }
+
+    @Benchmark
+    public void measureInsertRow() {
+        final PartitionUpdate update = updates[next++ % numRows];
+        try (OpOrder.Group opGroup = Keyspace.writeOrder.start()) {
+            Index.Indexer indexer = index.indexerFor(update.partitionKey(), update.columns(), FBUtilities.nowInSeconds(), opGroup,
+                IndexTransaction.Type.UPDATE);
+            indexer.begin();
+            for (Row row : update)
+                indexer.insertRow(row);
+            indexer.finish();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.benchmark;
+
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.service.StorageService;
+import org.elassandra.cluster.routing.AbstractSearchStrategy;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.index.Index;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of the search {@link AbstractSearchStrategy.Router} of an index, done on each ring or shard state change.
+ * The ring of the embedded node (256 vnodes) is extended with fake endpoints of 256 vnodes each, which are not members
+ * of the local datacenter, so that natural endpoints are computed over a large ring.
+ */
+@Fork(2)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class RouterBenchmark {
+
+    @Param({"PrimaryFirstSearchStrategy", "RandomSearchStrategy"})
+    public String strategy = "PrimaryFirstSearchStrategy";
+
+    // number of nodes in the ring, including the embedded node.
+    @Param({"1", "10", "50"})
+    public int nodes = 10;
+
+    public int numTokens = 256;
+
+    private AbstractSearchStrategy searchStrategy;
+    private ClusterState clusterState;
+    private Index index;
+    private List<InetAddress> fakeEndpoints = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedElassandra.createIndex("router");
+        searchStrategy = AbstractSearchStrategy.getSearchStrategyClass(strategy).newInstance();
+        clusterState = EmbeddedElassandra.clusterService().state();
+        index = clusterState.metaData().index("router").getIndex();
+
+        Random random = new Random(0);
+        for (int i = 1; i < nodes; i++) {
+            InetAddress endpoint = InetAddress.getByAddress(new byte[] { 127, 0, 1, (byte) i });
+            List<Token> tokens = new ArrayList<>(numTokens);
+            for (int j = 0; j < numTokens; j++)
+                tokens.add(new LongToken(random.nextLong()));
+            StorageService.instance.getTokenMetadata().updateNormalTokens(tokens, endpoint);
+            fakeEndpoints.add(endpoint);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (InetAddress endpoint : fakeEndpoints)
+            StorageService.instance.getTokenMetadata().removeEndpoint(endpoint);
+    }
+
+    @Benchmark
+    public AbstractSearchStrategy.Router measureNewRouter() {
+        return searchStrategy.newRouter(index, "router", (i, uuid) -> ShardRoutingState.STARTED, clusterState);
+    }
+}
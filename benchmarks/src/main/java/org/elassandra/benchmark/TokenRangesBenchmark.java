@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.benchmark;
+
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.service.StorageService;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BitSet;
+import org.elassandra.cluster.routing.AbstractSearchStrategy;
+import org.elassandra.index.search.TokenRangesBitsetFilterCache;
+import org.elassandra.index.search.TokenRangesBitsetProducer;
+import org.elassandra.index.search.TokenRangesService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token ranges filtering of a search request on a node owning 1/nodes of a 256 vnodes ring:
+ * token ranges query build ({@link TokenRangesService#getTokenRangesQuery}, cached or not) and
+ * per segment bitset computation ({@link TokenRangesBitsetProducer#getBitSet}, cached or not).
+ */
+@Fork(2)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class TokenRangesBenchmark {
+
+    // number of nodes sharing the ring, the benchmarked node owns one range out of nodes.
+    @Param({"1", "3", "10"})
+    public int nodes = 3;
+
+    public int numDocs = 20000;
+
+    private List<Range<Token>> tokenRanges;
+    private TokenRangesService cachedService;
+    private TokenRangesBitsetFilterCache bitsetFilterCache;
+    private Engine.Searcher searcher;
+    private Query query;
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedElassandra.createIndex("ranges");
+        EmbeddedElassandra.process("CREATE TABLE ranges.doc (id int PRIMARY KEY, name text)");
+        IndexService indexService = EmbeddedElassandra.putMapping("ranges", "doc", "{ \"doc\" : { \"discover\" : \".*\" }}");
+        for (int i = 0; i < numDocs; i++) {
+            EmbeddedElassandra.process("INSERT INTO ranges.doc (id, name) VALUES (?, ?)", i, "name" + i);
+            if (i % (numDocs / 8) == 0)
+                EmbeddedElassandra.node().client().admin().indices().prepareRefresh("ranges").get();
+        }
+        EmbeddedElassandra.node().client().admin().indices().prepareRefresh("ranges").get();
+
+        // ranges of the local 256 vnodes ring, one out of nodes.
+        List<Token> tokens = new ArrayList<>(StorageService.instance.getTokenMetadata().sortedTokens());
+        tokens.add(AbstractSearchStrategy.TOKEN_MAX);
+        tokenRanges = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i += nodes)
+            tokenRanges.add(new Range<>(i == 0 ? AbstractSearchStrategy.TOKEN_MIN : tokens.get(i - 1), tokens.get(i)));
+
+        cachedService = EmbeddedElassandra.clusterService().tokenRangesService();
+        query = cachedService.getTokenRangesQuery(tokenRanges);
+        bitsetFilterCache = indexService.cache().tokenRangeBitsetFilterCache();
+        searcher = indexService.getShard(0).acquireSearcher("benchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        searcher.close();
+    }
+
+    @Benchmark
+    public Query measureTokenRangesQuery() {
+        return new TokenRangesService(Settings.EMPTY).getTokenRangesQuery(tokenRanges);
+    }
+
+    @Benchmark
+    public Query measureCachedTokenRangesQuery() {
+        return cachedService.getTokenRangesQuery(new ArrayList<>(tokenRanges));
+    }
+
+    @Benchmark
+    public int measureBitSet() throws Exception {
+        TokenRangesBitsetProducer producer = new TokenRangesBitsetProducer(bitsetFilterCache, query);
+        int length = 0;
+        for (LeafReaderContext leaf : searcher.reader().leaves()) {
+            BitSet bitset = producer.getBitSet(leaf);
+            if (bitset != null)
+                length += bitset.length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int measureCachedBitSet() throws Exception {
+        int length = 0;
+        for (LeafReaderContext leaf : searcher.reader().leaves()) {
+            BitSet bitset = bitsetFilterCache.getBitSet(query, leaf);
+            if (bitset != null)
+                length += bitset.length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.benchmark;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elasticsearch index requests translated into CQL inserts by the {@link ClusterService}, including the CQL execution
+ * and the synchronous indexing by the elasticsearch secondary index.
+ */
+@Fork(2)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class UpsertDocumentBenchmark {
+
+    public int numDocs = 1024;
+
+    private ClusterService clusterService;
+    private IndexMetaData indexMetaData;
+    private IndexRequest[] requests;
+    private Map<String, ByteBuffer> map;
+    private ByteBuffer[] values;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedElassandra.createIndex("upsert");
+        EmbeddedElassandra.putMapping("upsert", "doc",
+            "{ \"doc\" : { \"properties\" : { "
+            + "\"name\" : { \"type\" : \"keyword\", \"cql_collection\" : \"singleton\" }, "
+            + "\"count\" : { \"type\" : \"integer\", \"cql_collection\" : \"singleton\" }, "
+            + "\"price\" : { \"type\" : \"double\", \"cql_collection\" : \"singleton\" } }}}");
+        clusterService = EmbeddedElassandra.clusterService();
+        indexMetaData = clusterService.state().metaData().index("upsert");
+
+        requests = new IndexRequest[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            requests[i] = new IndexRequest("upsert", "doc", Integer.toString(i))
+                .source("{ \"name\" : \"name" + i + "\", \"count\" : " + i + ", \"price\" : " + (i * 1.5) + " }", XContentType.JSON);
+        }
+
+        map = new LinkedHashMap<>();
+        map.put("_id", ByteBufferUtil.bytes("1"));
+        map.put("name", ByteBufferUtil.bytes("name1"));
+        map.put("count", ByteBufferUtil.bytes(1));
+        map.put("price", ByteBufferUtil.bytes(1.5));
+        values = new ByteBuffer[map.size()];
+    }
+
+    @Benchmark
+    public void measureInsertDocument() throws Exception {
+        clusterService.insertDocument(clusterService.getIndicesService(), requests[next++ % numDocs], indexMetaData);
+    }
+
+    @Benchmark
+    public String measureBuildInsertQuery() throws Exception {
+        return clusterService.buildInsertQuery("upsert", "doc", map, "1", false, null, null, values, 0);
+    }
+}
@@ -19,6 +19,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.Keyspace;
 import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
 import org.apache.cassandra.dht.Range;
@@ -76,11 +77,13 @@ public abstract class AbstractSearchStrategy {
     public abstract Router newRouter(final Index index, final String ksName, BiFunction<Index, UUID, ShardRoutingState> shardsFunc, final ClusterState clusterState);
     
     // per index router, updated on each cassandra ring change.
+    // Routes only include nodes of the local datacenter, token ranges without a started local replica are unassigned (red).
     public abstract class Router {
         final Index index;
         final String ksName;
         final long version;
         final DiscoveryNode localNode;
+        final String localDc;
         final BiFunction<Index, UUID, ShardRoutingState> shardsFunc;
         
         protected Multimap<Token,DiscoveryNode> tokenToNodes = ArrayListMultimap.create();
@@ -99,6 +102,7 @@ public abstract class AbstractSearchStrategy {
             this.ksName = ksName;
             this.version = clusterState.version();
             this.localNode = clusterState.nodes().getLocalNode();
+            this.localDc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress());
             this.shardsFunc = shardsFunc;
             
             if (isRoutable(clusterState)) {
@@ -110,7 +114,7 @@ public abstract class AbstractSearchStrategy {
                     if (endpoint == null) {
                         endpoint = this.metadata.getEndpointForHostId(node.uuid());
                     }
-                    if (endpoint != null && this.metadata.isMember(endpoint)) {
+                    if (endpoint != null && this.metadata.isMember(endpoint) && isLocalDc(endpoint)) {
                         for(Token token : this.metadata.getTokens(endpoint)) 
                             this.tokenToNodes.put(token, node);
                     }
@@ -127,6 +131,7 @@ public abstract class AbstractSearchStrategy {
                 logger.trace("index=[{}] keyspace=[{}] ordered tokens={}",index, ksName, this.tokens);
             
             int i=0;
+            int remoteOnlyRanges = 0;
             this.greenShards = new HashMap<DiscoveryNode, BitSet>();
             for(Token token: tokens) {
                 if (TOKEN_MIN.equals(token))
@@ -134,7 +139,13 @@ public abstract class AbstractSearchStrategy {
 
                 // greenshard = available node -> token range bitset, 
                 boolean orphanRange = true;
+                boolean remoteReplica = false;
                 for(InetAddress endpoint :  (this.metadata == null) ? Collections.singletonList(localNode.getNameAsInetAddress()) : this.strategy.calculateNaturalEndpoints(token, this.metadata)) {
+                    if (this.metadata != null && !isLocalDc(endpoint)) {
+                        // never route a search to another datacenter.
+                        remoteReplica = true;
+                        continue;
+                    }
                     UUID uuid = StorageService.instance.getHostId(endpoint);
                     DiscoveryNode node =  (uuid == null) ? clusterState.nodes().findByInetAddress(endpoint) : clusterState.nodes().get(uuid.toString());
                     if (node != null && node.status() == DiscoveryNode.DiscoveryNodeStatus.ALIVE) {
@@ -155,6 +166,8 @@ public abstract class AbstractSearchStrategy {
                 // redshards = unavailable node->token range bitset, 
                 if (orphanRange && isRoutable(clusterState)) {
                     isConsistent = false;
+                    if (remoteReplica)
+                        remoteOnlyRanges++;
                     if (redShards == null) 
                         redShards = new HashMap<DiscoveryNode, BitSet>();
                     for(DiscoveryNode node : tokenToNodes.get(token)) {
@@ -172,6 +185,9 @@ public abstract class AbstractSearchStrategy {
             // yellow shards = unavailable nodes hosting token range available somewhere else in greenShards.
             if (isRoutable(clusterState)) {
                 for(DiscoveryNode node : clusterState.nodes()) {
+                    InetAddress endpoint = node.getNameAsInetAddress();
+                    if (endpoint != null && !isLocalDc(endpoint))
+                        continue;
                     if (!this.greenShards.containsKey(node) && (this.redShards == null || !this.redShards.containsKey(node))) {
                         if (this.yellowShards == null) {
                             this.yellowShards  = new ArrayList<DiscoveryNode>();
@@ -181,10 +197,16 @@ public abstract class AbstractSearchStrategy {
                 }
             }
             
+            if (remoteOnlyRanges > 0)
+                logger.debug("index=[{}] keyspace=[{}] {} token ranges only available in other datacenters than [{}] are not searched", index, ksName, remoteOnlyRanges, localDc);
             if (logger.isTraceEnabled())
                 logger.trace("index=[{}] keyspace=[{}] isConsistent={} greenShards={} redShards={} yellowShards={}",index, ksName, this.isConsistent, this.greenShards, this.redShards, this.yellowShards);
         }
         
+        public boolean isLocalDc(InetAddress endpoint) {
+            return localDc.equals(DatabaseDescriptor.getEndpointSnitch().getDatacenter(endpoint));
+        }
+        
         public abstract Route newRoute(@Nullable String preference, TransportAddress src);
 
         public boolean isConsistent() {
@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.ByteType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.FloatType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.ShortType;
+import org.apache.cassandra.db.marshal.SimpleDateType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.serializers.SimpleDateSerializer;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.index.mapper.BooleanFieldMapper;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.KeywordFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the lucene fields of a single-valued CQL column directly from the cell value, without composing a java object.
+ * Available for numeric, date, boolean and non-stored keyword fields when the CQL type matches the field type, the field has no multi-fields
+ * nor copy_to, and the _all field is disabled. Fields are created once by each indexing thread and updated for the following documents.
+ */
+public abstract class CellWriter {
+    protected final String name;
+    protected final AbstractType<?> type;
+    protected final boolean indexed;
+    protected final boolean docValued;
+    protected final boolean stored;
+
+    protected CellWriter(MappedFieldType fieldType, AbstractType<?> type) {
+        this.name = fieldType.name();
+        this.type = type;
+        this.indexed = fieldType.indexOptions() != IndexOptions.NONE;
+        this.docValued = fieldType.hasDocValues();
+        this.stored = fieldType.stored();
+    }
+
+    /**
+     * @return the reusable fields written for each document.
+     */
+    public abstract Field[] newFields();
+
+    /**
+     * Update fields with the cell value.
+     * @return false when the value must be composed and indexed through the field mapper (ex: an invalid number or an ignored keyword).
+     */
+    protected abstract boolean setValue(Field[] fields, ByteBuffer value);
+
+    /**
+     * Add the fields of the cell value to the document.
+     * @return false when fields are not written.
+     */
+    public boolean write(ParseContext.Document doc, Field[] fields, ByteBuffer value) {
+        if (!setValue(fields, value))
+            return false;
+        for(Field field : fields)
+            doc.add(field);
+        return true;
+    }
+
+    /**
+     * Compose the cell value for the field mapper.
+     */
+    public Object compose(ByteBuffer value) throws IOException {
+        return ClusterService.deserialize(type, value);
+    }
+
+    /**
+     * @return a writer for the column type and the field mapper, or null if not available.
+     */
+    public static CellWriter of(Mapper mapper, AbstractType<?> type, boolean allEnabled) {
+        if (allEnabled || !(mapper instanceof FieldMapper))
+            return null;
+        final FieldMapper fieldMapper = (FieldMapper) mapper;
+        if (fieldMapper.iterator().hasNext() || !fieldMapper.copyTo().copyToFields().isEmpty())
+            return null;
+
+        if (mapper.getClass() == NumberFieldMapper.class) {
+            final String numberType = fieldMapper.fieldType().typeName();
+            if ((type == LongType.instance && numberType.equals("long")) ||
+                (type == Int32Type.instance && numberType.equals("integer")) ||
+                (type == ShortType.instance && numberType.equals("short")) ||
+                (type == ByteType.instance && numberType.equals("byte")))
+                return new IntegralCellWriter(fieldMapper.fieldType(), type, numberType.equals("long"));
+            if (type == DoubleType.instance && numberType.equals("double"))
+                return new DoubleCellWriter(fieldMapper.fieldType(), type);
+            if (type == FloatType.instance && numberType.equals("float"))
+                return new FloatCellWriter(fieldMapper.fieldType(), type);
+        } else if (mapper.getClass() == DateFieldMapper.class) {
+            if (type == TimestampType.instance || type == SimpleDateType.instance)
+                return new DateCellWriter(fieldMapper.fieldType(), type);
+        } else if (mapper.getClass() == BooleanFieldMapper.class) {
+            if (type == BooleanType.instance)
+                return new BooleanCellWriter(fieldMapper.fieldType(), type);
+        } else if (mapper.getClass() == KeywordFieldMapper.class) {
+            final KeywordFieldMapper keywordMapper = (KeywordFieldMapper) mapper;
+            // a stored keyword must be stored as a string, not as the UTF-8 bytes.
+            if ((type == UTF8Type.instance || type == AsciiType.instance) && keywordMapper.fieldType().normalizer() == null && !keywordMapper.fieldType().stored())
+                return new KeywordCellWriter(keywordMapper.fieldType(), type, keywordMapper.ignoreAbove());
+        }
+        return null;
+    }
+
+    /**
+     * long, integer, short and byte fields.
+     */
+    static class IntegralCellWriter extends CellWriter {
+        final boolean isLong;
+
+        IntegralCellWriter(MappedFieldType fieldType, AbstractType<?> type, boolean isLong) {
+            super(fieldType, type);
+            this.isLong = isLong;
+        }
+
+        @Override
+        public Field[] newFields() {
+            List<Field> fields = new ArrayList<>(3);
+            if (indexed)
+                fields.add(isLong ? new LongPoint(name, 0L) : new IntPoint(name, 0));
+            if (docValued)
+                fields.add(new SortedNumericDocValuesField(name, 0L));
+            if (stored)
+                fields.add(isLong ? new StoredField(name, 0L) : new StoredField(name, 0));
+            return fields.toArray(new Field[fields.size()]);
+        }
+
+        @Override
+        protected boolean setValue(Field[] fields, ByteBuffer value) {
+            final long v;
+            if (type == LongType.instance) {
+                if (value.remaining() != 8)
+                    return false;
+                v = value.getLong(value.position());
+            } else if (type == Int32Type.instance) {
+                if (value.remaining() != 4)
+                    return false;
+                v = value.getInt(value.position());
+            } else if (type == ShortType.instance) {
+                if (value.remaining() != 2)
+                    return false;
+                v = value.getShort(value.position());
+            } else {
+                if (value.remaining() != 1)
+                    return false;
+                v = value.get(value.position());
+            }
+            for(Field field : fields) {
+                if (isLong || field instanceof SortedNumericDocValuesField)
+                    field.setLongValue(v);
+                else
+                    field.setIntValue((int) v);
+            }
+            return true;
+        }
+    }
+
+    static class DoubleCellWriter extends CellWriter {
+
+        DoubleCellWriter(MappedFieldType fieldType, AbstractType<?> type) {
+            super(fieldType, type);
+        }
+
+        @Override
+        public Field[] newFields() {
+            List<Field> fields = new ArrayList<>(3);
+            if (indexed)
+                fields.add(new DoublePoint(name, 0d));
+            if (docValued)
+                fields.add(new SortedNumericDocValuesField(name, 0L));
+            if (stored)
+                fields.add(new StoredField(name, 0d));
+            return fields.toArray(new Field[fields.size()]);
+        }
+
+        @Override
+        protected boolean setValue(Field[] fields, ByteBuffer value) {
+            if (value.remaining() != 8)
+                return false;
+            final double v = value.getDouble(value.position());
+            if (!Double.isFinite(v))
+                return false;
+            for(Field field : fields) {
+                if (field instanceof SortedNumericDocValuesField)
+                    field.setLongValue(NumericUtils.doubleToSortableLong(v));
+                else
+                    field.setDoubleValue(v);
+            }
+            return true;
+        }
+    }
+
+    static class FloatCellWriter extends CellWriter {
+
+        FloatCellWriter(MappedFieldType fieldType, AbstractType<?> type) {
+            super(fieldType, type);
+        }
+
+        @Override
+        public Field[] newFields() {
+            List<Field> fields = new ArrayList<>(3);
+            if (indexed)
+                fields.add(new FloatPoint(name, 0f));
+            if (docValued)
+                fields.add(new SortedNumericDocValuesField(name, 0L));
+            if (stored)
+                fields.add(new StoredField(name, 0f));
+            return fields.toArray(new Field[fields.size()]);
+        }
+
+        @Override
+        protected boolean setValue(Field[] fields, ByteBuffer value) {
+            if (value.remaining() != 4)
+                return false;
+            final float v = value.getFloat(value.position());
+            if (!Float.isFinite(v))
+                return false;
+            for(Field field : fields) {
+                if (field instanceof SortedNumericDocValuesField)
+                    field.setLongValue(NumericUtils.floatToSortableInt(v));
+                else
+                    field.setFloatValue(v);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * date fields from CQL timestamp or date columns, as epoch milliseconds.
+     */
+    static class DateCellWriter extends CellWriter {
+
+        DateCellWriter(MappedFieldType fieldType, AbstractType<?> type) {
+            super(fieldType, type);
+        }
+
+        @Override
+        public Field[] newFields() {
+            List<Field> fields = new ArrayList<>(3);
+            if (indexed)
+                fields.add(new LongPoint(name, 0L));
+            if (docValued)
+                fields.add(new SortedNumericDocValuesField(name, 0L));
+            if (stored)
+                fields.add(new StoredField(name, 0L));
+            return fields.toArray(new Field[fields.size()]);
+        }
+
+        @Override
+        protected boolean setValue(Field[] fields, ByteBuffer value) {
+            final long v;
+            if (type == TimestampType.instance) {
+                if (value.remaining() != 8)
+                    return false;
+                v = value.getLong(value.position());
+            } else {
+                if (value.remaining() != 4)
+                    return false;
+                v = SimpleDateSerializer.dayToTimeInMillis(value.getInt(value.position()));
+            }
+            for(Field field : fields)
+                field.setLongValue(v);
+            return true;
+        }
+    }
+
+    static class BooleanCellWriter extends CellWriter {
+        final MappedFieldType fieldType;
+
+        BooleanCellWriter(MappedFieldType fieldType, AbstractType<?> type) {
+            super(fieldType, type);
+            this.fieldType = fieldType;
+        }
+
+        @Override
+        public Field[] newFields() {
+            List<Field> fields = new ArrayList<>(2);
+            if (indexed || stored)
+                fields.add(new Field(name, "F", fieldType));
+            if (docValued)
+                fields.add(new SortedNumericDocValuesField(name, 0L));
+            return fields.toArray(new Field[fields.size()]);
+        }
+
+        @Override
+        protected boolean setValue(Field[] fields, ByteBuffer value) {
+            if (value.remaining() != 1)
+                return false;
+            final boolean v = value.get(value.position()) != 0;
+            for(Field field : fields) {
+                if (field instanceof SortedNumericDocValuesField)
+                    field.setLongValue(v ? 1 : 0);
+                else
+                    field.setStringValue(v ? "T" : "F");
+            }
+            return true;
+        }
+    }
+
+    /**
+     * keyword fields without normalizer nor store, UTF-8 bytes are indexed without decoding.
+     */
+    static class KeywordCellWriter extends CellWriter {
+        final MappedFieldType fieldType;
+        final int ignoreAbove;
+
+        KeywordCellWriter(MappedFieldType fieldType, AbstractType<?> type, int ignoreAbove) {
+            super(fieldType, type);
+            this.fieldType = fieldType;
+            this.ignoreAbove = ignoreAbove;
+        }
+
+        @Override
+        public Field[] newFields() {
+            List<Field> fields = new ArrayList<>(2);
+            if (indexed)
+                fields.add(new Field(name, new BytesRef(), fieldType));
+            if (docValued)
+                fields.add(new SortedSetDocValuesField(name, new BytesRef()));
+            return fields.toArray(new Field[fields.size()]);
+        }
+
+        @Override
+        protected boolean setValue(Field[] fields, ByteBuffer value) {
+            // a keyword has at most as many chars as UTF-8 bytes, longer values are checked by the mapper.
+            if (value.remaining() > ignoreAbove)
+                return false;
+            final BytesRef bytes;
+            if (value.hasArray()) {
+                bytes = new BytesRef(value.array(), value.arrayOffset() + value.position(), value.remaining());
+            } else {
+                final byte[] array = new byte[value.remaining()];
+                value.duplicate().get(array);
+                bytes = new BytesRef(array);
+            }
+            for(Field field : fields)
+                field.setBytesValue(bytes);
+            return true;
+        }
+    }
+}
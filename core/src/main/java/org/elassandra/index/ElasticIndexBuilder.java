@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.compaction.CompactionInfo;
+import org.apache.cassandra.db.compaction.CompactionInterruptedException;
+import org.apache.cassandra.db.compaction.OperationType;
+import org.apache.cassandra.index.Index;
+import org.apache.cassandra.index.SecondaryIndexBuilder;
+import org.apache.cassandra.io.sstable.ReducingKeyIterator;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.service.ElassandraDaemon;
+import org.apache.cassandra.utils.UUIDGen;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.tasks.RawTaskStatus;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskAwareRequest;
+import org.elasticsearch.tasks.TaskId;
+import org.elasticsearch.tasks.TaskManager;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Secondary index build of an {@link ElasticSecondaryIndex}, used by Cassandra for the initial index build, nodetool rebuild_index,
+ * and for SSTables received by bootstrap, repair or rebuild streaming sessions.
+ * Partition keys of all SSTables are merged by a single {@link ReducingKeyIterator}, so that a partition present in several SSTables
+ * is indexed once, and are indexed in parallel by a bounded number of workers pulling keys from this iterator.
+ * Synchronous refreshes are suspended during the build and indices are refreshed once at the end. Progress is exposed as a task of the elasticsearch tasks API
+ * and as a Cassandra compaction of type INDEX_BUILD.
+ */
+public class ElasticIndexBuilder extends SecondaryIndexBuilder {
+    private static final Logger logger = Loggers.getLogger(ElasticIndexBuilder.class);
+
+    public static final String TASK_ACTION = "indices:admin/cassandra/index_build";
+
+    static final int indexBuildThreads = Integer.getInteger(ClusterService.SETTING_SYSTEM_INDEX_BUILD_THREADS, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    static final ThreadPoolExecutor indexBuildExecutor;
+    static {
+        if (indexBuildThreads > 1) {
+            indexBuildExecutor = new ThreadPoolExecutor(indexBuildThreads, indexBuildThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamedThreadFactory("ElasticIndexBuild"));
+            indexBuildExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            indexBuildExecutor = null;
+        }
+    }
+
+    // true while the current thread indexes partitions for an index build.
+    private static final ThreadLocal<Boolean> building = ThreadLocal.withInitial(() -> false);
+
+    public static final Index.IndexBuildingSupport INDEX_BUILDER_SUPPORT = (cfs, indexes, sstables) -> new ElasticIndexBuilder(cfs, indexes, sstables);
+
+    private final ColumnFamilyStore cfs;
+    private final Set<Index> indexes;
+    private final ReducingKeyIterator iterator;
+    private final int sstables;
+    private final UUID compactionId = UUIDGen.getTimeUUID();
+    private final long totalBytes;
+    private final AtomicLong partitions = new AtomicLong();
+
+    public ElasticIndexBuilder(ColumnFamilyStore cfs, Set<Index> indexes, Collection<SSTableReader> sstables) {
+        this.cfs = cfs;
+        this.indexes = indexes;
+        this.sstables = sstables.size();
+        this.iterator = new ReducingKeyIterator(sstables);
+        this.totalBytes = iterator.getTotalBytes();
+    }
+
+    /**
+     * @return true if the current thread indexes partitions for an index build, synchronous refresh is then skipped.
+     */
+    public static boolean isBuilding() {
+        return building.get();
+    }
+
+    private long bytesRead() {
+        return iterator.getBytesRead();
+    }
+
+    /**
+     * @return the next partition key in token order, or null at the end, the iterator being shared by build workers.
+     */
+    private synchronized DecoratedKey nextKey() {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public CompactionInfo getCompactionInfo() {
+        return new CompactionInfo(cfs.metadata, OperationType.INDEX_BUILD, bytesRead(), totalBytes, compactionId);
+    }
+
+    @Override
+    public void build() {
+        final long start = System.currentTimeMillis();
+        final TaskManager taskManager = taskManager();
+        final Task task = (taskManager == null) ? null : taskManager.register("cassandra", TASK_ACTION, new BuildRequest());
+        try {
+            if (indexBuildExecutor == null) {
+                buildWorker();
+            } else {
+                List<Future<?>> futures = new ArrayList<>(indexBuildThreads);
+                for(int i = 0; i < indexBuildThreads; i++)
+                    futures.add(indexBuildExecutor.submit(this::buildWorker));
+                try {
+                    for(Future<?> future : futures)
+                        future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    futures.forEach(f -> f.cancel(true));
+                    throw new CompactionInterruptedException(getCompactionInfo());
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            for(Index index : indexes)
+                if (index instanceof ElasticSecondaryIndex)
+                    ((ElasticSecondaryIndex) index).refresh("index_build");
+            logger.info("Index build of {}.{} done, {} sstables, {} partitions, {} bytes in {}ms",
+                    cfs.keyspace.getName(), cfs.name, sstables, partitions.get(), totalBytes, System.currentTimeMillis() - start);
+        } finally {
+            iterator.close();
+            if (task != null)
+                taskManager.unregister(task);
+        }
+    }
+
+    private void buildWorker() {
+        building.set(true);
+        try {
+            int pageSize = cfs.indexManager.calculateIndexingPageSize();
+            DecoratedKey key;
+            while ((key = nextKey()) != null) {
+                if (isStopRequested())
+                    throw new CompactionInterruptedException(getCompactionInfo());
+                cfs.indexManager.indexPartition(key, indexes, pageSize);
+                partitions.incrementAndGet();
+            }
+        } finally {
+            building.set(false);
+        }
+    }
+
+    private static TaskManager taskManager() {
+        Injector injector = (ElassandraDaemon.instance == null) ? null : ElassandraDaemon.injector();
+        return (injector == null) ? null : injector.getInstance(TransportService.class).getTaskManager();
+    }
+
+    class BuildRequest implements TaskAwareRequest {
+        TaskId parentTaskId = TaskId.EMPTY_TASK_ID;
+
+        @Override
+        public void setParentTask(TaskId taskId) {
+            this.parentTaskId = taskId;
+        }
+
+        @Override
+        public TaskId getParentTask() {
+            return parentTaskId;
+        }
+
+        @Override
+        public String getDescription() {
+            return "index build of " + cfs.keyspace.getName() + "." + cfs.name + " indices " + indexes + ", " + sstables + " sstables";
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId) {
+            return new Task(id, type, action, getDescription(), parentTaskId) {
+                @Override
+                public Status getStatus() {
+                    try (XContentBuilder builder = XContentFactory.jsonBuilder()) {
+                        builder.startObject()
+                            .field("sstables", sstables)
+                            .field("partitions", partitions.get())
+                            .field("bytes_read", bytesRead())
+                            .field("total_bytes", totalBytes)
+                            .endObject();
+                        return new RawTaskStatus(builder.bytes());
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+            };
+        }
+    }
+}
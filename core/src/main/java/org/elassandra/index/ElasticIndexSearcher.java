@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.CBuilder;
+import org.apache.cassandra.db.Clustering;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionPosition;
+import org.apache.cassandra.db.PartitionRangeReadCommand;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.ReadExecutionController;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.filter.ClusteringIndexFilter;
+import org.apache.cassandra.db.filter.ClusteringIndexNamesFilter;
+import org.apache.cassandra.db.filter.DataLimits;
+import org.apache.cassandra.db.filter.RowFilter;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.index.Index;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
+import org.apache.lucene.search.TopFieldDocs;
+import org.elassandra.index.ElasticSecondaryIndex.ImmutableMappingInfo;
+import org.elassandra.index.ElasticSecondaryIndex.ImmutableMappingInfo.ImmutableIndexInfo;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elasticsearch.cluster.service.ClusterService.DocPrimaryKey;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.UidFieldMapper;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * CQL search of an {@link ElasticSecondaryIndex} with a WHERE es_query='{...}' clause.
+ * The query is executed on the local shards of the table indices, restricted to the token range of the read command
+ * and sorted by token. Matching rows are read from the base table partition by partition, so results are streamed back
+ * to the coordinator in the token order expected by CQL paging, without any JSON encoding of search results.
+ *
+ * es_options is an optional list of key=value separated by a semicolon, indices=index1,index2 restricts the search to some indices
+ * (default is all indices of the table).
+ */
+public class ElasticIndexSearcher implements Index.Searcher {
+    private static final Logger logger = Loggers.getLogger(ElasticIndexSearcher.class);
+
+    static final Sort TOKEN_SORT = new Sort(new SortedNumericSortField(TokenFieldMapper.NAME, SortField.Type.LONG));
+    static final Set<String> UID_FIELD = Collections.singleton(UidFieldMapper.NAME);
+    static final int MAX_BATCH_SIZE = 10000;
+
+    final ElasticSecondaryIndex index;
+    final ReadCommand command;
+    final String esQuery;
+    final String[] indices;
+
+    public ElasticIndexSearcher(ElasticSecondaryIndex index, ReadCommand command) {
+        this.index = index;
+        this.command = command;
+
+        String query = null;
+        String[] indices = null;
+        for(RowFilter.Expression expression : command.rowFilter()) {
+            if (ElasticSecondaryIndex.ES_QUERY_BYTE_BUFFER.equals(expression.column().name.bytes)) {
+                query = UTF8Type.instance.compose(expression.getIndexValue());
+            } else if (ElasticSecondaryIndex.ES_OPTIONS_BYTE_BUFFER.equals(expression.column().name.bytes)) {
+                for(String option : UTF8Type.instance.compose(expression.getIndexValue()).split(";")) {
+                    int x = option.indexOf('=');
+                    if (x > 0 && option.substring(0, x).trim().equals("indices"))
+                        indices = option.substring(x + 1).trim().split(",");
+                }
+            }
+        }
+        if (query == null)
+            throw new InvalidRequestException("Missing es_query expression");
+        this.esQuery = query;
+        this.indices = indices;
+    }
+
+    @Override
+    public UnfilteredPartitionIterator search(ReadExecutionController executionController) {
+        final ImmutableMappingInfo mappingInfo = index.mappingInfo;
+        if (mappingInfo == null || mappingInfo.indices == null)
+            throw new InvalidRequestException("No elasticsearch index available for table "+command.metadata().ksName+"."+command.metadata().cfName);
+
+        final List<Cursor> cursors = new ArrayList<>();
+        try {
+            for(ImmutableIndexInfo indexInfo : mappingInfo.indices) {
+                if (indices != null && !Regex.simpleMatch(indices, indexInfo.name))
+                    continue;
+                final IndexShard indexShard = indexInfo.shard();
+                if (indexShard == null)
+                    throw new IllegalStateException("Shard ["+indexInfo.name+"][0] not started");
+                final Cursor cursor = new Cursor(indexInfo, indexShard.acquireSearcher("cql"));
+                cursors.add(cursor);
+                cursor.query = query(indexInfo, cursor.searcher);
+            }
+        } catch(IOException | RuntimeException e) {
+            for(Cursor cursor : cursors)
+                cursor.searcher.close();
+            if (e instanceof InvalidRequestException)
+                throw (InvalidRequestException)e;
+            throw new InvalidRequestException("Invalid es_query: " + e.getMessage());
+        }
+        return new PartitionIterator(cursors, executionController);
+    }
+
+    /**
+     * Parse the es_query and add the type, non-nested and token range filters.
+     */
+    Query query(ImmutableIndexInfo indexInfo, Engine.Searcher searcher) throws IOException {
+        final IndexService indexService = indexInfo.indexService;
+        final QueryShardContext context = indexService.newQueryShardContext(0, searcher.reader(), System::currentTimeMillis);
+        final SearchSourceBuilder source;
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(indexService.xContentRegistry(), esQuery)) {
+            source = SearchSourceBuilder.fromXContent(new QueryParseContext(parser));
+        }
+        if (source.aggregations() != null)
+            throw new InvalidRequestException("es_query aggregations are not supported");
+        if (source.sorts() != null)
+            throw new InvalidRequestException("es_query sort is not supported, rows are returned in the token order");
+
+        final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        if (source.query() != null)
+            builder.add(context.toQuery(QueryBuilder.rewriteQuery(source.query(), context)).query(), Occur.FILTER);
+        if (!indexInfo.singleType)
+            builder.add(index.typeTermQuery, Occur.FILTER);
+        if (indexService.mapperService().hasNested())
+            builder.add(Queries.newNonNestedFilter(), Occur.FILTER);
+
+        // token range of the read command, bounds are checked on partition keys.
+        final long lower, upper;
+        if (command instanceof SinglePartitionReadCommand) {
+            lower = upper = (Long) ((SinglePartitionReadCommand)command).partitionKey().getToken().getTokenValue();
+        } else {
+            AbstractBounds<PartitionPosition> keyRange = ((PartitionRangeReadCommand)command).dataRange().keyRange();
+            lower = keyRange.left.isMinimum() ? Long.MIN_VALUE : (Long) keyRange.left.getToken().getTokenValue();
+            upper = keyRange.right.isMinimum() ? Long.MAX_VALUE : (Long) keyRange.right.getToken().getTokenValue();
+        }
+        builder.add(LongPoint.newRangeQuery(TokenFieldMapper.NAME, lower, upper), Occur.FILTER);
+        final Query query = builder.build();
+        if (logger.isDebugEnabled())
+            logger.debug("index={} cql search query={}", indexInfo.name, query);
+        return query;
+    }
+
+    boolean selects(DecoratedKey key) {
+        if (command instanceof SinglePartitionReadCommand)
+            return ((SinglePartitionReadCommand)command).partitionKey().equals(key);
+        return ((PartitionRangeReadCommand)command).dataRange().keyRange().contains(key);
+    }
+
+    int batchSize() {
+        return Math.max(16, Math.min(command.limits().count(), MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Hits of an index sorted by token, fetched by batches.
+     */
+    class Cursor {
+        final ImmutableIndexInfo indexInfo;
+        final Engine.Searcher searcher;
+        Query query;
+        ScoreDoc[] hits = new ScoreDoc[0];
+        int pos = 0;
+        boolean exhausted = false;
+
+        Cursor(ImmutableIndexInfo indexInfo, Engine.Searcher searcher) {
+            this.indexInfo = indexInfo;
+            this.searcher = searcher;
+        }
+
+        boolean hasHit() throws IOException {
+            if (pos < hits.length)
+                return true;
+            if (exhausted)
+                return false;
+            final int batchSize = batchSize();
+            final TopFieldDocs top = (hits.length == 0) ?
+                    searcher.searcher().search(query, batchSize, TOKEN_SORT) :
+                    (TopFieldDocs) searcher.searcher().searchAfter(hits[hits.length - 1], query, batchSize, TOKEN_SORT);
+            hits = top.scoreDocs;
+            pos = 0;
+            exhausted = hits.length < batchSize;
+            return hits.length > 0;
+        }
+
+        long token() {
+            return ((Number)((FieldDoc)hits[pos]).fields[0]).longValue();
+        }
+
+        DocPrimaryKey next() throws IOException {
+            final String uid = searcher.searcher().doc(hits[pos++].doc, UID_FIELD).get(UidFieldMapper.NAME);
+            return index.clusterService.parseElasticId(indexInfo.indexService, index.typeName, Uid.createUid(uid).id());
+        }
+    }
+
+    /**
+     * Merge hits of all cursors by token and read matching rows partition by partition.
+     */
+    class PartitionIterator implements UnfilteredPartitionIterator {
+        final List<Cursor> cursors;
+        final ReadExecutionController executionController;
+        final CFMetaData metadata;
+        UnfilteredRowIterator next = null;
+        DecoratedKey pendingKey = null;      // partition of the first hit of the next partition.
+        DocPrimaryKey pendingPk = null;
+
+        PartitionIterator(List<Cursor> cursors, ReadExecutionController executionController) {
+            this.cursors = cursors;
+            this.executionController = executionController;
+            this.metadata = command.metadata();
+        }
+
+        Cursor nextCursor() throws IOException {
+            Cursor min = null;
+            for(Cursor cursor : cursors) {
+                if (cursor.hasHit() && (min == null || cursor.token() < min.token()))
+                    min = cursor;
+            }
+            return min;
+        }
+
+        DecoratedKey partitionKey(DocPrimaryKey pk) {
+            CBuilder builder = CBuilder.create(metadata.getKeyValidatorAsClusteringComparator());
+            for(int i = 0; i < metadata.partitionKeyColumns().size(); i++)
+                builder.add(pk.values[i]);
+            return metadata.partitioner.decorateKey(CFMetaData.serializePartitionKey(builder.build()));
+        }
+
+        Clustering clustering(DocPrimaryKey pk) {
+            final int pkLength = metadata.partitionKeyColumns().size();
+            CBuilder builder = CBuilder.create(metadata.comparator);
+            for(int i = pkLength; i < pk.values.length; i++)
+                builder.add(pk.values[i]);
+            return builder.build();
+        }
+
+        /**
+         * Group consecutive hits of the same partition and read the matching rows.
+         */
+        UnfilteredRowIterator computeNext() throws IOException {
+            while (true) {
+                if (pendingKey == null) {
+                    Cursor cursor = nextCursor();
+                    if (cursor == null)
+                        return null;
+                    pendingPk = cursor.next();
+                    pendingKey = partitionKey(pendingPk);
+                }
+                final DecoratedKey key = pendingKey;
+                final boolean wide = metadata.clusteringColumns().size() > 0;
+                boolean wholePartition = !wide || pendingPk.isStaticDocument;
+                final NavigableSet<Clustering> clusterings = new TreeSet<>(metadata.comparator);
+                if (!wholePartition)
+                    clusterings.add(clustering(pendingPk));
+                pendingKey = null;
+                pendingPk = null;
+
+                for(Cursor cursor = nextCursor(); cursor != null && cursor.token() == (Long)key.getToken().getTokenValue(); cursor = nextCursor()) {
+                    DocPrimaryKey pk = cursor.next();
+                    DecoratedKey otherKey = partitionKey(pk);
+                    if (!otherKey.equals(key)) {
+                        // token collision, keep for the next partition.
+                        pendingPk = pk;
+                        pendingKey = otherKey;
+                        break;
+                    }
+                    if (!wide || pk.isStaticDocument)
+                        wholePartition = true;
+                    else
+                        clusterings.add(clustering(pk));
+                }
+
+                if (!selects(key))
+                    continue;
+
+                ClusteringIndexFilter filter = command.clusteringIndexFilter(key);
+                if (!wholePartition) {
+                    NavigableSet<Clustering> selected = new TreeSet<>(metadata.comparator);
+                    for(Clustering clustering : clusterings)
+                        if (filter.selects(clustering))
+                            selected.add(clustering);
+                    if (selected.isEmpty())
+                        continue;
+                    filter = new ClusteringIndexNamesFilter(selected, filter.isReversed());
+                }
+
+                SinglePartitionReadCommand dataCmd = SinglePartitionReadCommand.create(metadata, command.nowInSec(), command.columnFilter(),
+                        RowFilter.NONE, DataLimits.NONE, key, filter);
+                UnfilteredRowIterator partition = dataCmd.queryMemtableAndDisk(index.baseCfs, executionController);
+                if (partition.isEmpty()) {
+                    // row removed but not yet refreshed in the index.
+                    partition.close();
+                    continue;
+                }
+                return partition;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = computeNext();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public UnfilteredRowIterator next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            UnfilteredRowIterator partition = next;
+            next = null;
+            return partition;
+        }
+
+        @Override
+        public boolean isForThrift() {
+            return command.isForThrift();
+        }
+
+        @Override
+        public CFMetaData metadata() {
+            return metadata;
+        }
+
+        @Override
+        public void close() {
+            if (next != null)
+                next.close();
+            for(Cursor cursor : cursors)
+                cursor.searcher.close();
+        }
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.cassandra.db.ClusteringBound;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.Memtable;
 import org.apache.cassandra.db.PartitionColumns;
 import org.apache.cassandra.db.RangeTombstone;
 import org.apache.cassandra.db.ReadCommand;
@@ -41,6 +42,7 @@ import org.apache.cassandra.db.ReadExecutionController;
 import org.apache.cassandra.db.SinglePartitionReadCommand;
 import org.apache.cassandra.db.Slice;
 import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.commitlog.CommitLogPosition;
 import org.apache.cassandra.db.filter.RowFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CollectionType;
@@ -62,9 +64,9 @@ import org.apache.cassandra.index.Index;
 import org.apache.cassandra.index.IndexRegistry;
 import org.apache.cassandra.index.transactions.IndexTransaction;
 import org.apache.cassandra.index.transactions.IndexTransaction.Type;
-import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.schema.IndexMetadata;
 import org.apache.cassandra.service.ElassandraDaemon;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.UUIDGen;
@@ -97,9 +99,14 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.join.BitSetProducer;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.WeakIdentityMap;
 import org.elassandra.index.ElasticSecondaryIndex.ImmutableMappingInfo.WideRowcumentIndexer.WideRowcument;
+import org.elassandra.index.WritePathMetrics.Counter;
+import org.elassandra.index.WritePathMetrics.Stage;
+import org.elassandra.index.search.StaticJoin;
+import org.elassandra.index.search.TTLExpiry;
+import org.elassandra.index.snapshot.LuceneSnapshot;
 import org.elasticsearch.ElasticsearchException;
-import org.elasticsearch.action.admin.indices.flush.FlushRequest;
 import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.ClusterStateListener;
@@ -169,12 +176,9 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.indices.IndicesService;
 
-import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.nio.file.DirectoryIteratorException;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
@@ -199,7 +203,13 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
@@ -230,6 +240,24 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
     
     public static boolean runsElassandra = false;
     
+    // index settings affecting the parsing of a document, indices sharing a document must have the same settings under these prefixes.
+    static final String[] DOCUMENT_PARSE_SETTINGS_PREFIXES = new String[] { "index.analysis.", "index.similarity.", "index.mapping.", "index.mapper." };
+    
+    // bounded pool used to index a row into several elasticsearch indices in parallel, the caller thread indexes when the pool is saturated.
+    static final int indexingFanoutThreads = Integer.getInteger(ClusterService.SETTING_SYSTEM_INDEXING_FANOUT_THREADS, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    static final ThreadPoolExecutor indexingFanoutExecutor;
+    static {
+        if (indexingFanoutThreads > 0) {
+            indexingFanoutExecutor = new ThreadPoolExecutor(indexingFanoutThreads, indexingFanoutThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(indexingFanoutThreads * 128),
+                    new NamedThreadFactory("ElasticIndexingFanout"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            indexingFanoutExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            indexingFanoutExecutor = null;
+        }
+    }
+    
     final String index_name;
     final Logger logger;
     ClusterService clusterService;
@@ -356,6 +384,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         private Field version, uid;
         private final List<Document> documents = new ArrayList<Document>();
         private AllEntries allEntries = new AllEntries();
+        private final AllEntries reusableAllEntries = allEntries;
         private float docBoost = 1.0f;
         private List<Mapper> dynamicMappers = null;
         
@@ -363,6 +392,12 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         private boolean finalized = false;
         private BytesReference source;
         private Object externalValue = null;
+        private final Map<ImmutableMappingInfo.ImmutableIndexInfo, Field[][]> cellFields = new WeakHashMap<>();
+        
+        // root documents and metadata fields reused for the next documents indexed by this thread.
+        private final Document rootDocument = new Document();
+        private StaticDocument rootStaticDocument = null;
+        private final WeakIdentityMap<Mapper, Field[]> reusableFields = WeakIdentityMap.newHashMap();
         
         public Context() {
         }
@@ -379,19 +414,50 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             this.indexInfo = ii;
             this.docMapper = ii.indexService.mapperService().documentMapper(uid.type());
             assert this.docMapper != null;
-            this.document = ii.indexStaticOnly() ? new StaticDocument("",null, uid) : new Document();
+            if (ii.indexStaticOnly()) {
+                if (this.rootStaticDocument == null)
+                    this.rootStaticDocument = new StaticDocument("",null, uid);
+                this.rootStaticDocument.uid = uid;
+                this.rootStaticDocument.applyFilter(false);
+                this.document = this.rootStaticDocument;
+            } else {
+                this.document = this.rootDocument;
+            }
+            this.document.clear();
             this.documents.clear();
             this.documents.add(this.document);
             this.id = uid.id();
-            this.uid = new Field(UidFieldMapper.NAME, uid.toBytesRef(), UidFieldMapper.Defaults.FIELD_TYPE);;
+            this.uid = null;
             //this.path.reset();
-            this.allEntries = (this.docMapper.allFieldMapper().enabled()) ? new AllEntries() : null;
+            if (this.docMapper.allFieldMapper().enabled()) {
+                this.reusableAllEntries.clear();
+                this.allEntries = this.reusableAllEntries;
+            } else {
+                this.allEntries = null;
+            }
             this.docBoost = 1.0f;
             this.dynamicMappers = null;
             this.parent = null;
             this.externalValue = null;
         }
     
+        /**
+         * Lucene fields of the cell writers, reused for the next documents indexed by this thread.
+         */
+        public Field[][] cellFields(ImmutableMappingInfo.ImmutableIndexInfo ii) {
+            return cellFields.computeIfAbsent(ii, k -> new Field[k.cellWriters.length][]);
+        }
+        
+        @Override
+        public Field[] reusableFields(Mapper mapper) {
+            return reusableFields.get(mapper);
+        }
+        
+        @Override
+        public void reusableFields(Mapper mapper, Field[] fields) {
+            reusableFields.put(mapper, fields);
+        }
+        
         // recusivelly add fields
         public void addField(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, Mapper mapper, Object value) throws IOException {
             if (logger.isTraceEnabled())
@@ -814,6 +880,18 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
 
     }
 
+    static final int PARTITION_ORDINAL_CACHE_SIZE = 64;
+    
+    static final class OrdinalCacheEntry {
+        final Object key;
+        final int ordinal;
+        
+        OrdinalCacheEntry(Object key, int ordinal) {
+            this.key = key;
+            this.ordinal = ordinal;
+        }
+    }
+    
     final class ImmutableMappingInfo {
         
         class ImmutableIndexInfo  {
@@ -828,10 +906,16 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             final boolean index_static_only;
             final boolean index_on_compaction;
             final boolean index_static_document;
+            final boolean index_static_join;
+            final boolean index_ttl_expiry;
+            final boolean index_row_image;
             final boolean versionLessEngine;
+            final boolean singleType;   // true when the index only contains this document type.
             
             Mapper[] mappers;   // inititalized in the ImmutableMappingInfo constructor.
+            CellWriter[] cellWriters;
             ReadWriteLock dynamicMappingUpdateLock;
+            final WritePathMetrics.IndexMetrics metrics;
             volatile boolean updated = false;
 
             public ImmutableIndexInfo(String name, IndexService indexService, MappingMetaData mappingMetaData, MetaData metadata, boolean versionLessEngine) throws IOException {
@@ -840,6 +924,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 this.indexService = indexService;
                 this.mapping = mappingMetaData.sourceAsMap();
                 this.type = mappingMetaData.type();
+                Collection<String> types = indexService.mapperService().types();
+                this.singleType = types.size() == 1 && types.contains(this.type);
                 
                 Map<String,Object> mappingMap = (Map<String,Object>)mappingMetaData.getSourceAsMap();
                 Map<String,Object> metaMap = (mappingMap == null) ? null : (Map<String,Object>)mappingMap.get("_meta");
@@ -851,7 +937,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 this.index_on_compaction = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_ON_COMPACTION_SETTING);
                 this.index_static_columns = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_COLUMNS_SETTING);
                 this.index_static_only = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_ONLY_SETTING);
-                this.index_static_document = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING);
+                this.index_static_join = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_JOIN_SETTING);
+                // static columns are joined from the static document.
+                this.index_static_document = this.index_static_join || getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING);
+                // resolved as for searches and the expired documents purge, see IndexService.ttlExpiry().
+                this.index_ttl_expiry = TTLExpiry.enabled(indexService.getIndexSettings(), metaMap);
+                this.index_row_image = getMetaSettings(metadata.settings(), indexService.getIndexSettings(), metaMap, IndexMetaData.INDEX_INDEX_ROW_IMAGE_SETTING);
+                this.metrics = ElasticSecondaryIndex.this.clusterService.writePathMetrics().index(name);
             }
 
             // get _meta, index, cluster or system settings.
@@ -876,6 +968,37 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 return (staticColumns == null) ? false : staticColumns.get(idx);
             }
             
+            /**
+             * Documents can be built once and indexed in both indices when mappings, analysis, similarity and mapping settings
+             * (like index.mapping.ignore_malformed or index.mapping.coerce) and indexing options are the same.
+             * Indices with dynamic mapping updates or percolator queries always build their own document.
+             */
+            public boolean sharesDocumentWith(ImmutableIndexInfo other) {
+                if (this.dynamicMappingUpdateLock != null || other.dynamicMappingUpdateLock != null)
+                    return false;
+                if (MapperService.PERCOLATOR_LEGACY_TYPE_NAME.equals(this.type))
+                    return false;
+                return this.type.equals(other.type) &&
+                       this.includeNodeId == other.includeNodeId &&
+                       this.versionLessEngine == other.versionLessEngine &&
+                       this.index_on_compaction == other.index_on_compaction &&
+                       this.index_static_only == other.index_static_only &&
+                       this.index_static_document == other.index_static_document &&
+                       this.index_static_join == other.index_static_join &&
+                       this.index_ttl_expiry == other.index_ttl_expiry &&
+                       this.index_row_image == other.index_row_image &&
+                       this.mapping.equals(other.mapping) &&
+                       sameParseSettings(this.indexService.getIndexSettings().getSettings(), other.indexService.getIndexSettings().getSettings());
+            }
+            
+            private boolean sameParseSettings(Settings settings, Settings otherSettings) {
+                for(String prefix : DOCUMENT_PARSE_SETTINGS_PREFIXES) {
+                    if (!settings.getByPrefix(prefix).equals(otherSettings.getByPrefix(prefix)))
+                        return false;
+                }
+                return true;
+            }
+            
             public IndexShard shard() {
                 final IndexShard indexShard = indexService.getShardOrNull(0);
                 if (indexShard == null) {
@@ -894,7 +1017,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     IndexShard shard = shard();
                     if (shard != null) {
                         try {
+                            final long start = System.nanoTime();
                             shard.refresh("synchronous_refresh");
+                            metrics.record(Stage.REFRESH, start);
                         } catch (Throwable e) {
                             logger.error("error", e);
                         }
@@ -905,6 +1030,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             public void deleteByQuery(final Object pkCols[], RangeTombstone tombstone) {
                 IndexShard shard = shard();
                 if (shard != null) {
+                    final long deleteStart = System.nanoTime();
                     Slice slice = tombstone.deletedSlice();
                     ClusteringBound start = slice.start();
                     ClusteringBound end = slice.end();
@@ -950,7 +1076,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     if (!updated)
                         updated = true;
                     DeleteByQuery deleteByQuery = new DeleteByQuery(query, null, null, null, null, Operation.Origin.PRIMARY, System.currentTimeMillis(), typeName);
-                    shard.getEngine().delete(deleteByQuery);
+                    shard.getEngine().bufferDelete(deleteByQuery);
+                    metrics.record(Stage.DELETE_BY_QUERY, deleteStart);
                 }
             }
             
@@ -1098,6 +1225,11 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             final int[]    fieldsIdx;   // column position in Rowcument.values
             final Set<String> indices;  // associated indices
             final PartitionFunction partitionFunction;
+            final PartitionFunction.Formatter formatter; // pattern compiled once
+            
+            // direct-mapped cache of resolved index ordinals for single-argument functions (ex: time buckets), 
+            // valid as long as this ImmutableMappingInfo is.
+            final OrdinalCacheEntry[] ordinalCache;
             
             ImmutablePartitionFunction(String[] args) {
                 this(args, new MessageFormatPartitionFunction());
@@ -1111,14 +1243,39 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 System.arraycopy(args, 2, this.fields, 0, args.length-2);
                 this.indices = new HashSet<String>();
                 this.partitionFunction = partitionFunc;
+                this.formatter = partitionFunc.compile(this.pattern);
+                this.ordinalCache = (this.fields.length == 1) ? new OrdinalCacheEntry[PARTITION_ORDINAL_CACHE_SIZE] : null;
             }
             
             // values = indexed values in the same order as MappingInfo.fields
             String indexName(Object[] values) {
                 Object[] args = new Object[fields.length];
                 for(int i=0; i < fieldsIdx.length; i++)
-                    args[i] = (fieldsIdx[i] < values.length) ? values[fieldsIdx[i]] : null; 
-                return partitionFunction.format(pattern, args);
+                    args[i] = (fieldsIdx[i] >= 0 && fieldsIdx[i] < values.length) ? values[fieldsIdx[i]] : null; 
+                return formatter.format(args);
+            }
+            
+            /**
+             * @return the target index ordinal in ImmutableMappingInfo.indices, or -1 if no index matches.
+             */
+            int indexOrdinal(Object[] values) {
+                if (partitionFunction instanceof OrdinalPartitionFunction)
+                    return ((OrdinalPartitionFunction)partitionFunction).indexOrdinal(pattern, indexNames, values, fieldsIdx);
+                
+                if (ordinalCache != null) {
+                    Object value = (fieldsIdx[0] >= 0 && fieldsIdx[0] < values.length) ? values[fieldsIdx[0]] : null;
+                    Object cacheKey = (value == null) ? null : formatter.cacheKey(value);
+                    if (cacheKey != null) {
+                        int slot = (cacheKey.hashCode() & 0x7fffffff) % ordinalCache.length;
+                        OrdinalCacheEntry entry = ordinalCache[slot];
+                        if (entry != null && entry.key.equals(cacheKey))
+                            return entry.ordinal;
+                        int ordinal = indexToIdx.getOrDefault(formatter.format(value), -1);
+                        ordinalCache[slot] = new OrdinalCacheEntry(cacheKey, ordinal);
+                        return ordinal;
+                    }
+                }
+                return indexToIdx.getOrDefault(indexName(values), -1);
             }
             
             public String toString() {
@@ -1129,10 +1286,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         
         final Map<String, ImmutablePartitionFunction> partitionFunctions; 
         final ImmutableIndexInfo[] indices;
+        final String[] indexNames;
+        final int[] documentGroups;         // for each index, the position of the first index sharing the same document.
         final ObjectIntHashMap<String> indexToIdx;
         final ObjectIntHashMap<String> fieldsToIdx;
         final BitSet fieldsToRead;
         final BitSet staticColumns;
+        final BitSet cellWriterFields;      // fields written from the cell value by the CellWriter of every index, null if none.
         final boolean hasIndexedMultiCell;
         final boolean indexSomeStaticColumnsOnWideRow; 
         final boolean[] indexedPkColumns;   // bit mask of indexed PK columns.
@@ -1140,6 +1300,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         final String metadataClusterUUID;
         final String nodeId;
         final boolean indexOnCompaction;  // true if at least one index has index_on_compaction=true;
+        final boolean indexTTLExpiry;     // true if at least one index has index_ttl_expiry=true;
+        final RowImage.Columns rowImageColumns; // table columns when at least one index has index_row_image=true, null otherwise.
+        final int[] rowImageOrdinals;           // for each field, the row image column ordinal, -1 if not written in row images.
         
         ImmutableMappingInfo(final ClusterState state) {
             this.metadataVersion = state.metaData().version();
@@ -1149,15 +1312,21 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             if (state.blocks().hasGlobalBlock(ClusterBlockLevel.WRITE)) {
                 logger.debug("global write blocked");
                 this.indices = null;
+                this.indexNames = null;
+                this.documentGroups = null;
                 this.indexToIdx = null;
                 this.fieldsToIdx = null;
                 this.fieldsToRead = null;
                 this.staticColumns = null;
+                this.cellWriterFields = null;
                 this.hasIndexedMultiCell = false;
                 this.indexSomeStaticColumnsOnWideRow = false;
                 this.indexedPkColumns = null;
                 this.partitionFunctions = null;
                 this.indexOnCompaction = false;
+                this.indexTTLExpiry = false;
+                this.rowImageColumns = null;
+                this.rowImageOrdinals = null;
                 return;
             }
             
@@ -1247,23 +1416,31 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 if (logger.isTraceEnabled())
                     logger.warn("No active elasticsearch index for keyspace.table=[{}.{}] state={}",baseCfs.metadata.ksName, baseCfs.name, state);
                 this.indices = null;
+                this.indexNames = null;
+                this.documentGroups = null;
                 this.indexToIdx = null;
                 this.fieldsToIdx = null;
                 this.fieldsToRead = null;
                 this.staticColumns = null;
+                this.cellWriterFields = null;
                 this.hasIndexedMultiCell = false;
                 this.indexSomeStaticColumnsOnWideRow = false;
                 this.indexedPkColumns = null;
                 this.partitionFunctions = null;
                 this.indexOnCompaction = false;
+                this.indexTTLExpiry = false;
+                this.rowImageColumns = null;
+                this.rowImageOrdinals = null;
                 return;
             }
 
             // build indices array and indexToIdx map
             this.indices = new ImmutableIndexInfo[indexList.size()];
+            this.indexNames = new String[indexList.size()];
             this.indexToIdx = new ObjectIntHashMap<String>(indexList.size());
             for(int i = 0; i < indexList.size(); i++) {
                 indices[i] = indexList.get(i);
+                indexNames[i] = indexList.get(i).name;
                 indexToIdx.put(indexList.get(i).name, i);
             }
             
@@ -1327,12 +1504,16 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             // build InderInfo.mappers arrays.
             for(ImmutableIndexInfo indexInfo : this.indices) {
                 indexInfo.mappers = new Mapper[fields.length];
+                indexInfo.cellWriters = new CellWriter[fields.length];
                 for(int i=0; i < fields.length; i++) {
                     DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
                     Mapper mapper = fields[i].startsWith(ParentFieldMapper.NAME) ?
                             docMapper.parentFieldMapper() : docMapper.mappers().smartNameFieldMapper(fields[i]); // workaround for _parent#<join_type>
                     if (mapper != null) {
                         indexInfo.mappers[i] = mapper;
+                        ColumnDefinition colDef = baseCfs.metadata.getColumnDefinition(new ColumnIdentifier(fields[i], true));
+                        if (colDef != null && !colDef.isPrimaryKeyColumn() && !colDef.type.isMultiCell())
+                            indexInfo.cellWriters[i] = CellWriter.of(mapper, colDef.type, docMapper.allFieldMapper().enabled());
                     } else {
                         ObjectMapper objectMapper = docMapper.objectMappers().get(fields[i]);
                         if (objectMapper != null && objectMapper.cqlStruct().equals(Mapper.CqlStruct.MAP))
@@ -1342,10 +1523,34 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
             }
             
+            // fields written by the cell writers of all indices, except fields needed as java objects by partition functions or _parent.
+            final BitSet _cellWriterFields = new BitSet(fields.length);
+            for(int i=0; i < fields.length; i++) {
+                boolean allWriters = true;
+                for(ImmutableIndexInfo indexInfo : this.indices)
+                    allWriters &= indexInfo.cellWriters[i] != null;
+                _cellWriterFields.set(i, allWriters);
+            }
+            if (this.partitionFunctions != null) {
+                for(ImmutablePartitionFunction func : this.partitionFunctions.values())
+                    for(int idx : func.fieldsIdx)
+                        if (idx >= 0)
+                            _cellWriterFields.clear(idx);
+            }
+            for(ImmutableIndexInfo indexInfo : this.indices) {
+                ParentFieldMapper parentMapper = indexInfo.indexService.mapperService().documentMapper(typeName).parentFieldMapper();
+                if (parentMapper.active() && parentMapper.pkColumns() != null) {
+                    for(String col : parentMapper.pkColumns().split(","))
+                        if (this.fieldsToIdx.getOrDefault(col, -1) >= 0)
+                            _cellWriterFields.clear(this.fieldsToIdx.get(col));
+                }
+            }
+            this.cellWriterFields = (_cellWriterFields.isEmpty()) ? null : _cellWriterFields;
+            
             boolean _indexSomeStaticColumns = false;
             boolean _indexOnCompaction = false;
             for(ImmutableIndexInfo indexInfo : this.indices) {
-                if (indexInfo.index_static_columns)
+                if (indexInfo.index_static_columns && !indexInfo.index_static_join)
                     _indexSomeStaticColumns = true;
                 if (indexInfo.index_on_compaction)
                     _indexOnCompaction = true;
@@ -1354,6 +1559,36 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             }
             this.indexSomeStaticColumnsOnWideRow = _indexSomeStaticColumns;
             this.indexOnCompaction = _indexOnCompaction;
+            
+            boolean _indexTTLExpiry = false;
+            for(ImmutableIndexInfo indexInfo : this.indices)
+                _indexTTLExpiry |= indexInfo.index_ttl_expiry;
+            this.indexTTLExpiry = _indexTTLExpiry;
+            
+            boolean _indexRowImage = false;
+            for(ImmutableIndexInfo indexInfo : this.indices)
+                _indexRowImage |= indexInfo.index_row_image;
+            if (_indexRowImage) {
+                this.rowImageColumns = new RowImage.Columns(baseCfs.metadata);
+                this.rowImageOrdinals = new int[fields.length];
+                for(int i=0; i < fields.length; i++)
+                    this.rowImageOrdinals[i] = this.rowImageColumns.ordinal(fields[i]);
+            } else {
+                this.rowImageColumns = null;
+                this.rowImageOrdinals = null;
+            }
+            
+            // group indices where the same document can be indexed.
+            this.documentGroups = new int[this.indices.length];
+            for(int i=0; i < this.indices.length; i++) {
+                documentGroups[i] = i;
+                for(int k=0; k < i; k++) {
+                    if (documentGroups[k] == k && this.indices[k].sharesDocumentWith(this.indices[i])) {
+                        documentGroups[i] = k;
+                        break;
+                    }
+                }
+            }
         }
         
         public BitSet targetIndices(final Object[] values) {
@@ -1362,14 +1597,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             
             BitSet targets = new BitSet(this.indices.length);
             for(ImmutablePartitionFunction func : this.partitionFunctions.values()) {
-                String indexName = func.indexName(values);
-                int indexIdx = this.indexToIdx.getOrDefault(indexName, -1);
+                int indexIdx = func.indexOrdinal(values);
                 if (indexIdx >= 0) {
                     targets.set(indexIdx);
                 } else {
                     if (logger.isDebugEnabled())
                         logger.debug("No target index=[{}] found for partition function name=[{}] pattern=[{}] indices={}", 
-                                indexName, func.name, func.pattern, 
+                                func.indexName(values), func.name, func.pattern, 
                                 Arrays.stream(mappingInfo.indices).map(i -> i.name).collect(Collectors.joining()));
                 }
             }
@@ -1384,14 +1618,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             
             BitSet targets = new BitSet(this.indices.length);
             for(ImmutablePartitionFunction func : this.partitionFunctions.values()) {
-                String indexName = func.indexName(values);
-                int indexIdx = this.indexToIdx.getOrDefault(indexName, -1);
+                int indexIdx = func.indexOrdinal(values);
                 if (indexIdx >= 0) {
                     targets.set(indexIdx);
                 } else {
                     if (logger.isWarnEnabled())
                         logger.warn("No target index=[{}] found, function name=[{}] pattern=[{}], return all indices={}", 
-                                indexName, func.name, func.pattern, 
+                                func.indexName(values), func.name, func.pattern, 
                                 Arrays.stream(mappingInfo.indices).map(i -> i.name).collect(Collectors.joining()));
                     for(String index : func.indices) {
                         int i = this.indexToIdx.getOrDefault(index, -1);
@@ -1490,7 +1723,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         if (hasMissingFields) {
                             if (logger.isTraceEnabled())
                                 logger.trace("indexer={} read partition for clusterings={}", this.hashCode(), clusterings);
+                            final long lockStart = System.nanoTime();
                             synchronized(getLock()) {
+                                record(Stage.LOCK_WAIT, lockStart);
+                                final long readStart = System.nanoTime();
                                 SinglePartitionReadCommand command = SinglePartitionReadCommand.create(baseCfs.metadata, nowInSec, key, clusterings);
                                 RowIterator rowIt = read(command);
                                 if (!rowIt.staticRow().isEmpty())
@@ -1502,10 +1738,12 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                         if (indexSomeStaticColumnsOnWideRow && inStaticRow != null)
                                             rowcument.readCellValues(inStaticRow, true);
                                         rowcuments.put(row.clustering(), rowcument);
+                                        count(Counter.REREAD);
                                     } catch (IOException e) {
                                         logger.error("Unexpected error", e);
                                     }
                                 }
+                                record(Stage.READ_BEFORE_WRITE, readStart);
                                 for(WideRowcument rowcument : rowcuments.values())
                                     rowcument.write();
                             }
@@ -1529,18 +1767,25 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             
             /**
              * Notification of a top level partition delete.
-             * Deleting a wide-row require a deleteByQuery on doc type + partition key = elasticsearch _routing.
+             * Deleting a wide-row require a deleteByQuery on doc type + partition key = elasticsearch _routing,
+             * or a delete by term on _routing when the index only contains this document type.
              * @param deletionTime
              */
             @Override
-            public void partitionDelete(IndexShard indexShard) throws IOException {
+            public void partitionDelete(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard) throws IOException {
                 if (logger.isTraceEnabled())
                     logger.trace("deleting documents where _routing={} from index.type={}.{}", this.partitionKey, indexShard.shardId().getIndexName(), typeName);
-                BooleanQuery.Builder builder = new BooleanQuery.Builder();
-                builder.add(typeTermQuery, Occur.FILTER);
-                builder.add(new TermQuery(new Term(RoutingFieldMapper.NAME, this.partitionKey)), Occur.FILTER);
-                DeleteByQuery deleteByQuery = new DeleteByQuery(builder.build(), null, null, null, null, Operation.Origin.PRIMARY, System.currentTimeMillis(), typeName);
-                indexShard.getEngine().delete(deleteByQuery);
+                final long start = System.nanoTime();
+                Query query = new TermQuery(new Term(RoutingFieldMapper.NAME, this.partitionKey));
+                if (!indexInfo.singleType) {
+                    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+                    builder.add(typeTermQuery, Occur.FILTER);
+                    builder.add(query, Occur.FILTER);
+                    query = builder.build();
+                }
+                DeleteByQuery deleteByQuery = new DeleteByQuery(query, null, null, null, null, Operation.Origin.PRIMARY, System.currentTimeMillis(), typeName);
+                indexShard.getEngine().bufferDelete(deleteByQuery);
+                indexInfo.metrics.record(Stage.DELETE_BY_QUERY, start);
             }
             
             /**
@@ -1604,15 +1849,20 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     case COMPACTION: // remove expired row or reindex a doc when a column has expired, happen only when index_on_compaction=true for at least one elasticsearch index.
                     case UPDATE:
                         if (rowcument.hasMissingFields()) {
+                            final long lockStart = System.nanoTime();
                             synchronized(getLock()) {
+                                record(Stage.LOCK_WAIT, lockStart);
+                                final long readStart = System.nanoTime();
                                 SinglePartitionReadCommand command = SinglePartitionReadCommand.fullPartitionRead(baseCfs.metadata, nowInSec, key);
                                 RowIterator rowIt = read(command);
                                 if (rowIt.hasNext())
                                     try {
                                         rowcument = new SkinnyRowcument(rowIt.next(), null);
+                                        count(Counter.REREAD);
                                     } catch (IOException e) {
                                         logger.error("Unexpected error", e);
                                     }
+                                record(Stage.READ_BEFORE_WRITE, readStart);
                                 rowcument.write();
                             }
                         } else {
@@ -1627,7 +1877,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
              * @param deletionTime
              */
             @Override
-            public void partitionDelete(IndexShard indexShard) throws IOException {
+            public void partitionDelete(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard) throws IOException {
                 Term termUid = new Term(UidFieldMapper.NAME, BytesRefs.toBytesRef(Uid.createUid(typeName, this.partitionKey)));
                 if (logger.isDebugEnabled())
                     logger.debug("deleting document from index.type={}.{} id={} termUid={}", indexShard.shardId().getIndexName(), typeName, this.partitionKey, termUid.text());
@@ -1674,6 +1924,17 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 return readBeforeWriteLocks[Math.abs(key.hashCode() % readBeforeWriteLocks.length)];
             }
 
+            // record a table level stage in the write path metrics of all associated indices.
+            protected void record(Stage stage, long startNanos) {
+                for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
+                    indexInfo.metrics.record(stage, startNanos);
+            }
+
+            protected void count(Counter counter) {
+                for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
+                    indexInfo.metrics.inc(counter);
+            }
+
             /**
              * Notification of the start of a partition update.
              * This event always occurs before any other during the update.
@@ -1752,7 +2013,9 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             public void finish() {
                 try {
                     flush();
-                    if (this.targets == null) {
+                    if (ElasticIndexBuilder.isBuilding()) {
+                        // refreshed once at the end of the index build.
+                    } else if (this.targets == null) {
                         // refresh all associated indices.
                         for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
                             indexInfo.refresh();
@@ -1780,12 +2043,15 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             class Rowcument {
                 final String id;
                 final Object[] values = new Object[fieldsToIdx.size()];
+                final ByteBuffer[] cellValues = (cellWriterFields == null) ? null : new ByteBuffer[fieldsToIdx.size()]; // values written by cell writers
                 final BitSet fieldsNotNull = new BitSet(fieldsToIdx.size());     // regular or static columns only
                 final BitSet tombstoneColumns = new BitSet(fieldsToIdx.size());  // regular or static columns only
                 int   docTtl = Integer.MAX_VALUE;
+                int   docExpiry = 0;    // latest expiration time of live cells, Integer.MAX_VALUE if some cells never expire.
                 int   inRowDataSize = 0;
                 boolean hasLiveData = false;
                 boolean hasRowMarker = false;
+                boolean allColumnsWritten = false;  // true if the mutation writes all regular (or static) columns of the row.
                 final boolean isStatic;
                 
                 /**
@@ -1798,7 +2064,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     if (inRow != null) {
                         this.inRowDataSize = inRow.dataSize();
                         this.hasRowMarker = inRow.primaryKeyLivenessInfo().isLive(nowInSec);
+                        if (this.hasRowMarker)
+                            this.docExpiry = inRow.primaryKeyLivenessInfo().isExpiring() ? inRow.primaryKeyLivenessInfo().localExpirationTime() : Integer.MAX_VALUE;
                         this.hasLiveData = inRow.hasLiveData(nowInSec, baseCfs.metadata.enforceStrictLiveness());
+                        this.allColumnsWritten = inRow.columns().size() == (inRow.isStatic() ? baseCfs.metadata.partitionColumns().statics.size() : baseCfs.metadata.partitionColumns().regulars.size());
                     } 
                     Row row = inRow != null ? inRow : outRow;
                     this.isStatic = row.isStatic();
@@ -1845,6 +2114,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
                 
                 public void readCellValue(Cell cell, boolean indexOp) throws IOException {
+                    // static cells don't keep a clustering row alive.
+                    if (indexOp && (isStatic || !cell.column().isStatic()) && cell.isLive(nowInSec))
+                        docExpiry = Math.max(docExpiry, cell.isExpiring() ? cell.localDeletionTime() : Integer.MAX_VALUE);
+                    
                     final String cellNameString = cell.column().name.toString();
                     int idx  = fieldsToIdx.getOrDefault(cellNameString, -1);
                     if (idx == - 1)
@@ -1902,6 +2175,13 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                 break;
                             }
                             fieldsNotNull.set(idx, value != null);
+                        } else if (cellValues != null && cellWriterFields.get(idx)) {
+                            // decoded from the cell value when building the document.
+                            if (logger.isTraceEnabled()) 
+                                logger.trace("name={} kind={} type={} cell value", cellNameString, cd.kind, cd.type.asCQL3Type().toString());
+                            cellValues[idx] = cell.value();
+                            values[idx] = null;
+                            fieldsNotNull.set(idx);
                         } else {
                             Object value = ClusterService.deserialize(cd.type, cell.value() );
                             if (logger.isTraceEnabled()) 
@@ -1912,7 +2192,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         }
                     } else {
                         // tombstone => black list this column for later document.read().
-                        if (values[idx]==null)
+                        if (values[idx]==null && (cellValues == null || cellValues[idx] == null))
                             tombstoneColumns.set(idx);
                     }
                 }
@@ -1925,6 +2205,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     if (hasIndexedMultiCell)
                         return true;
                     
+                    // the row expiration is the latest expiration of its live cells, including cells not written by this mutation.
+                    if (indexTTLExpiry && (hasRowMarker || isStatic) && docExpiry > 0 && docExpiry < Integer.MAX_VALUE && !allColumnsWritten)
+                        return true;
+                    
                     // add missing or collection columns that should be read before indexing the document.
                     // read missing static or regular columns
                     final BitSet mustReadFields = (BitSet)fieldsToRead.clone();
@@ -1973,16 +2257,39 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                         context.doc().add(DEFAULT_INTERNAL_VERSION);
                     }
                     
-                    // add all mapped fields to the current context.
+                    // add all mapped fields to the current context, static columns of wide rows are joined from the static document.
+                    final boolean skipStaticColumns = indexInfo.index_static_join && !staticColumnsOnly;
+                    final Field[][] cellFields = (cellValues == null) ? null : context.cellFields(indexInfo);
                     for(int i=0; i < values.length; i++) {
+                        if (skipStaticColumns && indexInfo.isStaticField(i))
+                            continue;
                         if (indexInfo.mappers[i] != null)
                             try {
-                                context.addField(indexInfo, indexInfo.mappers[i], values[i]);
+                                if (cellValues != null && cellValues[i] != null) {
+                                    final CellWriter writer = indexInfo.cellWriters[i];
+                                    if (cellFields[i] == null)
+                                        cellFields[i] = writer.newFields();
+                                    if (!writer.write(context.doc(), cellFields[i], cellValues[i]))
+                                        context.addField(indexInfo, indexInfo.mappers[i], writer.compose(cellValues[i]));
+                                } else {
+                                    context.addField(indexInfo, indexInfo.mappers[i], values[i]);
+                                }
                             } catch (IOException e) {
                                 logger.error("error", e);
                             }
                     }
                    
+                    // index the row expiration time in the root and nested documents, only when the row liveness is known:
+                    // without a row marker in the mutation, the row may live beyond its cells through an earlier row marker.
+                    if (indexInfo.index_ttl_expiry && (hasRowMarker || isStatic) && docExpiry > 0 && docExpiry < Integer.MAX_VALUE) {
+                        for(Document doc : context.docs())
+                            TTLExpiry.addExpiry(doc, docExpiry);
+                    }
+                    
+                    // binary image of the row for local fetches, not written when some cells expire as expiration does not reindex the document.
+                    if (indexInfo.index_row_image && docTtl == Integer.MAX_VALUE && docExpiry == Integer.MAX_VALUE)
+                        addRowImage(context);
+                    
                     // postCreate for all metadata fields.
                     Mapping mapping = context.docMapper.mapping();
                     for (MetadataFieldMapper metadataMapper : mapping.metadataMappers()) {
@@ -2027,6 +2334,42 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                     return context;
                 }
                 
+                /**
+                 * Add the row image of the indexed columns to the root document. Null values are written when known to be null,
+                 * that is for tombstones and for the mandatory regular columns read before indexing when missing.
+                 */
+                private void addRowImage(Context context) {
+                    final int[] ordinals = new int[values.length];
+                    final ByteBuffer[] buffers = new ByteBuffer[values.length];
+                    int count = 0;
+                    try {
+                        for(int i=0; i < values.length; i++) {
+                            final int ordinal = rowImageOrdinals[i];
+                            if (ordinal < 0)
+                                continue;
+                            if (!isStatic && staticColumns != null && staticColumns.get(i))
+                                continue; // static-only updates do not reindex row documents, so fetch static columns from cassandra.
+                            final ColumnDefinition cd = rowImageColumns.column(ordinal);
+                            final ByteBuffer value;
+                            if (cellValues != null && cellValues[i] != null) {
+                                value = cellValues[i];
+                            } else if (values[i] != null) {
+                                // partition key columns are composed, other columns are decoded by ClusterService.deserialize.
+                                value = cd.isPartitionKey() ? ((AbstractType) cd.type).decompose(values[i]) : RowImage.serialize(cd.type, values[i]);
+                            } else if (tombstoneColumns.get(i) || (!isStatic && fieldsToRead.get(i))) {
+                                value = null;
+                            } else {
+                                continue;
+                            }
+                            ordinals[count] = ordinal;
+                            buffers[count++] = value;
+                        }
+                        context.rootDoc().add(new StoredField(RowImage.NAME, rowImageColumns.write(ordinals, buffers, count)));
+                    } catch (Exception e) {
+                        logger.debug("No row image for id=[{}]: {}", id, e.toString());
+                    }
+                }
+                
                 public void write() {
                     try {
                         if (hasLiveData() || hasRowMarker) {
@@ -2040,88 +2383,164 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
                 
                 private void index() {
-                    long startTime = System.nanoTime();
-                    long ttl = (long)((this.docTtl < Integer.MAX_VALUE) ? this.docTtl : 0);
+                    final long startTime = System.nanoTime();
+                    final long ttl = (long)((this.docTtl < Integer.MAX_VALUE) ? this.docTtl : 0);
+                    final BitSet indexTargets = ImmutableMappingInfo.this.targetIndices(values);
+                    targets = indexTargets;
+                    if (indexTargets != null) {
+                        // indices excluded by the partition function.
+                        for(int i = indexTargets.nextClearBit(0); i < indices.length; i = indexTargets.nextClearBit(i+1))
+                            indices[i].metrics.inc(Counter.SKIPPED);
+                    }
                     
-                    targets = ImmutableMappingInfo.this.targetIndices(values);
-                    if (targets == null) {
-                        // index for associated indices
-                        for(ImmutableIndexInfo indexInfo : indices)
-                            index(indexInfo, startTime, ttl);
+                    // one document is built per group of indices sharing the same mapping.
+                    final BitSet groups = new BitSet(indices.length);
+                    if (indexTargets == null) {
+                        for(int i = 0; i < indices.length; i++)
+                            groups.set(documentGroups[i]);
                     } else {
-                        // delete for matching target indices.
-                        for(int i = targets.nextSetBit(0); i >= 0 && i < indices.length; i = targets.nextSetBit(i+1))
-                            index(indices[i], startTime, ttl);
+                        for(int i = indexTargets.nextSetBit(0); i >= 0 && i < indices.length; i = indexTargets.nextSetBit(i+1))
+                            groups.set(documentGroups[i]);
                     }
-                }
-
-                private void index(ImmutableIndexInfo indexInfo, long startTime, long ttl) {
-                    if (indexInfo.index_on_compaction || transactionType == IndexTransaction.Type.UPDATE) {
-                        if (isStatic() && !indexInfo.index_static_document)
-                            return; // ignore static document.
-                        if (!isStatic() && indexInfo.index_static_only)
-                            return; // ignore non-static document.
-                            
+                    
+                    final int first = groups.nextSetBit(0);
+                    if (first < 0)
+                        return;
+                    
+                    if (indexingFanoutExecutor == null || groups.cardinality() == 1) {
+                        for(int g = first; g >= 0; g = groups.nextSetBit(g+1))
+                            index(g, indexTargets, startTime, ttl);
+                    } else {
+                        // dispatch other groups on the fan-out pool, index the first one in the caller thread and wait for all.
+                        final List<Future<?>> futures = new ArrayList<>(groups.cardinality() - 1);
+                        for(int g = groups.nextSetBit(first+1); g >= 0; g = groups.nextSetBit(g+1)) {
+                            final int group = g;
+                            futures.add(indexingFanoutExecutor.submit(() -> index(group, indexTargets, startTime, ttl)));
+                        }
+                        RuntimeException failure = null;
                         try {
-                            Context context = buildContext(indexInfo, isStatic());
-                            Field uid = context.uid();
-                            if (isStatic()) {
-                                uid = new Field(UidFieldMapper.NAME, Uid.createUid(typeName, partitionKey), UidFieldMapper.Defaults.FIELD_TYPE);
-                                for(Document doc : context.docs()) {
-                                    if (doc instanceof Context.StaticDocument)
-                                        ((Context.StaticDocument)doc).applyFilter(isStatic());
-                                }
+                            index(first, indexTargets, startTime, ttl);
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                        for(Future<?> future : futures) {
+                            try {
+                                future.get();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                failure = addFailure(failure, e);
+                                break;
+                            } catch (ExecutionException e) {
+                                failure = addFailure(failure, e.getCause());
                             }
-                            context.finalize();
-                            final ParsedDocument parsedDoc = new ParsedDocument(
-                                    context.version(),
-                                    (isStatic()) ? partitionKey : id,
-                                    context.type(),
-                                    ClusterService.stringify(pkCols, baseCfs.metadata.partitionKeyColumns().size()), // routing
-                                    System.currentTimeMillis(), // timstamp
-                                    ttl,
-                                    ((Long)key.getToken().getTokenValue()).longValue(), 
-                                    context.docs(), 
-                                    context.source(), // source 
-                                    XContentType.JSON,
-                                    (Mapping)null); // mappingUpdate
-                            
-                            parsedDoc.parent(context.parent());
-    
-                            if (logger.isTraceEnabled()) {
-                                logger.trace("index={} id={} type={} routing={}", context.indexInfo.name, parsedDoc.id(), parsedDoc.type(), parsedDoc.routing());
-                                for(int k = 0; k< parsedDoc.docs().size(); k++)
-                                    logger.trace("doc[{}]={}", k, parsedDoc.docs().get(k));
+                        }
+                        // propagate indexing failures to the write path, as when indexing in the caller thread.
+                        if (failure != null)
+                            throw failure;
+                    }
+                }
+                
+                private RuntimeException addFailure(RuntimeException failure, Throwable t) {
+                    if (failure == null)
+                        return (t instanceof RuntimeException) ? (RuntimeException) t : new RuntimeException(t);
+                    failure.addSuppressed(t);
+                    return failure;
+                }
+                
+                /**
+                 * Build the document with the mapping of the group leader, and index it into all target indices of the group.
+                 */
+                private void index(int group, BitSet indexTargets, long startTime, long ttl) {
+                    final ImmutableIndexInfo leader = indices[group];
+                    if ((!leader.index_on_compaction && transactionType != IndexTransaction.Type.UPDATE) ||
+                        (isStatic() && !leader.index_static_document) ||    // ignore static document.
+                        (!isStatic() && leader.index_static_only)) {        // ignore non-static document.
+                        for(int i = group; i < indices.length; i++) {
+                            if (documentGroups[i] == group && (indexTargets == null || indexTargets.get(i)))
+                                indices[i].metrics.inc(Counter.SKIPPED);
+                        }
+                        return;
+                    }
+                    
+                    try {
+                        final long start = System.nanoTime();
+                        final Context context = buildContext(leader, isStatic());
+                        if (isStatic() && leader.index_static_join)
+                            StaticJoin.markStaticDocument(context.rootDoc());
+                        final ParsedDocument parsedDoc = parsedDocument(context, ttl);
+                        final Term uidTerm = context.docMapper.uidMapper().term(Uid.createUid(context.docMapper.type(), id));
+                        for(int i = group; i < indices.length; i++) {
+                            if (documentGroups[i] == group && (indexTargets == null || indexTargets.get(i)))
+                                indices[i].metrics.record(Stage.BUILD_CONTEXT, start);
+                        }
+                        for(int i = group; i < indices.length; i++) {
+                            if (documentGroups[i] == group && (indexTargets == null || indexTargets.get(i)))
+                                index(indices[i], context, parsedDoc, uidTerm, startTime, ttl);
+                        }
+                    } catch (IOException e) {
+                        logger.error("error", e);
+                    }
+                }
+                
+                private ParsedDocument parsedDocument(Context context, long ttl) {
+                    if (isStatic()) {
+                        for(Document doc : context.docs()) {
+                            if (doc instanceof Context.StaticDocument)
+                                ((Context.StaticDocument)doc).applyFilter(isStatic());
+                        }
+                    }
+                    context.finalize();
+                    final ParsedDocument parsedDoc = new ParsedDocument(
+                            context.version(),
+                            (isStatic()) ? partitionKey : id,
+                            context.type(),
+                            partitionKey, // routing
+                            System.currentTimeMillis(), // timstamp
+                            ttl,
+                            ((Long)key.getToken().getTokenValue()).longValue(), 
+                            context.docs(), 
+                            context.source(), // source 
+                            XContentType.JSON,
+                            (Mapping)null); // mappingUpdate
+                    
+                    parsedDoc.parent(context.parent());
+                    return parsedDoc;
+                }
+
+                private void index(ImmutableIndexInfo indexInfo, Context context, ParsedDocument parsedDoc, Term uidTerm, long startTime, long ttl) throws IOException {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("index={} id={} type={} routing={}", indexInfo.name, parsedDoc.id(), parsedDoc.type(), parsedDoc.routing());
+                        for(int k = 0; k< parsedDoc.docs().size(); k++)
+                            logger.trace("doc[{}]={}", k, parsedDoc.docs().get(k));
+                    }
+                    
+                    final IndexShard indexShard = indexInfo.shard();
+                    if (indexShard != null) {
+                        if (!indexInfo.updated)
+                            indexInfo.updated = true;
+                        final Engine.Index operation = new Engine.Index(uidTerm, 
+                                parsedDoc, 
+                                1L, 
+                                VersionType.INTERNAL, 
+                                Engine.Operation.Origin.PRIMARY, 
+                                startTime, 
+                                startTime, false) {
+                            @Override
+                            public int estimatedSizeInBytes() {
+                                return (id.length() + context.docMapper.type().length()) * 2 + inRowDataSize + 12;
                             }
-                            
-                            final IndexShard indexShard = context.indexInfo.shard();
-                            if (indexShard != null) {
-                                if (!indexInfo.updated)
-                                    indexInfo.updated = true;
-                                final Engine.Index operation = new Engine.Index(context.docMapper.uidMapper().term(Uid.createUid(context.docMapper.type(), id)), 
-                                        parsedDoc, 
-                                        1L, 
-                                        VersionType.INTERNAL, 
-                                        Engine.Operation.Origin.PRIMARY, 
-                                        startTime, 
-                                        startTime, false) {
-                                    @Override
-                                    public int estimatedSizeInBytes() {
-                                        return (id.length() + context.docMapper.type().length()) * 2 + inRowDataSize + 12;
-                                    }
-                                };
-                                
-                                IndexResult result = indexShard.index(indexShard.getEngine(), operation);
-                                
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("document CF={}.{} index/type={}/{} id={} version={} created={} static={} ttl={} refresh={} ", 
-                                        baseCfs.metadata.ksName, baseCfs.metadata.cfName,
-                                        context.indexInfo.name, typeName,
-                                        parsedDoc.id(), operation.version(), result.isCreated(), isStatic(), ttl, context.indexInfo.refresh);
-                                }
-                             }
-                        } catch (IOException e) {
-                            logger.error("error", e);
+                        };
+                        
+                        final long start = System.nanoTime();
+                        IndexResult result = indexShard.index(indexShard.getEngine(), operation);
+                        indexInfo.metrics.record(Stage.INDEX, start);
+                        indexInfo.metrics.inc(Counter.INDEXED);
+                        
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("document CF={}.{} index/type={}/{} id={} version={} created={} static={} ttl={} refresh={} ", 
+                                baseCfs.metadata.ksName, baseCfs.metadata.cfName,
+                                indexInfo.name, typeName,
+                                parsedDoc.id(), operation.version(), result.isCreated(), isStatic(), ttl, indexInfo.refresh);
                         }
                     }
                 }
@@ -2179,7 +2598,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                             if (!indexInfo.updated)
                                 indexInfo.updated = true;
                             try {
-                                partitionDelete(indexShard);
+                                partitionDelete(indexInfo, indexShard);
                             } catch (EngineException e) {
                                 logger.error("Document deletion error", e);
                             }
@@ -2194,7 +2613,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                 }
             }
             
-            public abstract void partitionDelete(IndexShard indexShard) throws IOException;
+            public abstract void partitionDelete(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard) throws IOException;
 
             /**
              * Notification of a RangeTombstone.
@@ -2293,6 +2712,33 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
 	 return null;
     }
     
+    /**
+     * Index build with partitions indexed in parallel and refresh suspended, see {@link ElasticIndexBuilder}.
+     */
+    @Override
+    public IndexBuildingSupport getBuildTaskSupport() {
+        return ElasticIndexBuilder.INDEX_BUILDER_SUPPORT;
+    }
+
+    /**
+     * Refresh all started shards of the indices associated to this table.
+     */
+    public void refresh(String source) {
+        final ImmutableMappingInfo mappingInfo = this.mappingInfo;
+        if (mappingInfo != null && mappingInfo.indices != null) {
+            for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : mappingInfo.indices) {
+                IndexShard indexShard = indexInfo.shard();
+                if (indexShard != null) {
+                    try {
+                        indexShard.refresh(source);
+                    } catch (Throwable e) {
+                        logger.error("Error while refreshing index=[{}]", e, indexInfo.name);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Return a task to perform any initialization work when a new index instance is created.
      * This may involve costly operations such as (re)building the index, and is performed asynchronously
@@ -2359,6 +2805,7 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
     {
         return () -> {
              if (isIndexing()) {
+                String commitLogPosition = indexedCommitLogPosition();
                 for(ImmutableMappingInfo.ImmutableIndexInfo indexInfo : mappingInfo.indices) {
                     try {
                         IndexShard indexShard = indexInfo.indexService.getShardOrNull(0);
@@ -2366,9 +2813,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                             if (indexShard.state() == IndexShardState.STARTED)  {
                                 long start = System.currentTimeMillis();
                                 indexInfo.updated = false; // reset updated state
-                                indexShard.flush(new FlushRequest().force(false).waitIfOngoing(true));
+                                indexShard.getEngine().setCommitLogPosition(this.baseCfs.keyspace.getName()+"."+this.baseCfs.name, commitLogPosition);
+                                indexShard.coalescedFlush();
                                 if (logger.isInfoEnabled())
-                                    logger.info("Elasticsearch index=[{}] type=[{}] flushed, duration={}ms",indexInfo.name, indexInfo.type, System.currentTimeMillis() - start);
+                                    logger.info("Elasticsearch index=[{}] type=[{}] flushed, commitlog position={} duration={}ms",indexInfo.name, indexInfo.type, commitLogPosition, System.currentTimeMillis() - start);
                             } else {
                                 if (logger.isDebugEnabled())
                                     logger.debug("Cannot flush index=[{}], state=[{}]",indexInfo.name, indexShard.state());
@@ -2383,6 +2831,23 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
         };
     }
     
+    /**
+     * Commitlog position below which all mutations of the base table are indexed.
+     * Mutations older than the lowest bound of the live and flushing memtables have completed their write barrier,
+     * so they have been indexed before this flush task runs.
+     * @return commitlog position formatted as segmentId:position
+     */
+    String indexedCommitLogPosition() {
+        CommitLogPosition lowerBound = null;
+        for(Memtable memtable : this.baseCfs.getTracker().getView().getAllMemtables()) {
+            if (lowerBound == null || memtable.getCommitLogLowerBound().compareTo(lowerBound) < 0)
+                lowerBound = memtable.getCommitLogLowerBound();
+        }
+        if (lowerBound == null)
+            lowerBound = CommitLogPosition.NONE;
+        return lowerBound.segmentId + ":" + lowerBound.position;
+    }
+
     static FileAttribute<?> snapshotDirPermissions = PosixFilePermissions.asFileAttribute(EnumSet.of(
             PosixFilePermission.OWNER_EXECUTE, 
             PosixFilePermission.OWNER_READ, 
@@ -2393,9 +2858,8 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             PosixFilePermission.OTHERS_READ));
     
     /**
-     * Cassandra table snapshot, hard links associated elasticsearch lucene files.
+     * Cassandra table snapshot, hard links the files of the last lucene commit with a manifest, see {@link LuceneSnapshot}.
      */
-    @SuppressForbidden(reason="File used for snapshots")
     @Override
     public Callable<?> getSnapshotWithoutFlushTask(String snapshotName) 
     {
@@ -2416,19 +2880,10 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
                                 Files.createDirectory(snapshotIndex, snapshotDirPermissions);
                             
                             // snapshotDir = data/elasticsearch.data/nodes/0/snapshots/<index_uuid>/<snapshot_name>
-                            Path snapshotDir = Files.createDirectory(snapshotIndex.resolve(snapshotName), snapshotDirPermissions);
-                            Path indexPath = indexShard.shardPath().resolveIndex();
-                            
-                            try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexPath, "{_*.*,segments*}")) {
-                                for (Path luceneFile: stream) {
-                                    File targetLink = new File(snapshotDir.toFile(), luceneFile.getFileName().toString());
-                                    FileUtils.createHardLink(luceneFile.toFile(), targetLink);
-                                }
-                                if (logger.isDebugEnabled())
-                                    logger.debug("Elasticsearch index=[{}/{}], snapshot=[{}], path=[{}]",indexInfo.name, indexInfo.indexService.indexUUID(), snapshotName, snapshotDir.toString());
-                            } catch (DirectoryIteratorException ex) {
-                                logger.error("Failed to retreive lucene files in {}", ex, indexPath);
-                            }
+                            LuceneSnapshot snapshot = LuceneSnapshot.snapshot(indexShard, snapshotIndex, snapshotName, snapshotDirPermissions, logger);
+                            if (snapshot != null && logger.isDebugEnabled())
+                                logger.debug("Elasticsearch index=[{}/{}], snapshot=[{}], files={} total_bytes={} new_bytes={}",
+                                        indexInfo.name, indexInfo.indexService.indexUUID(), snapshotName, snapshot.files().size(), snapshot.totalBytes(), snapshot.newBytes());
                         } else {
                             if (logger.isDebugEnabled())
                                 logger.debug("Cannot snapshot index=[{}/{}], state=[{}], snapshot=[{}]",indexInfo.name, indexInfo.indexService.indexUUID(), indexShard.state(), snapshotName);
@@ -2540,7 +2995,12 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
 
     @Override
     public RowFilter getPostIndexQueryFilter(RowFilter filter) {
-        return null;
+        // es_query and es_options are handled by the ElasticIndexSearcher, other expressions still apply to returned rows.
+        for(RowFilter.Expression expression : filter) {
+            if (supportsExpression(expression.column(), expression.operator()))
+                filter = filter.without(expression);
+        }
+        return filter;
     }
 
     @Override
@@ -2552,12 +3012,11 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
 
     @Override
     public Searcher searcherFor(ReadCommand command) {
-        return (group) -> {
-            throw new IllegalStateException("CQL query not supported.");
-        };
+        return new ElasticIndexSearcher(this, command);
     }
     
     public Indexer indexerFor(DecoratedKey key, PartitionColumns columns, int nowInSec, Group opGroup, Type transactionType) {
+        final long start = System.nanoTime();
         if (isIndexing()) {
             if (transactionType == Type.COMPACTION && !this.mappingInfo.indexOnCompaction)
                 return null;
@@ -2573,10 +3032,11 @@ public class ElasticSecondaryIndex implements Index, ClusterStateListener {
             }
             if (found) {
                 try {
-                    if (baseCfs.getComparator().size() == 0)
-                        return this.mappingInfo.new SkinnyRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
-                    else 
-                        return this.mappingInfo.new WideRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
+                    final ImmutableMappingInfo.RowcumentIndexer indexer = (baseCfs.getComparator().size() == 0) ?
+                        this.mappingInfo.new SkinnyRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType) :
+                        this.mappingInfo.new WideRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
+                    indexer.record(Stage.INDEXER_SETUP, start);
+                    return indexer;
                 } catch (Throwable e) {
                     throw new RuntimeException(e);
                 }
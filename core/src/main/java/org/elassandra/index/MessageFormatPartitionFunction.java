@@ -15,8 +15,17 @@
  */
 package org.elassandra.index;
 
+import java.text.ChoiceFormat;
+import java.text.DateFormat;
+import java.text.Format;
 import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.Locale;
+import java.util.UUID;
 
 /**
  * Default PartitionFunction implementation.
@@ -33,4 +42,139 @@ public class MessageFormatPartitionFunction implements PartitionFunction {
         MessageFormat mf = new MessageFormat(pattern, Locale.ROOT);
         return mf.format(args);
     }
+    
+    /**
+     * Parse the pattern once, MessageFormat is not thread-safe, so each thread formats with its own copy.
+     * Dates are cached by time buckets according to the finest time unit of the date format,
+     * bucket boundaries are aligned on 15 minutes to be timezone independent.
+     */
+    @Override
+    public Formatter compile(String pattern) {
+        final MessageFormat prototype = new MessageFormat(pattern, Locale.ROOT);
+        final ThreadLocal<MessageFormat> perThreadFormat = ThreadLocal.withInitial(() -> (MessageFormat) prototype.clone());
+        final Format[] formats = prototype.getFormatsByArgumentIndex();
+        final Format format = (formats.length > 0) ? formats[0] : null;
+        final long dateBucket = dateBucketMillis(format);
+        return new Formatter() {
+            @Override
+            public String format(Object... args) {
+                return perThreadFormat.get().format(args);
+            }
+
+            @Override
+            public Object cacheKey(Object value) {
+                if (value instanceof String || value instanceof Boolean || value instanceof UUID)
+                    return value;
+                if (value instanceof Number)
+                    return (format == null || format instanceof NumberFormat) ? value : null;
+                if (value instanceof Date && dateBucket > 0)
+                    return Math.floorDiv(((Date)value).getTime(), dateBucket);
+                return null;
+            }
+            
+            /**
+             * Parse the index name back to the partition argument. Dates cover one unit of the finest field of the date pattern, 
+             * numbers are widened by one to cover the rounding of the number format.
+             */
+            @Override
+            public Bounds bounds(String indexName) {
+                if (formats.length != 1 || !(format instanceof DateFormat || format instanceof NumberFormat) || format instanceof ChoiceFormat)
+                    return null;
+                try {
+                    MessageFormat messageFormat = perThreadFormat.get();
+                    Object[] args = messageFormat.parse(indexName);
+                    if (args.length != 1 || !indexName.equals(messageFormat.format(args)))
+                        return null;
+                    if (args[0] instanceof Date && format instanceof SimpleDateFormat) {
+                        int field = finestCalendarField(((SimpleDateFormat)format).toPattern());
+                        if (field < 0)
+                            return null;
+                        Calendar calendar = (Calendar) ((SimpleDateFormat)format).getCalendar().clone();
+                        calendar.setTime((Date)args[0]);
+                        long lower = calendar.getTimeInMillis();
+                        calendar.add(field, 1);
+                        return new Bounds(true, lower, calendar.getTimeInMillis() - 1);
+                    }
+                    if (args[0] instanceof Number) {
+                        double value = ((Number)args[0]).doubleValue();
+                        return new Bounds(false, value - 1, value + 1);
+                    }
+                } catch (ParseException e) {
+                    // index name not generated by this partition function.
+                }
+                return null;
+            }
+        };
+    }
+    
+    /**
+     * @return the finest {@link Calendar} field of a SimpleDateFormat pattern, or -1 if not supported.
+     * A pattern is supported when it contains every coarser field from the year down to its finest field,
+     * because missing fields parse to their 1970 default. Week, day of year/week and 12-hour fields are not supported.
+     */
+    static int finestCalendarField(String datePattern) {
+        final int[] fields = new int[] { Calendar.YEAR, Calendar.MONTH, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND };
+        boolean quoted = false;
+        int ranks = 0;
+        for(int i = 0; i < datePattern.length(); i++) {
+            char c = datePattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+                continue;
+            }
+            if (quoted)
+                continue;
+            switch(c) {
+            case 'y': ranks |= 1; break;
+            case 'M': case 'L': ranks |= 1 << 1; break;
+            case 'd': ranks |= 1 << 2; break;
+            case 'H': case 'k': ranks |= 1 << 3; break;
+            case 'm': ranks |= 1 << 4; break;
+            case 's': ranks |= 1 << 5; break;
+            case 'S': ranks |= 1 << 6; break;
+            case 'z': case 'Z': case 'X': break;
+            default:
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))
+                    return -1;
+            }
+        }
+        // ranks must be a non-empty sequence of contiguous bits starting from the year.
+        if (ranks == 0 || (ranks & (ranks + 1)) != 0)
+            return -1;
+        return fields[31 - Integer.numberOfLeadingZeros(ranks)];
+    }
+    
+    /**
+     * @return the time bucket size in milliseconds for the date format, or 0 if dates should not be bucketed.
+     */
+    static long dateBucketMillis(Format format) {
+        if (format == null)
+            return 60 * 1000L; // default MessageFormat date format has a minute resolution.
+        if (!(format instanceof SimpleDateFormat))
+            return (format instanceof DateFormat) ? 1000L : 0;
+        
+        String datePattern = ((SimpleDateFormat)format).toPattern();
+        boolean quoted = false;
+        long bucket = 15 * 60 * 1000L;
+        for(int i = 0; i < datePattern.length(); i++) {
+            char c = datePattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+                continue;
+            }
+            if (quoted)
+                continue;
+            switch(c) {
+            case 'S':
+                return 0;
+            case 's':
+                bucket = Math.min(bucket, 1000L);
+                break;
+            case 'm':
+                bucket = Math.min(bucket, 60 * 1000L);
+                break;
+            }
+        }
+        return bucket;
+    }
 }
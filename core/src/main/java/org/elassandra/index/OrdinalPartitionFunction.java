@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+/**
+ * Partition function resolving the target index ordinal of a row without building the index name.
+ * Implementations should not allocate objects in {@link #indexOrdinal(String, String[], Object[], int[])}.
+ *
+ */
+public interface OrdinalPartitionFunction extends PartitionFunction {
+    
+    /**
+     * @param pattern   the partition function pattern.
+     * @param indices   the candidate index names, ordered by ordinal.
+     * @param values    the indexed values of the row.
+     * @param fieldsIdx position in values of the partition function arguments, -1 when the column is not available.
+     * @return the target index ordinal in indices, or -1 if no index matches.
+     */
+    public int indexOrdinal(String pattern, String[] indices, Object[] values, int[] fieldsIdx);
+}
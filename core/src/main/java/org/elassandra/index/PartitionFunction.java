@@ -22,4 +22,60 @@ package org.elassandra.index;
  */
 public interface PartitionFunction {
     public String format(String pattern, Object...args);
+    
+    /**
+     * Compile the pattern once when the mapping is applied, the returned formatter is shared by all indexing threads.
+     * Default implementation calls {@link #format(String, Object...)} for each row.
+     */
+    default Formatter compile(String pattern) {
+        return (args) -> format(pattern, args);
+    }
+    
+    /**
+     * A thread-safe partition function compiled for a given pattern.
+     */
+    @FunctionalInterface
+    public interface Formatter {
+        public String format(Object... args);
+        
+        /**
+         * Return a key such that two values having the same key are formatted to the same index name (ex: the time bucket of a date),
+         * or null if the index name for this value should not be cached. Only used for single-argument partition functions.
+         */
+        default Object cacheKey(Object value) {
+            return (value instanceof String || value instanceof Number || value instanceof Boolean) ? value : null;
+        }
+        
+        /**
+         * Return the bounds of the argument values formatted to the given index name, or null if unknown.
+         * Used to prune partitioned indices at search time.
+         */
+        default Bounds bounds(String indexName) {
+            return null;
+        }
+    }
+    
+    /**
+     * Inclusive bounds of the partition function argument, dates as epoch milliseconds.
+     */
+    public static class Bounds {
+        public final boolean date;
+        public final double lower;
+        public final double upper;
+        
+        public Bounds(boolean date, double lower, double upper) {
+            this.date = date;
+            this.lower = lower;
+            this.upper = upper;
+        }
+        
+        public boolean intersects(double from, double to) {
+            return from <= upper && to >= lower;
+        }
+        
+        @Override
+        public String toString() {
+            return "[" + lower + "," + upper + "]";
+        }
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
+import org.apache.cassandra.db.marshal.ListType;
+import org.apache.cassandra.db.marshal.MapType;
+import org.apache.cassandra.db.marshal.SetType;
+import org.apache.cassandra.db.marshal.TupleType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.marshal.UserType;
+import org.apache.cassandra.serializers.CollectionSerializer;
+import org.apache.cassandra.transport.ProtocolVersion;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary image of the indexed columns of a cassandra row, stored in the {@link #NAME} stored field of the document
+ * when index.index_row_image is true, so that local fetches rebuild the CQL row without reading cassandra.
+ * <p>
+ * Columns are identified by their ordinal in the name ordered columns of the table, and values are serialized as
+ * returned by a CQL select. The image starts with a fingerprint of the table columns and is ignored when the
+ * table has changed since the document was indexed. Only the columns known at indexing time (including known null values)
+ * are written, fetches requesting other columns read cassandra.
+ */
+public class RowImage {
+
+    public static final String NAME = "_row";
+
+    /**
+     * Name ordered columns of a table.
+     */
+    public static class Columns {
+        private final ColumnDefinition[] columns;
+        private final String[] names;
+        private final int fingerprint;
+
+        public Columns(CFMetaData metadata) {
+            List<ColumnDefinition> list = new ArrayList<>();
+            for (ColumnDefinition cd : metadata.allColumns())
+                list.add(cd);
+            list.sort((c1, c2) -> c1.name.toString().compareTo(c2.name.toString()));
+            this.columns = list.toArray(new ColumnDefinition[list.size()]);
+            this.names = new String[columns.length];
+            int h = 1;
+            for (int i = 0; i < columns.length; i++) {
+                names[i] = columns[i].name.toString();
+                h = 31 * h + names[i].hashCode();
+                h = 31 * h + columns[i].type.toString().hashCode();
+            }
+            this.fingerprint = h;
+        }
+
+        /**
+         * @return the ordinal of a column, -1 if the column does not exist or its values cannot be written in a row image.
+         */
+        public int ordinal(String name) {
+            int ordinal = Arrays.binarySearch(names, name);
+            return (ordinal >= 0 && supports(columns[ordinal].type)) ? ordinal : -1;
+        }
+
+        public ColumnDefinition column(int ordinal) {
+            return columns[ordinal];
+        }
+
+        /**
+         * Write a row image.
+         * @param ordinals column ordinals of the values
+         * @param values   serialized values, null for known null values
+         * @param count    number of values
+         */
+        public BytesRef write(int[] ordinals, ByteBuffer[] values, int count) throws IOException {
+            try (BytesStreamOutput out = new BytesStreamOutput()) {
+                out.writeInt(fingerprint);
+                out.writeVInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeVInt(ordinals[i]);
+                    if (values[i] == null) {
+                        out.writeVInt(0);
+                    } else {
+                        ByteBuffer value = values[i].duplicate();
+                        out.writeVInt(value.remaining() + 1);
+                        out.writeBytes(ByteBufferUtil.getArray(value));
+                    }
+                }
+                return out.bytes().toBytesRef();
+            }
+        }
+
+        /**
+         * @return serialized values by column name (null for null values), or null if the image was written for other table columns.
+         */
+        public Map<String, ByteBuffer> read(BytesRef image) throws IOException {
+            try (StreamInput in = new BytesArray(image).streamInput()) {
+                if (in.readInt() != fingerprint)
+                    return null;
+                final int count = in.readVInt();
+                final Map<String, ByteBuffer> values = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    String name = names[in.readVInt()];
+                    int length = in.readVInt();
+                    if (length == 0) {
+                        values.put(name, null);
+                    } else {
+                        byte[] bytes = new byte[length - 1];
+                        in.readBytes(bytes, 0, bytes.length);
+                        values.put(name, ByteBuffer.wrap(bytes));
+                    }
+                }
+                return values;
+            }
+        }
+    }
+
+    /**
+     * Column types whose values, as decoded by {@link org.elasticsearch.cluster.service.ClusterService#deserialize(AbstractType, ByteBuffer)},
+     * can be serialized again. Maps need text keys (other keys are not indexed), counters are not indexed.
+     */
+    static boolean supports(AbstractType<?> type) {
+        if (type instanceof CounterColumnType)
+            return false;
+        if (type instanceof MapType) {
+            AbstractType<?> keysType = ((MapType<?,?>) type).getKeysType();
+            return (keysType instanceof UTF8Type || keysType instanceof AsciiType) && supports(((MapType<?,?>) type).getValuesType());
+        }
+        if (type instanceof ListType)
+            return supports(((ListType<?>) type).getElementsType());
+        if (type instanceof SetType)
+            return supports(((SetType<?>) type).getElementsType());
+        if (type instanceof UserType) {
+            for (AbstractType<?> fieldType : ((UserType) type).fieldTypes())
+                if (!supports(fieldType))
+                    return false;
+            return true;
+        }
+        return !(type instanceof TupleType);
+    }
+
+    /**
+     * Serialize a value decoded by {@link org.elasticsearch.cluster.service.ClusterService#deserialize(AbstractType, ByteBuffer)} without mapper,
+     * user defined types being decoded as maps.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static ByteBuffer serialize(AbstractType<?> type, Object value) {
+        if (value == null)
+            return null;
+        if (type instanceof UserType) {
+            final UserType udt = (UserType) type;
+            final Map<String, Object> map = (Map<String, Object>) value;
+            final ByteBuffer[] components = new ByteBuffer[udt.size()];
+            for (int i = 0; i < components.length; i++)
+                components[i] = serialize(udt.fieldType(i), map.get(udt.fieldNameAsString(i)));
+            return TupleType.buildValue(components);
+        }
+        if (type instanceof MapType) {
+            final MapType<?,?> mapType = (MapType<?,?>) type;
+            final Map<?,?> map = (Map<?,?>) value;
+            final List<ByteBuffer> buffers = new ArrayList<>(2 * map.size());
+            for (Map.Entry<?,?> entry : map.entrySet()) {
+                buffers.add(((AbstractType) mapType.getKeysType()).decompose(entry.getKey()));
+                buffers.add(serialize(mapType.getValuesType(), entry.getValue()));
+            }
+            return CollectionSerializer.pack(buffers, map.size(), ProtocolVersion.CURRENT);
+        }
+        if (type instanceof ListType || type instanceof SetType) {
+            final AbstractType<?> elementType = (type instanceof ListType) ? ((ListType<?>) type).getElementsType() : ((SetType<?>) type).getElementsType();
+            final Collection<?> collection = (Collection<?>) value;
+            final List<ByteBuffer> buffers = new ArrayList<>(collection.size());
+            for (Object element : collection)
+                buffers.add(serialize(elementType, element));
+            return CollectionSerializer.pack(buffers, collection.size(), ProtocolVersion.CURRENT);
+        }
+        return ((AbstractType) type).decompose(value);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.elasticsearch.cluster.metadata.MetaData;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Node level latency histograms and row counters of the elassandra write path, per elasticsearch index.
+ * Latencies are recorded in microseconds into HdrHistogram recorders, so that recording is wait-free for the indexing threads,
+ * and accumulated since the node start when stats are requested.
+ */
+public class WritePathMetrics {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    /**
+     * Timed stages of the write path.
+     */
+    public enum Stage {
+        INDEXER_SETUP("indexer_setup"),         // ElasticSecondaryIndex.indexerFor
+        LOCK_WAIT("lock_wait"),                 // wait on the read-before-write locks
+        READ_BEFORE_WRITE("read_before_write"), // read of missing columns
+        BUILD_CONTEXT("build_context"),         // document build from the row
+        INDEX("index"),                         // IndexShard.index
+        DELETE_BY_QUERY("delete_by_query"),     // partition or range tombstone delete by query
+        REFRESH("refresh");                     // synchronous refresh
+
+        private final String fieldName;
+
+        Stage(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        public String fieldName() {
+            return fieldName;
+        }
+    }
+
+    /**
+     * Row counters of the write path.
+     */
+    public enum Counter {
+        INDEXED("rows_indexed"),    // documents indexed
+        SKIPPED("rows_skipped"),    // documents not indexed because of static document filters, partition functions or index_on_compaction
+        REREAD("rows_reread");      // rows read again from cassandra because of missing columns
+
+        private final String fieldName;
+
+        Counter(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        public String fieldName() {
+            return fieldName;
+        }
+    }
+
+    private final ConcurrentMap<String, IndexMetrics> indices = new ConcurrentHashMap<>();
+
+    public IndexMetrics index(String name) {
+        return indices.computeIfAbsent(name, k -> new IndexMetrics());
+    }
+
+    /**
+     * @return stats of the existing indices, metrics of removed indices are discarded.
+     */
+    public WritePathStats stats(MetaData metaData) {
+        final Map<String, WritePathStats.IndexStats> stats = new HashMap<>();
+        for (Iterator<Map.Entry<String, IndexMetrics>> it = indices.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, IndexMetrics> entry = it.next();
+            if (metaData.hasIndex(entry.getKey()))
+                stats.put(entry.getKey(), entry.getValue().stats());
+            else
+                it.remove();
+        }
+        return new WritePathStats(stats);
+    }
+
+    /**
+     * Write path metrics of an index.
+     */
+    public static class IndexMetrics {
+        private final Recorder[] recorders = new Recorder[Stage.values().length];
+        private final Histogram[] histograms = new Histogram[Stage.values().length];
+        private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+        IndexMetrics() {
+            for (int i = 0; i < recorders.length; i++) {
+                recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+                histograms[i] = new Histogram(SIGNIFICANT_DIGITS);
+            }
+            for (int i = 0; i < counters.length; i++)
+                counters[i] = new LongAdder();
+        }
+
+        /**
+         * Record the elapsed time of a stage started at startNanos (from {@link System#nanoTime()}).
+         */
+        public void record(Stage stage, long startNanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            recorders[stage.ordinal()].recordValue(Math.max(0, micros));
+        }
+
+        public void inc(Counter counter) {
+            counters[counter.ordinal()].increment();
+        }
+
+        synchronized WritePathStats.IndexStats stats() {
+            final WritePathStats.Latency[] latencies = new WritePathStats.Latency[recorders.length];
+            for (int i = 0; i < recorders.length; i++) {
+                histograms[i].add(recorders[i].getIntervalHistogram());
+                latencies[i] = new WritePathStats.Latency(histograms[i]);
+            }
+            final long[] values = new long[counters.length];
+            for (int i = 0; i < counters.length; i++)
+                values[i] = counters[i].sum();
+            return new WritePathStats.IndexStats(values, latencies);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.HdrHistogram.Histogram;
+import org.elassandra.index.WritePathMetrics.Counter;
+import org.elassandra.index.WritePathMetrics.Stage;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Per index latencies (in microseconds) and row counters of the elassandra write path on a node,
+ * reported in the elassandra section of the node stats.
+ */
+public class WritePathStats implements Writeable, ToXContent {
+
+    private final Map<String, IndexStats> indices;
+
+    public WritePathStats(Map<String, IndexStats> indices) {
+        this.indices = indices;
+    }
+
+    public WritePathStats(StreamInput in) throws IOException {
+        indices = in.readMap(StreamInput::readString, IndexStats::new);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeMap(indices, StreamOutput::writeString, (o, stats) -> stats.writeTo(o));
+    }
+
+    public Map<String, IndexStats> getIndices() {
+        return indices;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.ELASSANDRA);
+        builder.startObject(Fields.WRITE_PATH);
+        for (Map.Entry<String, IndexStats> entry : indices.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final String ELASSANDRA = "elassandra";
+        static final String WRITE_PATH = "write_path";
+    }
+
+    /**
+     * Write path stats of an index.
+     */
+    public static class IndexStats implements Writeable, ToXContent {
+        private final long[] counters;
+        private final Latency[] latencies;
+
+        public IndexStats(long[] counters, Latency[] latencies) {
+            this.counters = counters;
+            this.latencies = latencies;
+        }
+
+        public IndexStats(StreamInput in) throws IOException {
+            counters = in.readVLongArray();
+            latencies = in.readArray(Latency::new, Latency[]::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLongArray(counters);
+            out.writeArray(latencies);
+        }
+
+        public long getCount(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        public Latency getLatency(Stage stage) {
+            return latencies[stage.ordinal()];
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            for (Counter counter : Counter.values())
+                builder.field(counter.fieldName(), counters[counter.ordinal()]);
+            for (Stage stage : Stage.values()) {
+                builder.startObject(stage.fieldName());
+                latencies[stage.ordinal()].toXContent(builder, params);
+                builder.endObject();
+            }
+            return builder;
+        }
+    }
+
+    /**
+     * Latency distribution summary of a write path stage, in microseconds.
+     */
+    public static class Latency implements Writeable, ToXContent {
+        private final long count;
+        private final long min;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        public Latency(Histogram histogram) {
+            this.count = histogram.getTotalCount();
+            this.min = count == 0 ? 0 : histogram.getMinValue();
+            this.mean = count == 0 ? 0 : histogram.getMean();
+            this.p50 = histogram.getValueAtPercentile(50.0);
+            this.p90 = histogram.getValueAtPercentile(90.0);
+            this.p99 = histogram.getValueAtPercentile(99.0);
+            this.p999 = histogram.getValueAtPercentile(99.9);
+            this.max = histogram.getMaxValue();
+        }
+
+        public Latency(StreamInput in) throws IOException {
+            count = in.readVLong();
+            min = in.readVLong();
+            mean = in.readDouble();
+            p50 = in.readVLong();
+            p90 = in.readVLong();
+            p99 = in.readVLong();
+            p999 = in.readVLong();
+            max = in.readVLong();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVLong(count);
+            out.writeVLong(min);
+            out.writeDouble(mean);
+            out.writeVLong(p50);
+            out.writeVLong(p90);
+            out.writeVLong(p99);
+            out.writeVLong(p999);
+            out.writeVLong(max);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.field("count", count);
+            builder.field("min_micros", min);
+            builder.field("mean_micros", mean);
+            builder.field("p50_micros", p50);
+            builder.field("p90_micros", p90);
+            builder.field("p99_micros", p99);
+            builder.field("p999_micros", p999);
+            builder.field("max_micros", max);
+            return builder;
+        }
+    }
+}
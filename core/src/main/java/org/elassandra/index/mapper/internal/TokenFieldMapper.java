@@ -15,11 +15,15 @@
  */
 package org.elassandra.index.mapper.internal;
 
+import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortedNumericSortField;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.mapper.EnabledAttributeMapper;
@@ -47,6 +51,11 @@ public class TokenFieldMapper extends MetadataFieldMapper {
     public static final String NAME = "_token";
     public static final String CONTENT_TYPE = "_token";
 
+    /**
+     * Index sort of the indices having token sub-shards, so that a token range is a contiguous range of doc ids in each segment.
+     */
+    public static final Sort INDEX_SORT = new Sort(new SortedNumericSortField(NAME, SortField.Type.LONG));
+
     public static class Defaults extends LegacyLongFieldMapper.Defaults {
         public static final String NAME = TokenFieldMapper.NAME;
         public static final TokenFieldType TOKEN_FIELD_TYPE = new TokenFieldType(NumberFieldMapper.NumberType.LONG);
@@ -159,8 +168,16 @@ public class TokenFieldMapper extends MetadataFieldMapper {
     public void createField(ParseContext context, Object object) throws IOException {
         Long token = (Long) object;
         if (token != null) {
-            context.doc().add(new LongPoint(TokenFieldMapper.NAME, token));
-            context.doc().add(new SortedNumericDocValuesField(TokenFieldMapper.NAME, token)); 
+            Field[] fields = context.reusableFields(this);
+            if (fields == null) {
+                fields = new Field[] { new LongPoint(TokenFieldMapper.NAME, token), new SortedNumericDocValuesField(TokenFieldMapper.NAME, token) };
+                context.reusableFields(this, fields);
+            } else {
+                fields[0].setLongValue(token);
+                fields[1].setLongValue(token);
+            }
+            context.doc().add(fields[0]);
+            context.doc().add(fields[1]); 
         }
     }
     
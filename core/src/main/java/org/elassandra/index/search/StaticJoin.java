@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index.search;
+
+import com.carrotsearch.hppc.LongHashSet;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Join of wide rows with the static document of their partition, when static columns are only indexed in static documents (index_static_join).
+ * Static documents are marked with the {@link #FIELD} field, and partitions are joined on the _token field.
+ */
+public class StaticJoin {
+
+    public static final String FIELD = "_static";
+
+    private static final Term STATIC_TERM = new Term(FIELD, "T");
+
+    public static void markStaticDocument(ParseContext.Document doc) {
+        doc.add(new StringField(FIELD, "T", Field.Store.NO));
+    }
+
+    /**
+     * @return a query matching static documents.
+     */
+    public static Query staticDocumentsQuery() {
+        return new TermQuery(STATIC_TERM);
+    }
+
+    /**
+     * Query matching wide rows whose static document matches the static query.
+     * It is rewritten into a set query on the _token of matching static documents, excluding static documents.
+     */
+    public static class StaticJoinQuery extends Query {
+        private final Query staticQuery;
+
+        public StaticJoinQuery(Query staticQuery) {
+            this.staticQuery = staticQuery;
+        }
+
+        public Query getStaticQuery() {
+            return staticQuery;
+        }
+
+        @Override
+        public Query rewrite(IndexReader reader) throws IOException {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setQueryCache(null);
+            final Query query = new BooleanQuery.Builder()
+                    .add(staticQuery, Occur.FILTER)
+                    .add(staticDocumentsQuery(), Occur.FILTER)
+                    .build();
+
+            // partition tokens of the matching static documents.
+            final LongHashSet tokens = new LongHashSet();
+            searcher.search(query, new SimpleCollector() {
+                SortedNumericDocValues values;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                    values = DocValues.getSortedNumeric(context.reader(), TokenFieldMapper.NAME);
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    values.setDocument(doc);
+                    for (int i = 0; i < values.count(); i++)
+                        tokens.add(values.valueAt(i));
+                }
+
+                @Override
+                public boolean needsScores() {
+                    return false;
+                }
+            });
+
+            if (tokens.isEmpty())
+                return new MatchNoDocsQuery("no matching static document");
+
+            return new ConstantScoreQuery(new BooleanQuery.Builder()
+                    .add(LongPoint.newSetQuery(TokenFieldMapper.NAME, tokens.toArray()), Occur.FILTER)
+                    .add(staticDocumentsQuery(), Occur.MUST_NOT)
+                    .build());
+        }
+
+        @Override
+        public String toString(String field) {
+            return "static_join(" + staticQuery.toString(field) + ")";
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return sameClassAs(obj) && Objects.equals(staticQuery, ((StaticJoinQuery) obj).staticQuery);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * classHash() + staticQuery.hashCode();
+        }
+    }
+}
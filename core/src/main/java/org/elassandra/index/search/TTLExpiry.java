@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index.search;
+
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.util.Map;
+
+/**
+ * Lucene side expiration of documents indexed from Cassandra rows having a TTL.
+ * The row expiration time (in seconds since epoch) is indexed as a point and a doc value in the {@link #FIELD} field,
+ * expired documents are filtered out at search time, and periodically purged by a per-shard sweeper.
+ */
+public class TTLExpiry {
+
+    public static final String FIELD = "_expire";
+
+    /**
+     * Granularity of the cached part of the expired documents filter.
+     */
+    public static final long ROUNDING_SECONDS = 60;
+
+    /**
+     * @return true if index_ttl_expiry is enabled by the _meta of a mapping, or by the index settings when not set in _meta
+     * (the index setting defaults to the es.index_ttl_expiry system property).
+     */
+    public static boolean enabled(IndexSettings indexSettings, Map<String, Object> meta) {
+        // substring(6) = remove "index." from the index settings.
+        Object value = (meta == null) ? null : meta.get(IndexMetaData.SETTING_INDEX_TTL_EXPIRY.substring(6));
+        if (value != null)
+            return XContentMapValues.nodeBooleanValue(value);
+        return indexSettings.getValue(IndexMetaData.INDEX_INDEX_TTL_EXPIRY_SETTING);
+    }
+
+    public static void addExpiry(ParseContext.Document doc, int expireInSec) {
+        doc.add(new LongPoint(FIELD, expireInSec));
+        doc.add(new SortedNumericDocValuesField(FIELD, expireInSec));
+    }
+
+    /**
+     * @return a query matching documents expired at nowInSec.
+     */
+    public static Query expiredQuery(long nowInSec) {
+        return LongPoint.newRangeQuery(FIELD, Long.MIN_VALUE, nowInSec);
+    }
+
+    /**
+     * Query matching expired documents, to be excluded from search results.
+     * Documents expired before now rounded down to {@link #ROUNDING_SECONDS} are matched by a stable (and cacheable) point range query,
+     * more recently expired documents are matched by a small range query checked against doc values.
+     */
+    public static Query expiredFilter(long nowInMillis) {
+        final long nowInSec = nowInMillis / 1000;
+        final long rounded = nowInSec - Math.floorMod(nowInSec, ROUNDING_SECONDS);
+        if (rounded == nowInSec)
+            return expiredQuery(nowInSec);
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(expiredQuery(rounded), Occur.SHOULD);
+        builder.add(new IndexOrDocValuesQuery(
+                LongPoint.newRangeQuery(FIELD, rounded + 1, nowInSec),
+                SortedNumericDocValuesField.newRangeQuery(FIELD, rounded + 1, nowInSec)), Occur.SHOULD);
+        return builder.build();
+    }
+}
@@ -5,10 +5,13 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
 import org.elassandra.cluster.routing.AbstractSearchStrategy;
 import org.elassandra.index.mapper.internal.TokenFieldMapper;
@@ -19,7 +22,11 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
@@ -116,6 +123,68 @@ public class TokenRangesService extends AbstractComponent {
                 false, true, true);
     }
     
+    /**
+     * Token range slice filter of a sliced scroll on the _token field.
+     * @return a query matching the slice id of {@link #sliceTokenRanges(Collection, int, int)}.
+     */
+    public Query getTokenRangesSliceQuery(Collection<Range<Token>> tokenRanges, int id, int max) {
+        List<Range<Token>> slice = sliceTokenRanges(tokenRanges, id, max);
+        if (slice.isEmpty())
+            return new MatchNoDocsQuery("empty token range slice");
+        Query query = getTokenRangesQuery(slice);
+        return (query == null) ? new MatchAllDocsQuery() : query;
+    }
+
+    /**
+     * Split token ranges (the full ring when null) into max contiguous slices of the same width, ordered by token,
+     * so that a slice covers a contiguous part of the partition order.
+     * @return the token ranges of the slice id.
+     */
+    public static List<Range<Token>> sliceTokenRanges(Collection<Range<Token>> tokenRanges, int id, int max) {
+        List<Range<Token>> ranges = new ArrayList<Range<Token>>();
+        for(Range<Token> range : (tokenRanges == null || tokenRanges.isEmpty()) ? Collections.singletonList(AbstractSearchStrategy.FULL_RANGE_TOKEN) : tokenRanges) {
+            if (range.left.equals(range.right) && !range.left.equals(AbstractSearchStrategy.TOKEN_MIN)) {
+                // partition key search, belongs to the first slice.
+                if (id == 0)
+                    ranges.add(range);
+                continue;
+            }
+            for(Range<Token> unwrapped : range.left.equals(range.right) ? Collections.singletonList(AbstractSearchStrategy.FULL_RANGE_TOKEN) : range.unwrap()) {
+                // a wrapping range is unwrapped to (left, MIN] and (MIN, right], with MAX as the upper bound of the ring.
+                Token right = unwrapped.right.equals(AbstractSearchStrategy.TOKEN_MIN) ? AbstractSearchStrategy.TOKEN_MAX : unwrapped.right;
+                if (!unwrapped.left.equals(right))
+                    ranges.add(new Range<Token>(unwrapped.left, right));
+            }
+        }
+        Collections.sort(ranges, (r1, r2) -> r1.left.compareTo(r2.left));
+
+        BigInteger total = BigInteger.ZERO;
+        for(Range<Token> range : ranges)
+            total = total.add(width(range));
+        final BigInteger lo = total.multiply(BigInteger.valueOf(id)).divide(BigInteger.valueOf(max));
+        final BigInteger hi = total.multiply(BigInteger.valueOf(id + 1)).divide(BigInteger.valueOf(max));
+
+        List<Range<Token>> slice = new ArrayList<Range<Token>>();
+        BigInteger offset = BigInteger.ZERO;
+        for(Range<Token> range : ranges) {
+            BigInteger width = width(range);
+            BigInteger start = lo.subtract(offset).max(BigInteger.ZERO);
+            BigInteger end = hi.subtract(offset).min(width);
+            if (start.compareTo(end) < 0) {
+                long left = (Long) range.left.getTokenValue();
+                slice.add(new Range<Token>(new LongToken(left + start.longValue()), new LongToken(left + end.longValue())));
+            } else if (width.signum() == 0 && id == 0) {
+                slice.add(range);
+            }
+            offset = offset.add(width);
+        }
+        return slice;
+    }
+
+    private static BigInteger width(Range<Token> range) {
+        return BigInteger.valueOf((Long) range.right.getTokenValue()).subtract(BigInteger.valueOf((Long) range.left.getTokenValue()));
+    }
+
     public static boolean tokenRangesIntersec(Collection<Range<Token>> shardTokenRanges, Range<Token> requestTokenRange) {
         if (requestTokenRange.left.equals(requestTokenRange.right))
             return tokenRangesContains(shardTokenRanges, requestTokenRange.left);
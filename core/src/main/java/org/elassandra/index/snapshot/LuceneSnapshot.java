@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index.snapshot;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.Lock;
+import org.apache.lucene.store.NativeFSLockFactory;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetaData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lucene snapshot of an index shard, taken with a Cassandra snapshot.
+ * The files of the last Lucene commit are hard linked into the snapshot directory, with a {@link #MANIFEST} recording
+ * the length and checksum of each file. Files having the same name, length and checksum as in the previous snapshot
+ * of the index are linked from it, so successive snapshots share unchanged segments and the manifest reports the new bytes only.
+ * {@link #restore(Path, Path, Logger)} rebuilds a shard directory from a snapshot manifest, keeping unchanged files in place.
+ */
+public class LuceneSnapshot {
+
+    public static final String MANIFEST = "manifest.json";
+
+    private final String name;
+    private final long timestamp;
+    private final Map<String, String> userData;
+    private final Map<String, StoreFileMetaData> files;
+    private final Map<String, Boolean> shared;
+
+    LuceneSnapshot(String name, long timestamp, Map<String, String> userData, Map<String, StoreFileMetaData> files, Map<String, Boolean> shared) {
+        this.name = name;
+        this.timestamp = timestamp;
+        this.userData = userData;
+        this.files = files;
+        this.shared = shared;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public Map<String, String> userData() {
+        return userData;
+    }
+
+    public Map<String, StoreFileMetaData> files() {
+        return files;
+    }
+
+    public long totalBytes() {
+        long bytes = 0;
+        for(StoreFileMetaData md : files.values())
+            bytes += md.length();
+        return bytes;
+    }
+
+    public long newBytes() {
+        long bytes = 0;
+        for(StoreFileMetaData md : files.values())
+            if (!shared.getOrDefault(md.name(), false))
+                bytes += md.length();
+        return bytes;
+    }
+
+    /**
+     * Snapshot the last Lucene commit of a started shard in snapshotIndex/snapshotName.
+     * @return the snapshot, or null if the index was already snapshotted under this name (when many tables are mapped to the index).
+     */
+    public static LuceneSnapshot snapshot(IndexShard indexShard, Path snapshotIndex, String snapshotName, FileAttribute<?> permissions, Logger logger) throws IOException {
+        final Path snapshotDir;
+        try {
+            snapshotDir = Files.createDirectory(snapshotIndex.resolve(snapshotName), permissions);
+        } catch (FileAlreadyExistsException e) {
+            return null;
+        }
+        final LuceneSnapshot previous = latest(snapshotIndex, snapshotName, logger);
+        final Path indexPath = indexShard.shardPath().resolveIndex();
+        final IndexCommit commit = indexShard.acquireIndexCommit(false);
+        try {
+            final Store.MetadataSnapshot metadata = indexShard.store().getMetadata(commit);
+            final Map<String, StoreFileMetaData> files = new HashMap<>();
+            final Map<String, Boolean> shared = new HashMap<>();
+            for(StoreFileMetaData md : metadata) {
+                StoreFileMetaData previousMd = (previous == null) ? null : previous.files.get(md.name());
+                boolean isShared = previousMd != null && previousMd.isSame(md) && Files.exists(snapshotIndex.resolve(previous.name).resolve(md.name()));
+                Path source = isShared ? snapshotIndex.resolve(previous.name).resolve(md.name()) : indexPath.resolve(md.name());
+                Files.createLink(snapshotDir.resolve(md.name()), source);
+                files.put(md.name(), md);
+                shared.put(md.name(), isShared);
+            }
+            LuceneSnapshot snapshot = new LuceneSnapshot(snapshotName, System.currentTimeMillis(), metadata.getCommitUserData(), files, shared);
+            snapshot.writeManifest(snapshotDir);
+            return snapshot;
+        } finally {
+            indexShard.releaseIndexCommit(commit);
+        }
+    }
+
+    /**
+     * Restore a shard index directory from a snapshot, files already present with the same length and checksum are kept,
+     * other files are linked from the snapshot and files not referenced by the snapshot are removed.
+     * The shard must be closed, the index writer lock is held during the restore.
+     * @return the number of files linked from the snapshot.
+     */
+    public static int restore(Path snapshotDir, Path indexPath, Logger logger) throws IOException {
+        final LuceneSnapshot snapshot = readManifest(snapshotDir);
+        int linked = 0;
+        try (Directory snapshotDirectory = FSDirectory.open(snapshotDir);
+             Directory indexDirectory = FSDirectory.open(indexPath, NativeFSLockFactory.INSTANCE);
+             Lock writeLock = indexDirectory.obtainLock(IndexWriter.WRITE_LOCK_NAME)) {
+            for(StoreFileMetaData md : snapshot.files.values())
+                Store.checkIntegrity(md, snapshotDirectory);
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexPath, "{_*.*,segments*}")) {
+                for (Path luceneFile : stream) {
+                    String fileName = luceneFile.getFileName().toString();
+                    if (!snapshot.files.containsKey(fileName)) {
+                        logger.debug("removing file [{}] not in snapshot [{}]", luceneFile, snapshot.name);
+                        Files.delete(luceneFile);
+                    }
+                }
+            }
+            for(StoreFileMetaData md : snapshot.files.values()) {
+                Path target = indexPath.resolve(md.name());
+                if (Files.exists(target)) {
+                    if (Store.checkIntegrityNoException(md, indexDirectory))
+                        continue;
+                    Files.delete(target);
+                }
+                Files.createLink(target, snapshotDir.resolve(md.name()));
+                linked++;
+            }
+        }
+        logger.info("restored snapshot [{}] into [{}], {} files linked, {} files kept", snapshot.name, indexPath, linked, snapshot.files.size() - linked);
+        return linked;
+    }
+
+    /**
+     * @return the most recent snapshot having a manifest in snapshotIndex, excluding the excluded one.
+     */
+    static LuceneSnapshot latest(Path snapshotIndex, String excluded, Logger logger) throws IOException {
+        LuceneSnapshot latest = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotIndex)) {
+            for (Path snapshotDir : stream) {
+                if (snapshotDir.getFileName().toString().equals(excluded) || Files.notExists(snapshotDir.resolve(MANIFEST)))
+                    continue;
+                try {
+                    LuceneSnapshot snapshot = readManifest(snapshotDir);
+                    if (latest == null || snapshot.timestamp > latest.timestamp)
+                        latest = snapshot;
+                } catch (IOException | ElasticsearchException e) {
+                    logger.warn("Ignoring unreadable snapshot manifest in [{}]: {}", snapshotDir, e.toString());
+                }
+            }
+        }
+        return latest;
+    }
+
+    void writeManifest(Path snapshotDir) throws IOException {
+        try (OutputStream out = Files.newOutputStream(snapshotDir.resolve(MANIFEST));
+             XContentBuilder builder = XContentFactory.jsonBuilder(out).prettyPrint()) {
+            builder.startObject();
+            builder.field("name", name);
+            builder.field("timestamp", timestamp);
+            builder.field("total_bytes", totalBytes());
+            builder.field("new_bytes", newBytes());
+            builder.field("user_data", userData);
+            builder.startArray("files");
+            for(StoreFileMetaData md : files.values()) {
+                builder.startObject();
+                builder.field("name", md.name());
+                builder.field("length", md.length());
+                builder.field("checksum", md.checksum());
+                builder.field("written_by", md.writtenBy().toString());
+                builder.field("shared", shared.getOrDefault(md.name(), false));
+                builder.endObject();
+            }
+            builder.endArray();
+            builder.endObject();
+        }
+    }
+
+    public static LuceneSnapshot readManifest(Path snapshotDir) throws IOException {
+        final Map<String, Object> map;
+        try (InputStream in = Files.newInputStream(snapshotDir.resolve(MANIFEST));
+             XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, in)) {
+            map = parser.map();
+        }
+        final Map<String, StoreFileMetaData> files = new HashMap<>();
+        final Map<String, Boolean> shared = new HashMap<>();
+        for(Map<String, Object> file : (List<Map<String, Object>>) map.get("files")) {
+            String fileName = (String) file.get("name");
+            files.put(fileName, new StoreFileMetaData(fileName, ((Number) file.get("length")).longValue(), (String) file.get("checksum"),
+                    Lucene.parseVersionLenient((String) file.get("written_by"), StoreFileMetaData.FIRST_LUCENE_CHECKSUM_VERSION)));
+            shared.put(fileName, (Boolean) file.get("shared"));
+        }
+        return new LuceneSnapshot((String) map.get("name"), ((Number) map.get("timestamp")).longValue(), (Map<String, String>) map.get("user_data"), files, shared);
+    }
+}
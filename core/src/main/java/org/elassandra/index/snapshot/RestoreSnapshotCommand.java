@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index.snapshot;
+
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.cli.EnvironmentAwareCommand;
+import org.elasticsearch.cli.Terminal;
+import org.elasticsearch.common.SuppressForbidden;
+import org.elasticsearch.common.io.PathUtils;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.env.Environment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Restore a closed shard index directory from a Lucene snapshot taken with a Cassandra snapshot,
+ * only the files that differ from the snapshot manifest are replaced.
+ */
+public class RestoreSnapshotCommand extends EnvironmentAwareCommand {
+
+    private final OptionSpec<String> snapshotFolder;
+    private final OptionSpec<String> indexFolder;
+    private final OptionSpec<Void> batchMode;
+
+    public RestoreSnapshotCommand() {
+        super("Restores a shard index directory from a Lucene snapshot");
+        this.snapshotFolder = parser.acceptsAll(Arrays.asList("s", "snapshot"),
+                "Snapshot directory location on disk, containing the " + LuceneSnapshot.MANIFEST)
+                .withRequiredArg()
+                .required();
+        this.indexFolder = parser.acceptsAll(Arrays.asList("d", "dir"),
+                "Shard index directory location on disk")
+                .withRequiredArg()
+                .required();
+        this.batchMode = parser.acceptsAll(Arrays.asList("b", "batch"),
+                "Enable batch mode explicitly, automatic confirmation of warnings");
+    }
+
+    @Override
+    protected void printAdditionalHelp(Terminal terminal) {
+        terminal.println("This tool replaces the lucene files of a shard by the files of a snapshot,");
+        terminal.println("the associated index must be closed or the node stopped.");
+    }
+
+    @SuppressForbidden(reason = "Necessary to use the path passed in")
+    private static Path getPath(OptionSpec<String> spec, OptionSet options) {
+        return PathUtils.get(spec.value(options), "", "");
+    }
+
+    @Override
+    protected void execute(Terminal terminal, OptionSet options, Environment env) throws Exception {
+        Path snapshotPath = getPath(snapshotFolder, options);
+        Path indexPath = getPath(indexFolder, options);
+
+        if (Files.exists(snapshotPath.resolve(LuceneSnapshot.MANIFEST)) == false) {
+            throw new ElasticsearchException("snapshot directory [" + snapshotPath + "] must contain a " + LuceneSnapshot.MANIFEST);
+        }
+        if (Files.exists(indexPath) == false || Files.isDirectory(indexPath) == false) {
+            throw new ElasticsearchException("index directory [" + indexPath + "], must exist and be a directory");
+        }
+
+        LuceneSnapshot snapshot = LuceneSnapshot.readManifest(snapshotPath);
+        terminal.println("Snapshot [" + snapshot.name() + "] " + snapshot.files().size() + " files, " + snapshot.totalBytes() + " bytes");
+        terminal.println("Commit user data: " + snapshot.userData());
+        if (options.has(batchMode) == false) {
+            String text = terminal.readText("Replace lucene files of [" + indexPath + "]? [y/N] ");
+            if (!text.equalsIgnoreCase("y")) {
+                throw new ElasticsearchException("aborted by user");
+            }
+        }
+        int linked = LuceneSnapshot.restore(snapshotPath, indexPath, Loggers.getLogger(RestoreSnapshotCommand.class));
+        terminal.println("Done, " + linked + " files restored, " + (snapshot.files().size() - linked) + " files unchanged.");
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index.snapshot;
+
+import org.elasticsearch.cli.MultiCommand;
+import org.elasticsearch.cli.Terminal;
+
+/**
+ * Class encapsulating and dispatching commands from the {@code elassandra-snapshot} command line tool
+ */
+public class SnapshotToolCli extends MultiCommand {
+
+    private SnapshotToolCli() {
+        super("A CLI tool for Elassandra Lucene snapshots");
+        subcommands.put("restore", new RestoreSnapshotCommand());
+    }
+
+    public static void main(String[] args) throws Exception {
+        exit(new SnapshotToolCli().main(args, Terminal.DEFAULT));
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.search;
+
+import com.carrotsearch.hppc.cursors.ObjectCursor;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.Supplier;
+import org.elassandra.index.PartitionFunction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.joda.DateMathParser;
+import org.elasticsearch.common.joda.FormatDateTimeFormatter;
+import org.elasticsearch.common.joda.Joda;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Removes partitioned indices from a search request when the range or term filters of the query
+ * on the partition function field cannot match the index name generated by the partition function.
+ * Only single-field partition functions providing {@link PartitionFunction.Formatter#bounds(String)} are pruned,
+ * and only the must and filter clauses of the query are evaluated, so the pruning is always conservative.
+ */
+public class PartitionPruner {
+    private static final Logger logger = Loggers.getLogger(PartitionPruner.class);
+
+    // partition metadata of indices by index name, recomputed when the immutable index metadata is replaced in the cluster state.
+    private static final ConcurrentMap<String, PartitionInfo> partitionInfos = new ConcurrentHashMap<>();
+    
+    private final ClusterState state;
+    private final long nowInMillis;
+
+    public PartitionPruner(ClusterState state, long nowInMillis) {
+        this.state = state;
+        this.nowInMillis = nowInMillis;
+    }
+
+    /**
+     * Partition function field mapping and index name bounds of an index metadata, null bounds when the index cannot be pruned.
+     */
+    static final class PartitionInfo {
+        final IndexMetaData indexMetaData;
+        final String field;
+        final String type;
+        final FormatDateTimeFormatter dateFormatter;
+        final PartitionFunction.Bounds bounds;
+        
+        PartitionInfo(IndexMetaData indexMetaData, String field, String type, FormatDateTimeFormatter dateFormatter, PartitionFunction.Bounds bounds) {
+            this.indexMetaData = indexMetaData;
+            this.field = field;
+            this.type = type;
+            this.dateFormatter = dateFormatter;
+            this.bounds = bounds;
+        }
+    }
+    
+    /**
+     * @return the indices that may contain matching documents, at least one index is kept.
+     */
+    public Index[] prune(Index[] indices, SearchSourceBuilder source) {
+        if (indices.length < 2 || source == null || source.query() == null || source.suggest() != null || hasGlobalAggregation(source))
+            return indices;
+
+        List<Index> kept = new ArrayList<>(indices.length);
+        for(Index index : indices) {
+            IndexMetaData indexMetaData = state.metaData().index(index);
+            if (indexMetaData == null || mayMatch(indexMetaData, source.query()))
+                kept.add(index);
+        }
+        if (partitionInfos.size() > state.metaData().indices().size())
+            partitionInfos.keySet().removeIf(name -> !state.metaData().hasIndex(name));
+        if (kept.size() == indices.length)
+            return indices;
+        if (kept.isEmpty())
+            kept.add(indices[0]);
+        if (logger.isDebugEnabled())
+            logger.debug("partition pruning kept {}/{} indices={}", kept.size(), indices.length, kept);
+        return kept.toArray(new Index[kept.size()]);
+    }
+
+    private static boolean hasGlobalAggregation(SearchSourceBuilder source) {
+        if (source.aggregations() != null) {
+            for(AggregationBuilder aggregation : source.aggregations().getAggregatorFactories())
+                if (aggregation instanceof GlobalAggregationBuilder)
+                    return true;
+        }
+        return false;
+    }
+
+    boolean mayMatch(IndexMetaData indexMetaData, QueryBuilder query) {
+        PartitionInfo info = partitionInfo(indexMetaData);
+        if (info.bounds == null)
+            return true;
+        return mayMatch(query, info);
+    }
+
+    static PartitionInfo partitionInfo(IndexMetaData indexMetaData) {
+        PartitionInfo info = partitionInfos.get(indexMetaData.getIndex().getName());
+        if (info == null || info.indexMetaData != indexMetaData) {
+            info = buildPartitionInfo(indexMetaData);
+            partitionInfos.put(indexMetaData.getIndex().getName(), info);
+        }
+        return info;
+    }
+    
+    private static PartitionInfo buildPartitionInfo(IndexMetaData indexMetaData) {
+        String[] pf = indexMetaData.partitionFunction();
+        if (pf == null || pf.length != 3)
+            return new PartitionInfo(indexMetaData, null, null, null, null);
+        try {
+            Map<String, Object> fieldMapping = fieldMapping(indexMetaData, pf[2]);
+            if (fieldMapping == null)
+                return new PartitionInfo(indexMetaData, null, null, null, null);
+            PartitionFunction.Formatter formatter = indexMetaData.partitionFunctionClass().compile(pf[1]);
+            PartitionFunction.Bounds bounds = formatter.bounds(indexMetaData.getIndex().getName());
+            String type = (String) fieldMapping.get("type");
+            String format = (String) fieldMapping.get("format");
+            FormatDateTimeFormatter dateFormatter = "date".equals(type) ? (format == null ? DateFieldMapper.DEFAULT_DATE_TIME_FORMATTER : Joda.forPattern(format)) : null;
+            return new PartitionInfo(indexMetaData, pf[2], type, dateFormatter, bounds);
+        } catch (Exception e) {
+            logger.warn((Supplier<?>) () -> new ParameterizedMessage("partition pruning failed for index=[{}]", indexMetaData.getIndex().getName()), e);
+            return new PartitionInfo(indexMetaData, null, null, null, null);
+        }
+    }
+
+    private static Map<String, Object> fieldMapping(IndexMetaData indexMetaData, String field) throws IOException {
+        for(ObjectCursor<MappingMetaData> cursor : indexMetaData.getMappings().values()) {
+            Map<String, Object> properties = (Map<String, Object>) cursor.value.getSourceAsMap().get("properties");
+            if (properties != null && properties.get(field) instanceof Map)
+                return (Map<String, Object>) properties.get(field);
+        }
+        return null;
+    }
+
+    // return false only if the query cannot match any document of the partition.
+    private boolean mayMatch(QueryBuilder query, PartitionInfo info) {
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            for(QueryBuilder clause : bool.must())
+                if (!mayMatch(clause, info))
+                    return false;
+            for(QueryBuilder clause : bool.filter())
+                if (!mayMatch(clause, info))
+                    return false;
+            return true;
+        }
+        if (query instanceof ConstantScoreQueryBuilder)
+            return mayMatch(((ConstantScoreQueryBuilder) query).innerQuery(), info);
+
+        if (query instanceof TermQueryBuilder && info.field.equals(((TermQueryBuilder) query).fieldName())) {
+            Object value = ((TermQueryBuilder) query).value();
+            return info.bounds.intersects(toDouble(value, info, null, null, false), toDouble(value, info, null, null, true));
+        }
+        if (query instanceof TermsQueryBuilder && info.field.equals(((TermsQueryBuilder) query).fieldName()) && ((TermsQueryBuilder) query).values() != null) {
+            for(Object value : ((TermsQueryBuilder) query).values())
+                if (info.bounds.intersects(toDouble(value, info, null, null, false), toDouble(value, info, null, null, true)))
+                    return true;
+            return false;
+        }
+        if (query instanceof RangeQueryBuilder && info.field.equals(((RangeQueryBuilder) query).fieldName())) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            double from = (range.from() == null) ? Double.NEGATIVE_INFINITY : toDouble(range.from(), info, range.format(), range.timeZone(), false);
+            double to = (range.to() == null) ? Double.POSITIVE_INFINITY : toDouble(range.to(), info, range.format(), range.timeZone(), true);
+            return info.bounds.intersects(from, to);
+        }
+        return true;
+    }
+
+    /**
+     * Convert a query value to a comparable double, returns an infinite value (never pruned) if the value cannot be converted.
+     */
+    private double toDouble(Object value, PartitionInfo info, String format, String timeZone, boolean roundUp) {
+        double unknown = roundUp ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        try {
+            if (info.bounds.date) {
+                if (info.dateFormatter == null)
+                    return unknown;
+                if (value instanceof Number)
+                    return ((Number) value).doubleValue();
+                FormatDateTimeFormatter formatter = (format == null) ? info.dateFormatter : Joda.forPattern(format);
+                return new DateMathParser(formatter).parse(value.toString(), () -> nowInMillis, roundUp, (timeZone == null) ? null : DateTimeZone.forID(timeZone));
+            } else {
+                if (info.type == null || "date".equals(info.type) || "keyword".equals(info.type) || "text".equals(info.type))
+                    return unknown;
+                return (value instanceof Number) ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+            }
+        } catch (RuntimeException e) {
+            return unknown;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.search;
+
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.slice.SliceBuilder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Full scan of an index by token range slices, for exports.
+ * The local token ranges of each shard are split into slices, each slice is an independent scroll sorted by token,
+ * so fetch reads are sequential in the Cassandra partition order. Slices are scrolled in parallel,
+ * the consumer is called concurrently by slices with each page of hits.
+ */
+public class TokenRangeScan {
+
+    private final Client client;
+    private final SearchRequest request;
+    private final int slices;
+    private final TimeValue keepAlive;
+
+    public TokenRangeScan(Client client, SearchRequest request, int slices, TimeValue keepAlive) {
+        if (slices < 1)
+            throw new IllegalArgumentException("slices must be greater than 0");
+        this.client = client;
+        this.request = request;
+        this.slices = slices;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * @return the search request of the slice id.
+     */
+    public SearchRequest sliceRequest(int id) {
+        SearchSourceBuilder source = (request.source() == null) ? new SearchSourceBuilder() : request.source();
+        SearchRequest sliceRequest = new SearchRequest(request.indices(), source.copyWithNewSlice(new SliceBuilder(TokenFieldMapper.NAME, id, slices)))
+            .types(request.types())
+            .routing(request.routing())
+            .preference(request.preference())
+            .indicesOptions(request.indicesOptions())
+            .tokenRanges(request.tokenRanges())
+            .scroll(keepAlive);
+        sliceRequest.tokenRangesBitsetCache(request.tokenRangesBitsetCache());
+        return sliceRequest;
+    }
+
+    /**
+     * Scroll all slices in parallel.
+     * @return the number of hits.
+     */
+    public long execute(Consumer<SearchHit[]> consumer) {
+        PlainActionFuture<Long> future = PlainActionFuture.newFuture();
+        execute(consumer, future);
+        return future.actionGet();
+    }
+
+    /**
+     * Scroll all slices in parallel, the listener is notified with the number of hits when all slices are done,
+     * or with the first failure.
+     */
+    public void execute(Consumer<SearchHit[]> consumer, ActionListener<Long> listener) {
+        final AtomicInteger pending = new AtomicInteger(slices);
+        final AtomicLong hits = new AtomicLong();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        for(int i = 0; i < slices; i++)
+            client.search(sliceRequest(i), new SliceListener(consumer, pending, hits, failure, listener));
+    }
+
+    class SliceListener implements ActionListener<SearchResponse> {
+        final Consumer<SearchHit[]> consumer;
+        final AtomicInteger pending;
+        final AtomicLong hits;
+        final AtomicReference<Exception> failure;
+        final ActionListener<Long> listener;
+        String scrollId = null;
+
+        SliceListener(Consumer<SearchHit[]> consumer, AtomicInteger pending, AtomicLong hits, AtomicReference<Exception> failure, ActionListener<Long> listener) {
+            this.consumer = consumer;
+            this.pending = pending;
+            this.hits = hits;
+            this.failure = failure;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onResponse(SearchResponse response) {
+            scrollId = response.getScrollId();
+            SearchHit[] page = response.getHits().getHits();
+            if (page.length == 0 || failure.get() != null) {
+                done();
+                return;
+            }
+            try {
+                consumer.accept(page);
+                hits.addAndGet(page.length);
+            } catch (Exception e) {
+                onFailure(e);
+                return;
+            }
+            client.searchScroll(new SearchScrollRequest(scrollId).scroll(keepAlive), this);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            if (!failure.compareAndSet(null, e))
+                failure.get().addSuppressed(e);
+            done();
+        }
+
+        void done() {
+            if (scrollId != null)
+                client.prepareClearScroll().addScrollId(scrollId).execute(ActionListener.wrap((ClearScrollResponse r) -> {}, e -> {}));
+            if (pending.decrementAndGet() == 0) {
+                if (failure.get() != null)
+                    listener.onFailure(failure.get());
+                else
+                    listener.onResponse(hits.get());
+            }
+        }
+    }
+}
@@ -60,7 +60,8 @@ public class AbstractRangeAggregatorFactory<AF extends AbstractRangeAggregatorFa
     @Override
     protected Aggregator doCreateInternal(ValuesSource.Numeric valuesSource, Aggregator parent, boolean collectsFromSingleBucket,
             List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
-        return new RangeAggregator(name, factories, valuesSource, config.format(), rangeFactory, ranges, keyed, context, parent,
+        return new RangeAggregator(name, factories, valuesSource, config.format(), rangeFactory, ranges, keyed,
+                config.fieldContext() == null ? null : config.fieldContext().field(), context, parent,
                 pipelineAggregators, metaData);
     }
 
@@ -18,7 +18,19 @@
  */
 package org.elassandra.search.aggregations.bucket.token;
 
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Bits;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.ParseField;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -26,7 +38,6 @@ import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
-import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
@@ -89,23 +100,31 @@ public class RangeAggregator extends BucketsAggregator {
             out.writeOptionalString(key);
             out.writeOptionalString(fromAsStr);
             out.writeOptionalString(toAsStr);
-            out.writeDouble(from);
-            out.writeDouble(to);
+            out.writeLong(from);
+            out.writeLong(to);
         }
 
 
         protected Range(String key, Long from, String fromAsStr, Long to, String toAsStr) {
             this.key = key;
-            this.from = from == null ? Long.MAX_VALUE : from;
+            this.from = from == null ? Long.MIN_VALUE : from;
             this.fromAsStr = fromAsStr;
-            this.to = to == null ? Long.MIN_VALUE : to;
+            this.to = to == null ? Long.MAX_VALUE : to;
             this.toAsStr = toAsStr;
         }
 
-        boolean matches(double value) {
+        boolean matches(long value) {
             return value >= from && value < to;
         }
 
+        boolean contains(long min, long max) {
+            return min >= from && max < to;
+        }
+
+        boolean intersects(long min, long max) {
+            return max >= from && min < to;
+        }
+
         @Override
         public String toString() {
             return "[" + from + " to " + to + ")";
@@ -203,11 +222,14 @@ public class RangeAggregator extends BucketsAggregator {
     final Range[] ranges;
     final boolean keyed;
     final InternalRange.Factory rangeFactory;
+    final String field;
 
-    final double[] maxTo;
+    final long[] maxTo;
+    final boolean disjoint;   // ranges sorted by from and not overlapping, as token ranges of vnodes.
+    private boolean segmentShortcuts = true;
 
     public RangeAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
-            InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, SearchContext context,
+            InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, @Nullable String field, SearchContext context,
             Aggregator parent, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
 
         super(name, factories, context, parent, pipelineAggregators, metaData);
@@ -216,15 +238,27 @@ public class RangeAggregator extends BucketsAggregator {
         this.format = format;
         this.keyed = keyed;
         this.rangeFactory = rangeFactory;
+        this.field = field;
 
         this.ranges = ranges;
 
-        maxTo = new double[this.ranges.length];
+        maxTo = new long[this.ranges.length];
         maxTo[0] = this.ranges[0].to;
+        boolean disjoint = true;
         for (int i = 1; i < this.ranges.length; ++i) {
             maxTo[i] = Math.max(this.ranges[i].to,maxTo[i-1]);
+            if (this.ranges[i].from < maxTo[i-1])
+                disjoint = false;
         }
+        this.disjoint = disjoint;
+    }
 
+    /**
+     * Disable counting whole segments without collecting documents, when only a doc id range
+     * of each segment is collected by this aggregator, as for token sub-shards.
+     */
+    public void collectDocRanges() {
+        this.segmentShortcuts = false;
     }
 
     @Override
@@ -235,19 +269,32 @@ public class RangeAggregator extends BucketsAggregator {
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
-        final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
+        final SortedNumericDocValues values = valuesSource.longValues(ctx);
+        if (segmentShortcuts && parent == null && sub == LeafBucketCollector.NO_OP_COLLECTOR && matchAllDocs()) {
+            // no per-document collection when all live documents of the segment match.
+            if (countSegment(ctx) || bulkCount(ctx, values))
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+        }
         return new LeafBucketCollectorBase(sub, values) {
             @Override
             public void collect(int doc, long bucket) throws IOException {
                 values.setDocument(doc);
                 final int valuesCount = values.count();
                 for (int i = 0, lo = 0; i < valuesCount; ++i) {
-                    final double value = values.valueAt(i);
+                    final long value = values.valueAt(i);
                     lo = collect(doc, value, bucket, lo);
                 }
             }
 
-    private int collect(int doc, double value, long owningBucketOrdinal, int lowBound) throws IOException {
+    private int collect(int doc, long value, long owningBucketOrdinal, int lowBound) throws IOException {
+        if (disjoint) {
+            // at most one matching range.
+            final int i = floorRange(value, lowBound);
+            if (i >= lowBound && ranges[i].matches(value))
+                collectBucket(sub, doc, subBucketOrdinal(owningBucketOrdinal, i));
+            return i + 1;
+        }
+
         int lo = lowBound, hi = ranges.length - 1; // all candidates are between these indexes
         int mid = (lo + hi) >>> 1;
         while (lo <= hi) {
@@ -298,6 +345,91 @@ public class RangeAggregator extends BucketsAggregator {
         };
     }
 
+    /**
+     * @return the index of the last range having from &lt;= value, or lowBound - 1.
+     */
+    private int floorRange(long value, int lowBound) {
+        int lo = lowBound, hi = ranges.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (value < ranges[mid].from) {
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * True when the search query matches all live documents, so documents can be counted without collecting them.
+     */
+    private boolean matchAllDocs() {
+        Query query = context.query();
+        while (query instanceof ConstantScoreQuery)
+            query = ((ConstantScoreQuery) query).getQuery();
+        return query instanceof MatchAllDocsQuery
+            && context.minimumScore() == null
+            && context.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER;
+    }
+
+    /**
+     * Count the segment live documents in each range when the segment min and max values (from points) are
+     * in all intersecting ranges, and each document has a single value.
+     * @return true if the segment has been counted.
+     */
+    private boolean countSegment(LeafReaderContext ctx) throws IOException {
+        if (field == null)
+            return false;
+        final LeafReader reader = ctx.reader();
+        final FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null || fieldInfo.getPointDimensionCount() != 1 || fieldInfo.getPointNumBytes() != Long.BYTES)
+            return false;
+        final PointValues points = reader.getPointValues();
+        if (points == null)
+            return false;
+        if (points.getDocCount(field) != reader.maxDoc() || points.size(field) != reader.maxDoc())
+            return false;
+        final long min = LongPoint.decodeDimension(points.getMinPackedValue(field), 0);
+        final long max = LongPoint.decodeDimension(points.getMaxPackedValue(field), 0);
+        for (int i = 0; i < ranges.length; i++)
+            if (ranges[i].intersects(min, max) && !ranges[i].contains(min, max))
+                return false;
+        final int numDocs = reader.numDocs();
+        if (numDocs > 0) {
+            for (int i = 0; i < ranges.length; i++)
+                if (ranges[i].contains(min, max))
+                    incrementBucketDocCount(subBucketOrdinal(0, i), numDocs);
+        }
+        return true;
+    }
+
+    /**
+     * Count single-valued live documents of the segment in local counters, without collecting them.
+     * @return true if the segment has been counted.
+     */
+    private boolean bulkCount(LeafReaderContext ctx, SortedNumericDocValues values) throws IOException {
+        final NumericDocValues singleton = DocValues.unwrapSingleton(values);
+        if (singleton == null || !disjoint)
+            return false;
+        final Bits docsWithField = DocValues.unwrapSingletonBits(values);
+        final Bits liveDocs = ctx.reader().getLiveDocs();
+        final int maxDoc = ctx.reader().maxDoc();
+        final int[] counts = new int[ranges.length];
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if ((liveDocs != null && !liveDocs.get(doc)) || (docsWithField != null && !docsWithField.get(doc)))
+                continue;
+            final long value = singleton.get(doc);
+            final int i = floorRange(value, 0);
+            if (i >= 0 && value < ranges[i].to)
+                counts[i]++;
+        }
+        for (int i = 0; i < ranges.length; i++)
+            if (counts[i] > 0)
+                incrementBucketDocCount(subBucketOrdinal(0, i), counts[i]);
+        return true;
+    }
+
     private long subBucketOrdinal(long owningBucketOrdinal, int rangeOrd) {
         return owningBucketOrdinal * ranges.length + rangeOrd;
     }
@@ -16,14 +16,14 @@
 package org.elassandra.shard;
 
 import com.carrotsearch.hppc.cursors.ObjectCursor;
+import com.codahale.metrics.Gauge;
 
+import org.apache.cassandra.metrics.CassandraMetricsRegistry;
+import org.apache.cassandra.metrics.DefaultNameFactory;
+import org.apache.cassandra.metrics.MetricNameFactory;
 import org.elassandra.index.ElasticSecondaryIndex;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
-import org.elasticsearch.cluster.node.DiscoveryNode;
-import org.elasticsearch.cluster.routing.IndexRoutingTable;
-import org.elasticsearch.cluster.routing.RoutingTable;
-import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.settings.Settings;
@@ -36,18 +36,39 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Block cassandra until all local shards are started before playing commit logs or bootstrapping.
- * @author vroyer
- *
+ * Blocks the Cassandra commitlog replay on startup until all local shards are started, so that replayed mutations
+ * are always indexed and indexing never waits inside the write OpOrder.
+ * Startup phase durations are exposed as org.apache.cassandra.metrics.Elassandra.Startup* gauges (in milliseconds since activation).
  */
 public class CassandraShardStartedBarrier extends AbstractComponent  {
     
+    static final long TIMEOUT_SECONDS = 600;
+    
+    // startup timings of the last activation, in milliseconds.
+    static volatile long metaDataRecoveredTime = -1;
+    static volatile long replayReleasedTime = -1;
+    static volatile long shardsStartedTime = -1;
+    static volatile int startedShards = 0;
+    static {
+        MetricNameFactory factory = new DefaultNameFactory("Elassandra");
+        CassandraMetricsRegistry.Metrics.register(factory.createMetricName("StartupMetaDataRecoveredTime"), (Gauge<Long>) () -> metaDataRecoveredTime);
+        CassandraMetricsRegistry.Metrics.register(factory.createMetricName("StartupReplayReleasedTime"), (Gauge<Long>) () -> replayReleasedTime);
+        CassandraMetricsRegistry.Metrics.register(factory.createMetricName("StartupShardsStartedTime"), (Gauge<Long>) () -> shardsStartedTime);
+        CassandraMetricsRegistry.Metrics.register(factory.createMetricName("StartupShards"), (Gauge<Integer>) () -> startedShards);
+    }
+    
+    // released when all local shards are started and the commitlog replay can start
     final CountDownLatch latch = new CountDownLatch(1);
     final ClusterService clusterService;
+    final long startTime = System.nanoTime();
     
     public CassandraShardStartedBarrier(Settings settings, ClusterService clusterService) {
         super(settings);
         this.clusterService = clusterService;
+        metaDataRecoveredTime = -1;
+        replayReleasedTime = -1;
+        shardsStartedTime = -1;
+        startedShards = 0;
     }
 
     /**
@@ -56,7 +77,7 @@ public class CassandraShardStartedBarrier extends AbstractComponent  {
     public void blockUntilShardsStarted() {
         try {
             logger.debug("Waiting latch={}", latch.getCount());
-            if (latch.await(600, TimeUnit.SECONDS))
+            if (latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
                 logger.debug("All local shards ready to index.");
             else 
                 logger.error("Some local shards not ready to index, clusterState = {}", clusterService.state());
@@ -71,7 +92,10 @@ public class CassandraShardStartedBarrier extends AbstractComponent  {
         if (clusterState.blocks().hasGlobalBlock(GatewayService.STATE_NOT_RECOVERED_BLOCK)) {
             readyToIndex = false;
         } else {
+            if (metaDataRecoveredTime < 0)
+                metaDataRecoveredTime = elapsed();
             readyToIndex = true;
+            int started = 0;
             for(ObjectCursor<IndexMetaData> cursor : clusterState.metaData().indices().values()) {
                 IndexMetaData indexMetaData = cursor.value;
                 if (indexMetaData.getState() == IndexMetaData.State.OPEN) {
@@ -81,16 +105,14 @@ public class CassandraShardStartedBarrier extends AbstractComponent  {
                         break;
                     }
                     IndexShard localShard = indexService.getShard(0);
-                    if (localShard == null) {
+                    if (localShard == null || localShard.state() != IndexShardState.STARTED) {
                         readyToIndex = false;
-                        break;
-                    }
-                    if (localShard.state() != IndexShardState.STARTED) {
-                        readyToIndex = false;
-                        break;
+                    } else {
+                        started++;
                     }
                 }
             }
+            startedShards = started;
         }
         if (readyToIndex && latch.getCount() > 0) {
             // ensure all elastic secondary index are correctly initialized 
@@ -100,11 +122,18 @@ public class CassandraShardStartedBarrier extends AbstractComponent  {
                     esi.initialize(this.clusterService);
                 }
             }
+            shardsStartedTime = elapsed();
+            replayReleasedTime = shardsStartedTime;
             clusterService.removeShardStartedBarrier();
             latch.countDown();
+            logger.info("{} local shards started in {}ms, metadata recovered in {}ms, commitlog replay released in {}ms",
+                    startedShards, shardsStartedTime, metaDataRecoveredTime, replayReleasedTime);
         }
         logger.debug("readyToIndex={} latch={} state={}",readyToIndex, latch.getCount(), clusterState);
         return readyToIndex;
     }
     
+    private long elapsed() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
 }
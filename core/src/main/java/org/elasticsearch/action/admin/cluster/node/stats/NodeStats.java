@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.admin.cluster.node.stats;
 
+import org.elassandra.index.WritePathStats;
 import org.elasticsearch.action.support.nodes.BaseNodeResponse;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.Nullable;
@@ -85,6 +86,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
     @Nullable
     private IngestStats ingestStats;
 
+    @Nullable
+    private WritePathStats writePathStats;
+
     NodeStats() {
     }
 
@@ -95,6 +99,17 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
                      @Nullable ScriptStats scriptStats,
                      @Nullable DiscoveryStats discoveryStats,
                      @Nullable IngestStats ingestStats) {
+        this(node, timestamp, indices, os, process, jvm, threadPool, fs, transport, http, breaker, scriptStats, discoveryStats, ingestStats, null);
+    }
+
+    public NodeStats(DiscoveryNode node, long timestamp, @Nullable NodeIndicesStats indices,
+                     @Nullable OsStats os, @Nullable ProcessStats process, @Nullable JvmStats jvm, @Nullable ThreadPoolStats threadPool,
+                     @Nullable FsInfo fs, @Nullable TransportStats transport, @Nullable HttpStats http,
+                     @Nullable AllCircuitBreakerStats breaker,
+                     @Nullable ScriptStats scriptStats,
+                     @Nullable DiscoveryStats discoveryStats,
+                     @Nullable IngestStats ingestStats,
+                     @Nullable WritePathStats writePathStats) {
         super(node);
         this.timestamp = timestamp;
         this.indices = indices;
@@ -109,6 +124,7 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         this.scriptStats = scriptStats;
         this.discoveryStats = discoveryStats;
         this.ingestStats = ingestStats;
+        this.writePathStats = writePathStats;
     }
 
     public long getTimestamp() {
@@ -198,6 +214,14 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         return ingestStats;
     }
 
+    /**
+     * Elassandra write path statistics.
+     */
+    @Nullable
+    public WritePathStats getWritePathStats() {
+        return writePathStats;
+    }
+
     public static NodeStats readNodeStats(StreamInput in) throws IOException {
         NodeStats nodeInfo = new NodeStats();
         nodeInfo.readFrom(in);
@@ -222,6 +246,7 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         scriptStats = in.readOptionalWriteable(ScriptStats::new);
         discoveryStats = in.readOptionalWriteable(DiscoveryStats::new);
         ingestStats = in.readOptionalWriteable(IngestStats::new);
+        writePathStats = in.readOptionalWriteable(WritePathStats::new);
     }
 
     @Override
@@ -245,6 +270,7 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         out.writeOptionalWriteable(scriptStats);
         out.writeOptionalWriteable(discoveryStats);
         out.writeOptionalWriteable(ingestStats);
+        out.writeOptionalWriteable(writePathStats);
     }
 
     @Override
@@ -305,6 +331,9 @@ public class NodeStats extends BaseNodeResponse implements ToXContent {
         if (getIngestStats() != null) {
             getIngestStats().toXContent(builder, params);
         }
+        if (getWritePathStats() != null) {
+            getWritePathStats().toXContent(builder, params);
+        }
         return builder;
     }
 }
@@ -145,4 +145,12 @@ public class NodesStatsRequestBuilder extends NodesOperationRequestBuilder<Nodes
         request.ingest(ingest);
         return this;
     }
+
+    /**
+     * Should elassandra write path statistics be returned.
+     */
+    public NodesStatsRequestBuilder elassandra(boolean elassandra) {
+        request.elassandra(elassandra);
+        return this;
+    }
 }
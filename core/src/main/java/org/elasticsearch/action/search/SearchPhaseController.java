@@ -312,6 +312,19 @@ public final class SearchPhaseController extends AbstractComponent {
         }
         ScoreDoc[] sortedDocs = reducedQueryPhase.scoreDocs;
         SearchHits hits = getHits(reducedQueryPhase, ignoreFrom, fetchResults, resultsLookup);
+        if (reducedQueryPhase.shardResults != null) {
+            // profile results are reduced before the fetch phase, add the cassandra fetch profiles.
+            for (SearchPhaseResult entry : fetchResults) {
+                FetchSearchResult fetchResult = entry.fetchResult();
+                if (fetchResult.cassandraFetchProfileResult() != null && fetchResult.getSearchShardTarget() != null) {
+                    ProfileShardResult profileShardResult = reducedQueryPhase.shardResults.getShardResults()
+                        .get(fetchResult.getSearchShardTarget().toString());
+                    if (profileShardResult != null) {
+                        profileShardResult.setCassandraFetchProfileResult(fetchResult.cassandraFetchProfileResult());
+                    }
+                }
+            }
+        }
         if (reducedQueryPhase.suggest != null) {
             if (!fetchResults.isEmpty()) {
                 int currentOffset = hits.getHits().length;
@@ -21,9 +21,11 @@ package org.elasticsearch.action.search;
 
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elasticsearch.action.ActionRequestBuilder;
 import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -33,6 +35,7 @@ import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.PipelineAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.collapse.CollapseBuilder;
+import org.elasticsearch.search.fetch.FetchPolicy;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
 import org.elasticsearch.search.rescore.RescoreBuilder;
 import org.elasticsearch.search.slice.SliceBuilder;
@@ -42,6 +45,7 @@ import org.elasticsearch.search.suggest.SuggestBuilder;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -131,6 +135,16 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
     
+    /**
+     * How the rows of the hits are read from cassandra, overriding the index fetch_policy setting.
+     */
+    public SearchRequestBuilder setFetchPolicy(FetchPolicy fetchPolicy) {
+        if (request.extraParams() == null)
+            request.extraParams(new HashMap<>());
+        request.extraParams().put(ClusterService.FETCH_POLICY, fetchPolicy.toString());
+        return this;
+    }
+    
     /**
      * An optional document count, upon collecting which the search
      * query will early terminate
@@ -376,6 +390,14 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Sliced scroll on the _token field, the slice id covers a contiguous part of each shard token ranges
+     * and hits are sorted by token when no sort is set.
+     */
+    public SearchRequestBuilder setTokenRangeSlice(int id, int max) {
+        return slice(new SliceBuilder(TokenFieldMapper.NAME, id, max));
+    }
+
     /**
      * Applies when sorting, and controls if scores will be tracked as well. Defaults to
      * <tt>false</tt>.
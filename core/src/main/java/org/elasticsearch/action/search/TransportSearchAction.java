@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.search;
 
+import org.elassandra.search.PartitionPruner;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.OriginalIndices;
 import org.elasticsearch.action.admin.cluster.shards.ClusterSearchShardsGroup;
@@ -68,6 +69,10 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     public static final Setting<Long> SHARD_COUNT_LIMIT_SETTING = Setting.longSetting(
             "action.search.shard_count.limit", Long.MAX_VALUE, 1L, Property.Dynamic, Property.NodeScope);
 
+    /** Remove partitioned indices that cannot match the query filters on the partition function field. */
+    public static final Setting<Boolean> PARTITION_PRUNING_SETTING = Setting.boolSetting(
+            "action.search.partition_pruning", true, Property.Dynamic, Property.NodeScope);
+
     private final ClusterService clusterService;
     private final SearchTransportService searchTransportService;
     private final RemoteClusterService remoteClusterService;
@@ -256,13 +261,17 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
         // TODO: I think startTime() should become part of ActionRequest and that should be used both for index name
         // date math expressions and $now in scripts. This way all apis will deal with now in the same way instead
         // of just for the _search api
-        final Index[] indices;
+        Index[] indices;
         if (localIndices.indices().length == 0 && remoteClusterIndices.isEmpty() == false) {
             indices = Index.EMPTY_ARRAY; // don't search on _all if only remote indices were specified
         } else {
             indices = indexNameExpressionResolver.concreteIndices(clusterState, searchRequest.indicesOptions(),
                 timeProvider.getAbsoluteStartMillis(), localIndices.indices());
         }
+        if (indices.length > 1 && clusterService.getClusterSettings().get(PARTITION_PRUNING_SETTING)) {
+            // elassandra: drop partitioned indices that cannot match the query before the shard fan-out.
+            indices = new PartitionPruner(clusterState, timeProvider.getAbsoluteStartMillis()).prune(indices, searchRequest.source());
+        }
         Map<String, AliasFilter> aliasFilter = buildPerIndexAliasFilter(searchRequest, clusterState, indices, remoteAliasMap);
         Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, searchRequest.routing(),
             searchRequest.indices());
@@ -54,6 +54,7 @@ import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.loader.SettingsLoader;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -65,6 +66,7 @@ import org.elasticsearch.index.Index;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.fetch.FetchPolicy;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
@@ -368,6 +370,34 @@ public class IndexMetaData implements Diffable<IndexMetaData>, ToXContent {
     public static final Setting<Boolean> INDEX_INDEX_STATIC_DOCUMENT_SETTING =
             Setting.boolSetting(SETTING_INDEX_STATIC_DOCUMENT, false, Property.Final, Property.IndexScope);
     
+    public static final String SETTING_INDEX_STATIC_JOIN = "index."+ClusterService.INDEX_STATIC_JOIN; 
+    public static final Setting<Boolean> INDEX_INDEX_STATIC_JOIN_SETTING =
+            Setting.boolSetting(SETTING_INDEX_STATIC_JOIN, false, Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_INDEX_TTL_EXPIRY = "index."+ClusterService.INDEX_TTL_EXPIRY; 
+    public static final Setting<Boolean> INDEX_INDEX_TTL_EXPIRY_SETTING =
+            Setting.boolSetting(SETTING_INDEX_TTL_EXPIRY, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_INDEX_TTL_EXPIRY), Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_TTL_EXPIRY_INTERVAL = "index."+ClusterService.TTL_EXPIRY_INTERVAL; 
+    public static final Setting<TimeValue> INDEX_TTL_EXPIRY_INTERVAL_SETTING =
+            Setting.timeSetting(SETTING_TTL_EXPIRY_INTERVAL, TimeValue.timeValueSeconds(60), TimeValue.timeValueSeconds(1), Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_SEARCH_SEGMENT_GROUPS = "index."+ClusterService.SEARCH_SEGMENT_GROUPS; 
+    public static final Setting<Integer> INDEX_SEARCH_SEGMENT_GROUPS_SETTING =
+            Setting.intSetting(SETTING_SEARCH_SEGMENT_GROUPS, Integer.getInteger(ClusterService.SETTING_SYSTEM_SEARCH_SEGMENT_GROUPS, 1), 1, Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_TOKEN_SUB_SHARDS = "index."+ClusterService.TOKEN_SUB_SHARDS; 
+    public static final Setting<Integer> INDEX_TOKEN_SUB_SHARDS_SETTING =
+            Setting.intSetting(SETTING_TOKEN_SUB_SHARDS, 1, 1, Property.Final, Property.IndexScope);
+    
+    public static final String SETTING_FETCH_POLICY = "index."+ClusterService.FETCH_POLICY; 
+    public static final Setting<FetchPolicy> INDEX_FETCH_POLICY_SETTING =
+            new Setting<>(SETTING_FETCH_POLICY, System.getProperty(ClusterService.SETTING_SYSTEM_FETCH_POLICY, FetchPolicy.LOCAL.toString()), FetchPolicy::fromString, Property.Dynamic, Property.IndexScope);
+    
+    public static final String SETTING_INDEX_ROW_IMAGE = "index."+ClusterService.INDEX_ROW_IMAGE; 
+    public static final Setting<Boolean> INDEX_INDEX_ROW_IMAGE_SETTING =
+            Setting.boolSetting(SETTING_INDEX_ROW_IMAGE, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_INDEX_ROW_IMAGE), Property.Dynamic, Property.IndexScope);
+    
     // hard-coded hash function as of 2.0
     // older indices will read which hash function to use in their index settings
     //private static final HashFunction MURMUR3_HASH_FUNCTION = new Murmur3HashFunction();
@@ -96,6 +96,7 @@ import org.elassandra.cluster.routing.AbstractSearchStrategy;
 import org.elassandra.cluster.routing.PrimaryFirstSearchStrategy;
 import org.elassandra.discovery.CassandraDiscovery;
 import org.elassandra.index.ExtendedElasticSecondaryIndex;
+import org.elassandra.index.WritePathMetrics;
 import org.elassandra.index.mapper.internal.NodeFieldMapper;
 import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elassandra.index.search.TokenRangesService;
@@ -128,6 +129,7 @@ import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.OperationRouting;
 import org.elasticsearch.cluster.routing.RoutingTable;
 import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.SuppressForbidden;
 import org.elasticsearch.common.bytes.BytesArray;
@@ -314,6 +316,57 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
      */
     public static final String INDEX_STATIC_DOCUMENT = "index_static_document";
     
+    /**
+     * Index static columns only in the static document, joined to wide rows at query time with a has_static query.
+     */
+    public static final String INDEX_STATIC_JOIN = "index_static_join";
+    
+    /**
+     * Number of threads used to index a row into several elasticsearch indices in parallel (0 to index sequentially).
+     */
+    public static final String INDEXING_FANOUT_THREADS = "indexing_fanout_threads";
+    
+    /**
+     * When true, index the expiration time of rows having a TTL to filter out and purge expired documents without compaction.
+     */
+    public static final String INDEX_TTL_EXPIRY = "index_ttl_expiry";
+    
+    /**
+     * Interval of the background purge of TTL-expired documents.
+     */
+    public static final String TTL_EXPIRY_INTERVAL = "ttl_expiry_interval";
+    
+    /**
+     * Number of threads used to open new local shards in parallel, mainly when starting a node.
+     */
+    public static final String SHARD_OPEN_THREADS = "shard_open_threads";
+    
+    /**
+     * Number of threads used to index SSTables in parallel when building a secondary index or indexing streamed SSTables.
+     */
+    public static final String INDEX_BUILD_THREADS = "index_build_threads";
+    
+    /**
+     * Number of segment groups searched concurrently on the search thread pool for a shard (1 to search segments sequentially).
+     */
+    public static final String SEARCH_SEGMENT_GROUPS = "search_segment_groups";
+    
+    /**
+     * Number of token sub-ranges (virtual sub-shards) of the local shard, sorted by token and searched concurrently (1 to disable).
+     * Only set when creating an index, because it decides whether the Lucene index is sorted by token.
+     */
+    public static final String TOKEN_SUB_SHARDS = "token_sub_shards";
+    
+    /**
+     * Fetch policy of the cassandra rows of the search hits (local, speculative or local_quorum), also a search request parameter.
+     */
+    public static final String FETCH_POLICY = "fetch_policy";
+    
+    /**
+     * When true, store a binary image of the indexed columns in each document, so that local fetches do not read cassandra.
+     */
+    public static final String INDEX_ROW_IMAGE = "index_row_image";
+    
     // system property settings
     public static final String SETTING_SYSTEM_MAPPING_UPDATE_TIMEOUT = SYSTEM_PREFIX+MAPPING_UPDATE_TIMEOUT;
     public static final String SETTING_SYSTEM_SECONDARY_INDEX_CLASS = SYSTEM_PREFIX+SECONDARY_INDEX_CLASS;
@@ -327,6 +380,13 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     public static final String SETTING_SYSTEM_TOKEN_PRECISION_STEP = SYSTEM_PREFIX+TOKEN_PRECISION_STEP;
     public static final String SETTING_SYSTEM_TOKEN_RANGES_BITSET_CACHE = SYSTEM_PREFIX+TOKEN_RANGES_BITSET_CACHE;
     public static final String SETTING_SYSTEM_TOKEN_RANGES_QUERY_EXPIRE = SYSTEM_PREFIX+TOKEN_RANGES_QUERY_EXPIRE;
+    public static final String SETTING_SYSTEM_INDEXING_FANOUT_THREADS = SYSTEM_PREFIX+INDEXING_FANOUT_THREADS;
+    public static final String SETTING_SYSTEM_INDEX_TTL_EXPIRY = SYSTEM_PREFIX+INDEX_TTL_EXPIRY;
+    public static final String SETTING_SYSTEM_SHARD_OPEN_THREADS = SYSTEM_PREFIX+SHARD_OPEN_THREADS;
+    public static final String SETTING_SYSTEM_INDEX_BUILD_THREADS = SYSTEM_PREFIX+INDEX_BUILD_THREADS;
+    public static final String SETTING_SYSTEM_SEARCH_SEGMENT_GROUPS = SYSTEM_PREFIX+SEARCH_SEGMENT_GROUPS;
+    public static final String SETTING_SYSTEM_FETCH_POLICY = SYSTEM_PREFIX+FETCH_POLICY;
+    public static final String SETTING_SYSTEM_INDEX_ROW_IMAGE = SYSTEM_PREFIX+INDEX_ROW_IMAGE;
     
     // elassandra cluster settings
     public static final String SETTING_CLUSTER_MAPPING_UPDATE_TIMEOUT = CLUSTER_PREFIX+MAPPING_UPDATE_TIMEOUT;
@@ -396,6 +456,7 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
     private CassandraDiscovery discovery;
     
     private final TokenRangesService tokenRangeService;
+    private final WritePathMetrics writePathMetrics = new WritePathMetrics();
     private final CassandraSecondaryIndicesApplier cassandraSecondaryIndicesApplier;
     
     // manage asynchronous CQL schema update
@@ -467,6 +528,10 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         return this.tokenRangeService;
     }
     
+    public WritePathMetrics writePathMetrics() {
+        return this.writePathMetrics;
+    }
+    
     public void addShardStartedBarrier() {
         this.shardStartedBarrier = new CassandraShardStartedBarrier(settings, this);
     }
@@ -475,6 +540,11 @@ public class ClusterService extends org.elasticsearch.cluster.service.BaseCluste
         this.shardStartedBarrier = null;
     }
     
+    @Nullable
+    public CassandraShardStartedBarrier getShardStartedBarrier() {
+        return this.shardStartedBarrier;
+    }
+    
     public void blockUntilShardsStarted() {
         if (shardStartedBarrier != null) {
             shardStartedBarrier.blockUntilShardsStarted();
@@ -99,6 +99,13 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         IndexMetaData.INDEX_INDEX_STATIC_COLUMNS_SETTING,
         IndexMetaData.INDEX_INDEX_STATIC_ONLY_SETTING,
         IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING,
+        IndexMetaData.INDEX_INDEX_STATIC_JOIN_SETTING,
+        IndexMetaData.INDEX_INDEX_TTL_EXPIRY_SETTING,
+        IndexMetaData.INDEX_TTL_EXPIRY_INTERVAL_SETTING,
+        IndexMetaData.INDEX_SEARCH_SEGMENT_GROUPS_SETTING,
+        IndexMetaData.INDEX_TOKEN_SUB_SHARDS_SETTING,
+        IndexMetaData.INDEX_FETCH_POLICY_SETTING,
+        IndexMetaData.INDEX_INDEX_ROW_IMAGE_SETTING,
         
         SearchSlowLog.INDEX_SEARCH_SLOWLOG_THRESHOLD_FETCH_DEBUG_SETTING,
         SearchSlowLog.INDEX_SEARCH_SLOWLOG_THRESHOLD_FETCH_WARN_SETTING,
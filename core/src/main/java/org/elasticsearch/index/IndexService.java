@@ -25,6 +25,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.IOUtils;
+import org.elassandra.index.search.TTLExpiry;
 import org.elassandra.index.search.TokenRangesBitsetFilterCache;
 import org.elassandra.search.SearchProcessorFactory;
 import org.elasticsearch.client.Client;
@@ -49,12 +50,14 @@ import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineFactory;
 import org.elasticsearch.index.fielddata.IndexFieldDataCache;
 import org.elasticsearch.index.fielddata.IndexFieldDataService;
+import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.query.QueryShardContext;
 import org.elasticsearch.index.shard.IndexEventListener;
 import org.elasticsearch.index.shard.IndexSearcherWrapper;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardClosedException;
+import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.index.shard.IndexingOperationListener;
 import org.elasticsearch.index.shard.SearchOperationListener;
 import org.elasticsearch.index.shard.ShadowIndexShard;
@@ -115,6 +118,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
     private final List<SearchOperationListener> searchOperationListeners;
     private volatile AsyncRefreshTask refreshTask;
     private volatile AsyncTranslogFSync fsyncTask;
+    private volatile AsyncTTLExpiryTask ttlExpiryTask;
     private final ThreadPool threadPool;
     private final BigArrays bigArrays;
     private final ScriptService scriptService;
@@ -179,6 +183,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         this.searchOperationListeners = Collections.unmodifiableList(searchOperationListeners);
         // kick off async ops for the first shard in this index
         this.refreshTask = new AsyncRefreshTask(this);
+        this.ttlExpiryTask = new AsyncTTLExpiryTask(this);
     }
 
     public int numberOfShards() {
@@ -259,7 +264,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                     }
                 }
             } finally {
-                IOUtils.close(bitsetFilterCache, tokenRangesBitsetFilterCache, indexCache, indexFieldData, mapperService, refreshTask, fsyncTask);
+                IOUtils.close(bitsetFilterCache, tokenRangesBitsetFilterCache, indexCache, indexFieldData, mapperService, refreshTask, fsyncTask, ttlExpiryTask);
             }
         }
     }
@@ -525,7 +530,25 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
 
     @Override
     public boolean updateMapping(IndexMetaData indexMetaData) throws IOException {
-        return mapperService().updateMapping(indexMetaData);
+        final boolean updated = mapperService().updateMapping(indexMetaData);
+        // index_ttl_expiry may be enabled by the _meta of a mapping.
+        synchronized (this) {
+            if (ttlExpiryTask.isScheduled() != ttlExpiry())
+                rescheduleTTLExpiryTask();
+        }
+        return updated;
+    }
+
+    /**
+     * @return true if TTL-expired documents are filtered and purged, when index_ttl_expiry is enabled for at least one
+     * document type of this index by its _meta or by the index settings.
+     */
+    public boolean ttlExpiry() {
+        for (DocumentMapper docMapper : mapperService.docMappers(false)) {
+            if (TTLExpiry.enabled(indexSettings, docMapper.meta()))
+                return true;
+        }
+        return false;
     }
 
     private class StoreCloseListener implements Store.OnClose {
@@ -663,6 +686,10 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
             if (refreshTask.getInterval().equals(indexSettings.getRefreshInterval()) == false) {
                 rescheduleRefreshTasks();
             }
+            if (ttlExpiryTask.getInterval().equals(indexSettings.getValue(IndexMetaData.INDEX_TTL_EXPIRY_INTERVAL_SETTING)) == false ||
+                ttlExpiryTask.isScheduled() != ttlExpiry()) {
+                rescheduleTTLExpiryTask();
+            }
         }
 
         // update primary terms
@@ -680,6 +707,14 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
 
     }
 
+    private void rescheduleTTLExpiryTask() {
+        try {
+            ttlExpiryTask.close();
+        } finally {
+            ttlExpiryTask = new AsyncTTLExpiryTask(this);
+        }
+    }
+
     public interface ShardStoreDeleter {
         void deleteShardStore(String reason, ShardLock lock, IndexSettings indexSettings) throws IOException;
 
@@ -867,6 +902,47 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         }
     }
 
+    /**
+     * Purges TTL-expired documents of all shards of this index in a defined interval, when index_ttl_expiry is enabled (see {@link #ttlExpiry()}).
+     * Deletes are buffered by the engine and applied by the next refresh.
+     */
+    final class AsyncTTLExpiryTask extends BaseAsyncTask {
+
+        AsyncTTLExpiryTask(IndexService indexService) {
+            super(indexService, indexService.getIndexSettings().getValue(IndexMetaData.INDEX_TTL_EXPIRY_INTERVAL_SETTING));
+        }
+
+        @Override
+        boolean mustReschedule() {
+            return super.mustReschedule() && indexService.ttlExpiry();
+        }
+
+        @Override
+        protected void runInternal() {
+            final long nowInSec = TimeUnit.MILLISECONDS.toSeconds(threadPool.absoluteTimeInMillis());
+            for (IndexShard shard : indexService.shards.values()) {
+                if (shard.state() == IndexShardState.STARTED) {
+                    try {
+                        shard.getEngine().bufferDelete(new Engine.DeleteByQuery(TTLExpiry.expiredQuery(nowInSec), null, null, null, null,
+                            Engine.Operation.Origin.PRIMARY, System.nanoTime()));
+                    } catch (IndexShardClosedException | AlreadyClosedException ex) {
+                        // fine - continue;
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected String getThreadPool() {
+            return ThreadPool.Names.REFRESH;
+        }
+
+        @Override
+        public String toString() {
+            return "ttl_expiry";
+        }
+    }
+
     AsyncRefreshTask getRefreshTask() { // for tests
         return refreshTask;
     }
@@ -79,6 +79,7 @@ import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -97,6 +98,7 @@ import java.util.function.LongConsumer;
 public abstract class Engine implements Closeable {
 
     public static final String SYNC_COMMIT_ID = "sync_id";
+    public static final String COMMITLOG_POSITION_PREFIX = "commitlog_position.";
 
     protected final ShardId shardId;
     protected final Logger logger;
@@ -305,6 +307,52 @@ public abstract class Engine implements Closeable {
     public  void delete(DeleteByQuery delete) throws EngineException {
         
     }
+
+    /**
+     * Buffer a delete-by-query without refreshing, the deleted documents remain visible to searchers
+     * until the next refresh.
+     */
+    public void bufferDelete(DeleteByQuery delete) throws EngineException {
+        delete(delete);
+    }
+
+    /**
+     * Returns the number of delete-by-query executed or buffered by this engine.
+     */
+    public long getDeleteByQueryCount() {
+        return 0;
+    }
+
+    /**
+     * Returns the time spent applying delete-by-query.
+     */
+    public long getDeleteByQueryTimeInMillis() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of buffered delete-by-query not yet visible to searchers.
+     */
+    public long getDeleteByQueryPending() {
+        return 0;
+    }
+
+    /**
+     * Record the Cassandra commitlog position of a table below which all mutations are indexed,
+     * stored in the user data of the next Lucene commit.
+     * @param table keyspace.table name
+     * @param position commitlog position formatted as segmentId:position
+     */
+    public void setCommitLogPosition(String table, String position) {
+    }
+
+    /**
+     * Returns the Cassandra commitlog positions by table stored in the last Lucene commit.
+     * These positions are not used by the commitlog replay yet, which re-indexes all replayed mutations.
+     */
+    public Map<String, String> getCommitLogPositions() {
+        return Collections.emptyMap();
+    }
     
     public static class DeleteByQuery {
         private final Query query;
@@ -804,7 +852,7 @@ public abstract class Engine implements Closeable {
               the store is closed so we need to make sure we increment it here
              */
             try {
-                return getSearcherManager().isSearcherCurrent() == false;
+                return getDeleteByQueryPending() > 0 || getSearcherManager().isSearcherCurrent() == false;
             } catch (IOException e) {
                 logger.error("failed to access searcher manager", e);
                 failEngine("failed to access searcher manager", e);
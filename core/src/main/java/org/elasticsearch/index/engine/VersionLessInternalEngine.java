@@ -45,9 +45,11 @@ import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.LoggerInfoStream;
@@ -87,6 +89,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -137,6 +141,14 @@ public class VersionLessInternalEngine extends Engine {
     private final CounterMetric numVersionLookups = new CounterMetric();
     private final CounterMetric numIndexVersionsLookups = new CounterMetric();
 
+    // delete-by-query buffered by the index writer and applied by the next refresh or flush, without forcing a refresh.
+    private final AtomicLong pendingDeletes = new AtomicLong();
+    private final CounterMetric deleteByQueryCount = new CounterMetric();
+    private final CounterMetric deleteByQueryTime = new CounterMetric();
+
+    // Cassandra commitlog positions by table, carried from commit to commit and replacing the translog checkpoint.
+    private final Map<String, String> commitLogPositions = new ConcurrentHashMap<>();
+
     public VersionLessInternalEngine(EngineConfig engineConfig) throws EngineException {
         super(engineConfig);
         openMode = engineConfig.getOpenMode();
@@ -162,6 +174,7 @@ public class VersionLessInternalEngine extends Engine {
             try {
                 writer = createWriter(openMode == EngineConfig.OpenMode.CREATE_INDEX_AND_TRANSLOG);
                 updateMaxUnsafeAutoIdTimestampFromWriter(writer);
+                updateCommitLogPositionsFromWriter(writer);
                 indexWriter = writer;
                 translog = openTranslog(engineConfig, writer);
                 assert translog.getGeneration() != null;
@@ -215,6 +228,15 @@ public class VersionLessInternalEngine extends Engine {
         maxUnsafeAutoIdTimestamp.set(Math.max(maxUnsafeAutoIdTimestamp.get(), commitMaxUnsafeAutoIdTimestamp));
     }
 
+    private void updateCommitLogPositionsFromWriter(IndexWriter writer) {
+        for (Map.Entry<String, String> entry : writer.getLiveCommitData()) {
+            if (entry.getKey().startsWith(COMMITLOG_POSITION_PREFIX))
+                commitLogPositions.put(entry.getKey().substring(COMMITLOG_POSITION_PREFIX.length()), entry.getValue());
+        }
+        if (!commitLogPositions.isEmpty())
+            logger.debug("last commit indexed up to commitlog positions {}", commitLogPositions);
+    }
+
     @Override
     public VersionLessInternalEngine recoverFromTranslog() throws IOException {
         /*
@@ -931,6 +953,7 @@ public class VersionLessInternalEngine extends Engine {
         // since it flushes the index as well (though, in terms of concurrency, we are allowed to do it)
         try (ReleasableLock lock = readLock.acquire()) {
             ensureOpen();
+            pendingDeletes.set(0);
             searcherManager.maybeRefreshBlocking();
         } catch (AlreadyClosedException e) {
             failOnTragicEvent(e);
@@ -1426,6 +1449,10 @@ public class VersionLessInternalEngine extends Engine {
             iwc.setRAMBufferSizeMB(engineConfig.getIndexingBufferSize().getMbFrac());
             iwc.setCodec(engineConfig.getCodec());
             iwc.setUseCompoundFile(true); // always use compound on flush - reduces # of file-handles on refresh
+            if (engineConfig.getIndexSettings().getValue(IndexMetaData.INDEX_TOKEN_SUB_SHARDS_SETTING) > 1) {
+                // token sub-shards are searched as doc id ranges of token sorted segments.
+                iwc.setIndexSort(TokenFieldMapper.INDEX_SORT);
+            }
             return new IndexWriter(store.directory(), iwc);
         } catch (LockObtainFailedException ex) {
             logger.warn("could not lock IndexWriter", ex);
@@ -1594,6 +1621,8 @@ public class VersionLessInternalEngine extends Engine {
                     commitData.put(Engine.SYNC_COMMIT_ID, syncId);
                 }
                 commitData.put(MAX_UNSAFE_AUTO_ID_TIMESTAMP_COMMIT_ID, Long.toString(maxUnsafeAutoIdTimestamp.get()));
+                for (Map.Entry<String, String> entry : commitLogPositions.entrySet())
+                    commitData.put(COMMITLOG_POSITION_PREFIX + entry.getKey(), entry.getValue());
                 logger.trace("committing writer with commit data [{}]", commitData);
                 return commitData.entrySet().iterator();
             });
@@ -1744,20 +1773,86 @@ public class VersionLessInternalEngine extends Engine {
         }
     }
 
-    private void innerDelete(DeleteByQuery delete) throws EngineException {
-        try {
-            Query query = delete.query();
-            if (delete.aliasFilter() != null) {
-                query = new BooleanQuery.Builder()
-                        .add(query, Occur.MUST)
-                        .add(delete.aliasFilter(), Occur.FILTER)
-                        .build();
-            }
-            if (delete.nested()) {
-                query = new IncludeNestedDocsQuery(query, delete.parentFilter());
-            }
+    /**
+     * Buffer a delete-by-query in the index writer, applied to previously indexed documents by the next refresh or flush.
+     * A single {@link TermQuery} is applied as a (cheap) delete by term.
+     */
+    @Override
+    public void bufferDelete(DeleteByQuery delete) throws EngineException {
+        try (ReleasableLock lock = readLock.acquire()) {
+            ensureOpen();
+            deleteByQueryCount.inc();
+            deleteDocuments(deleteQuery(delete));
+            translog.add(20L);  // arbitrary delete sizeInBytes=20
+            pendingDeletes.incrementAndGet();
+        } catch (AlreadyClosedException e) {
+            throw e;
+        } catch (Exception t) {
+            maybeFailEngine("delete_by_query", t);
+            throw new DeleteByQueryFailedEngineException(shardId, delete, t);
+        }
+    }
 
+    private void deleteDocuments(Query query) throws IOException {
+        final long start = System.nanoTime();
+        if (query instanceof TermQuery)
+            indexWriter.deleteDocuments(((TermQuery) query).getTerm());
+        else
             indexWriter.deleteDocuments(query);
+        deleteByQueryTime.inc(System.nanoTime() - start);
+    }
+
+    @Override
+    public long getDeleteByQueryCount() {
+        return deleteByQueryCount.count();
+    }
+
+    @Override
+    public long getDeleteByQueryTimeInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deleteByQueryTime.count());
+    }
+
+    @Override
+    public long getDeleteByQueryPending() {
+        return pendingDeletes.get();
+    }
+
+    @Override
+    public void setCommitLogPosition(String table, String position) {
+        commitLogPositions.put(table, position);
+    }
+
+    @Override
+    public Map<String, String> getCommitLogPositions() {
+        final Map<String, String> positions = new HashMap<>();
+        final SegmentInfos infos = lastCommittedSegmentInfos;
+        if (infos != null) {
+            for (Map.Entry<String, String> entry : infos.getUserData().entrySet()) {
+                if (entry.getKey().startsWith(COMMITLOG_POSITION_PREFIX))
+                    positions.put(entry.getKey().substring(COMMITLOG_POSITION_PREFIX.length()), entry.getValue());
+            }
+        }
+        return positions;
+    }
+
+    private static Query deleteQuery(DeleteByQuery delete) {
+        Query query = delete.query();
+        if (delete.aliasFilter() != null) {
+            query = new BooleanQuery.Builder()
+                    .add(query, Occur.MUST)
+                    .add(delete.aliasFilter(), Occur.FILTER)
+                    .build();
+        }
+        if (delete.nested()) {
+            query = new IncludeNestedDocsQuery(query, delete.parentFilter());
+        }
+        return query;
+    }
+
+    private void innerDelete(DeleteByQuery delete) throws EngineException {
+        try {
+            deleteByQueryCount.inc();
+            deleteDocuments(deleteQuery(delete));
             translog.add(20L);  // arbitrary delete sizeInBytes=20 
         } catch (Exception t) {
             maybeFailEngine("delete_by_query", t);
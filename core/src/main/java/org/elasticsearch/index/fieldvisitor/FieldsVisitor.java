@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableSet;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.util.BytesRef;
+import org.elassandra.index.RowImage;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.mapper.IdFieldMapper;
@@ -69,6 +70,7 @@ public class FieldsVisitor extends StoredFieldVisitor {
     private final boolean loadSource;
     private final Set<String> requiredFields;
     protected BytesReference source;
+    protected BytesRef rowImage;
     protected String type, id;
     protected Map<String, List<Object>> fieldsValues;
     protected List<ByteBuffer> values;
@@ -142,6 +144,8 @@ public class FieldsVisitor extends StoredFieldVisitor {
     public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
         if (SourceFieldMapper.NAME.equals(fieldInfo.name)) {
             source = new BytesArray(value);
+        } else if (RowImage.NAME.equals(fieldInfo.name)) {
+            rowImage = new BytesRef(value);
         } else {
             addValue(fieldInfo.name, new BytesRef(value));
         }
@@ -195,6 +199,13 @@ public class FieldsVisitor extends StoredFieldVisitor {
         return this;
     }
 
+    /**
+     * @return the row image of the document, null if not stored.
+     */
+    public BytesRef rowImage() {
+        return rowImage;
+    }
+
     public Uid uid() {
         if (id == null) {
             return null;
@@ -223,10 +234,12 @@ public class FieldsVisitor extends StoredFieldVisitor {
     public void reset() {
         if (fieldsValues != null) fieldsValues.clear();
         source = null;
+        rowImage = null;
         type = null;
         id = null;
 
         requiredFields.addAll(BASE_REQUIRED_FIELDS);
+        requiredFields.add(RowImage.NAME);
         if (loadSource) {
             requiredFields.add(SourceFieldMapper.NAME);
         }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.fieldvisitor;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A field visitor loading a _source restricted to the cassandra columns of some fields,
+ * used to load the _source on demand when a fetch sub phase reads it while the _source is not requested.
+ */
+public class SourceFieldsVisitor extends FieldsVisitor {
+
+    private final Collection<String> sourceFields;
+
+    /**
+     * @param sourceFields names or patterns of the fields of the _source, or null to load the whole _source.
+     */
+    public SourceFieldsVisitor(@Nullable Collection<String> sourceFields) {
+        super(true);
+        this.sourceFields = sourceFields;
+    }
+
+    @Override
+    public NavigableSet<String> requiredColumns(SearchContext searchContext) throws IOException {
+        if (sourceFields == null)
+            return super.requiredColumns(searchContext);
+
+        Set<String> columnNames = searchContext.mapperService().documentMapper(type).getColumnDefinitions().keySet();
+        NavigableSet<String> requiredColumns = new TreeSet<String>();
+        for(String fieldExp : sourceFields) {
+            for(String field : searchContext.mapperService().simpleMatchToIndexNames(fieldExp)) {
+                int i = field.indexOf('.');
+                String columnName = (i > 0) ? field.substring(0, i) : field;
+                if (columnNames.contains(columnName))
+                    requiredColumns.add(columnName);
+            }
+        }
+        return requiredColumns;
+    }
+}
@@ -747,6 +747,11 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
         if (actualNestedFields > allowedNestedFields) {
             throw new IllegalArgumentException("Limit of nested fields [" + allowedNestedFields + "] in index [" + index().getName() + "] has been exceeded");
         }
+        if (actualNestedFields > 0 && indexSettings.getValue(IndexMetaData.INDEX_TOKEN_SUB_SHARDS_SETTING) > 1) {
+            // nested documents have no token and would be sorted apart from their parent document.
+            throw new IllegalArgumentException("Nested fields are not supported in index [" + index().getName() + "] having ["
+                + IndexMetaData.SETTING_TOKEN_SUB_SHARDS + "] greater than 1");
+        }
     }
 
     private void checkTotalFieldsLimit(long totalMappers) {
@@ -99,6 +99,14 @@ public abstract class ParseContext {
             fields.add(field);
         }
 
+        /** Remove all fields, to reuse this document for the next one. */
+        public void clear() {
+            fields.clear();
+            if (keyedFields != null) {
+                keyedFields.clear();
+            }
+        }
+
         /** Add fields so that they can later be fetched using {@link #getByKey(Object)}. */
         public void addWithKey(Object key, IndexableField field) {
             if (keyedFields == null) {
@@ -294,6 +302,16 @@ public abstract class ParseContext {
             return in.allEntries();
         }
 
+        @Override
+        public Field[] reusableFields(Mapper mapper) {
+            return in.reusableFields(mapper);
+        }
+
+        @Override
+        public void reusableFields(Mapper mapper, Field[] fields) {
+            in.reusableFields(mapper, fields);
+        }
+
         @Override
         public boolean externalValueSet() {
             return in.externalValueSet();
@@ -592,6 +610,20 @@ public abstract class ParseContext {
 
     public abstract AllEntries allEntries();
 
+    /**
+     * Return the fields created by the mapper for the previous document of this context, to be updated and added
+     * to the current document, or null when this context does not reuse fields.
+     */
+    public Field[] reusableFields(Mapper mapper) {
+        return null;
+    }
+
+    /**
+     * Keep the fields created by the mapper for the next document of this context.
+     */
+    public void reusableFields(Mapper mapper, Field[] fields) {
+    }
+
     /**
      * Return a new context that will have the external value set.
      */
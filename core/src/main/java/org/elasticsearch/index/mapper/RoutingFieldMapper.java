@@ -164,8 +164,14 @@ public class RoutingFieldMapper extends MetadataFieldMapper {
         String routing = (String)object;
         if (routing != null) {
             if (fieldType().indexOptions() != IndexOptions.NONE || fieldType().stored()) {
-                Field field = new Field(fieldType().name(), routing, fieldType());
-                context.doc().add(field);
+                Field[] fields = context.reusableFields(this);
+                if (fields == null) {
+                    fields = new Field[] { new Field(fieldType().name(), routing, fieldType()) };
+                    context.reusableFields(this, fields);
+                } else {
+                    fields[0].setStringValue(routing);
+                }
+                context.doc().add(fields[0]);
             }
         }
     }
@@ -369,9 +369,17 @@ public class TypeFieldMapper extends MetadataFieldMapper {
         if (fieldType().indexOptions() == IndexOptions.NONE && !fieldType().stored()) {
             return;
         }
-        context.doc().add(new Field(fieldType().name(), context.type(), fieldType()));
-        if (fieldType().hasDocValues()) {
-            context.doc().add(new SortedSetDocValuesField(fieldType().name(), new BytesRef(context.type())));
+        // the type is the same for all documents of this mapper.
+        Field[] fields = context.reusableFields(this);
+        if (fields == null) {
+            Field field = new Field(fieldType().name(), context.type(), fieldType());
+            fields = (fieldType().hasDocValues()) ?
+                    new Field[] { field, new SortedSetDocValuesField(fieldType().name(), new BytesRef(context.type())) } :
+                    new Field[] { field };
+            context.reusableFields(this, fields);
+        }
+        for (Field field : fields) {
+            context.doc().add(field);
         }
     }
 
@@ -229,8 +229,14 @@ public class UidFieldMapper extends MetadataFieldMapper {
     @Override
     public void createField(ParseContext context, Object object) throws IOException {
         Uid value = (Uid)object;
-        Field uid = new Field(NAME, value.toString(), fieldType);
-        context.doc().add(uid);
+        Field[] fields = context.reusableFields(this);
+        if (fields == null) {
+            fields = new Field[] { new Field(NAME, value.toString(), fieldType) };
+            context.reusableFields(this, fields);
+        } else {
+            fields[0].setStringValue(value.toString());
+        }
+        context.doc().add(fields[0]);
     }
 
     @Override
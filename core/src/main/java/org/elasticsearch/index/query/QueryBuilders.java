@@ -20,6 +20,7 @@
 package org.elasticsearch.index.query;
 
 import org.apache.lucene.search.join.ScoreMode;
+import org.elassandra.index.query.HasStaticQueryBuilder;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.geo.ShapeRelation;
@@ -483,6 +484,13 @@ public abstract class QueryBuilders {
         return new NestedQueryBuilder(path, query, scoreMode);
     }
 
+    /**
+     * Constructs a query matching wide rows whose partition static document matches the query (requires index_static_join).
+     */
+    public static HasStaticQueryBuilder hasStaticQuery(QueryBuilder query) {
+        return new HasStaticQueryBuilder(query);
+    }
+
     /**
      * A filer for a field based on several terms matching on any of them.
      *
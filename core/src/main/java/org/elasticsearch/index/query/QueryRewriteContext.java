@@ -74,6 +74,13 @@ public class QueryRewriteContext {
         return indexSettings;
     }
 
+    /**
+     * Return the ScriptService.
+     */
+    public ScriptService getScriptService() {
+        return scriptService;
+    }
+
     /**
      * Return the MapperService.
      */
@@ -281,6 +281,13 @@ public class QueryShardContext extends QueryRewriteContext {
         return lookup;
     }
 
+    /**
+     * @return true if the search lookup was created, by a script for example.
+     */
+    public boolean hasLookup() {
+        return lookup != null;
+    }
+
     public NestedScope nestedScope() {
         return nestedScope;
     }
@@ -205,6 +205,12 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     public final MeanMetric refreshMetric = new MeanMetric();
     public final MeanMetric flushMetric = new MeanMetric();
 
+    // group commit of the flushes requested by the memtable flushes of the tables mapped to this shard.
+    private final Object coalescedFlushMutex = new Object();
+    private long coalescedFlushRequested = 0;
+    private long coalescedFlushCompleted = 0;
+    private boolean coalescedFlushRunning = false;
+
     private final ShardEventListener shardEventListener = new ShardEventListener();
 
     private final ShardPath path;
@@ -781,7 +787,10 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             throttled = engine.isThrottled();
             throttleTimeInMillis = engine.getIndexThrottleTimeInMillis();
         }
-        return internalIndexingStats.stats(throttled, throttleTimeInMillis, types);
+        IndexingStats stats = internalIndexingStats.stats(throttled, throttleTimeInMillis, types);
+        if (engine != null)
+            stats.getTotal().setDeleteByQuery(engine.getDeleteByQueryCount(), engine.getDeleteByQueryTimeInMillis(), engine.getDeleteByQueryPending());
+        return stats;
     }
 
     public SearchStats searchStats(String... groups) {
@@ -879,6 +888,51 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
 
     }
 
+    /**
+     * Flush requested by a Cassandra memtable flush. Concurrent requests from the tables mapped to this shard
+     * are coalesced into a single Lucene commit: a caller returns once a commit started after its request has completed.
+     * Requests arriving while a commit is running wait for it and join the next one, so no flush thread is ever delayed on purpose.
+     */
+    public void coalescedFlush() throws ElasticsearchException {
+        final long ticket;
+        synchronized (coalescedFlushMutex) {
+            ticket = ++coalescedFlushRequested;
+        }
+        while (true) {
+            synchronized (coalescedFlushMutex) {
+                while (coalescedFlushRunning && coalescedFlushCompleted < ticket) {
+                    try {
+                        coalescedFlushMutex.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ElasticsearchException("interrupted while waiting for flush", e);
+                    }
+                }
+                if (coalescedFlushCompleted >= ticket) {
+                    logger.debug("flush request [{}] coalesced", ticket);
+                    return;
+                }
+                coalescedFlushRunning = true;
+            }
+            long committed = 0;
+            try {
+                synchronized (coalescedFlushMutex) {
+                    committed = coalescedFlushRequested;
+                }
+                flush(new FlushRequest().force(false).waitIfOngoing(true));
+            } catch (RuntimeException e) {
+                committed = 0;
+                throw e;
+            } finally {
+                synchronized (coalescedFlushMutex) {
+                    coalescedFlushRunning = false;
+                    coalescedFlushCompleted = Math.max(coalescedFlushCompleted, committed);
+                    coalescedFlushMutex.notifyAll();
+                }
+            }
+        }
+    }
+
     public void forceMerge(ForceMergeRequest forceMerge) throws IOException {
         verifyActive();
         if (logger.isTraceEnabled()) {
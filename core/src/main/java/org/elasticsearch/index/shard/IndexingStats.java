@@ -48,6 +48,9 @@ public class IndexingStats implements Streamable, ToXContent {
         private long noopUpdateCount;
         private long throttleTimeInMillis;
         private boolean isThrottled;
+        private long deleteByQueryCount;
+        private long deleteByQueryTimeInMillis;
+        private long deleteByQueryPending;
 
         Stats() {}
 
@@ -76,6 +79,9 @@ public class IndexingStats implements Streamable, ToXContent {
 
             noopUpdateCount += stats.noopUpdateCount;
             throttleTimeInMillis += stats.throttleTimeInMillis;
+            deleteByQueryCount += stats.deleteByQueryCount;
+            deleteByQueryTimeInMillis += stats.deleteByQueryTimeInMillis;
+            deleteByQueryPending += stats.deleteByQueryPending;
             if (isThrottled != stats.isThrottled) {
                 isThrottled = true; //When combining if one is throttled set result to throttled.
             }
@@ -134,6 +140,31 @@ public class IndexingStats implements Streamable, ToXContent {
             return noopUpdateCount;
         }
 
+        void setDeleteByQuery(long count, long timeInMillis, long pending) {
+            this.deleteByQueryCount = count;
+            this.deleteByQueryTimeInMillis = timeInMillis;
+            this.deleteByQueryPending = pending;
+        }
+
+        /**
+         * Returns the number of delete-by-query, mainly generated by Cassandra partition and range tombstones.
+         */
+        public long getDeleteByQueryCount() {
+            return deleteByQueryCount;
+        }
+
+        /**
+         * The total amount of time spent applying delete-by-query to the index writer.
+         */
+        public TimeValue getDeleteByQueryTime() { return new TimeValue(deleteByQueryTimeInMillis); }
+
+        /**
+         * Returns the number of delete-by-query applied since the last refresh, not yet visible to searchers.
+         */
+        public long getDeleteByQueryPending() {
+            return deleteByQueryPending;
+        }
+
         public static Stats readStats(StreamInput in) throws IOException {
             Stats stats = new Stats();
             stats.readFrom(in);
@@ -152,6 +183,9 @@ public class IndexingStats implements Streamable, ToXContent {
             noopUpdateCount = in.readVLong();
             isThrottled = in.readBoolean();
             throttleTimeInMillis = in.readLong();
+            deleteByQueryCount = in.readVLong();
+            deleteByQueryTimeInMillis = in.readVLong();
+            deleteByQueryPending = in.readVLong();
         }
 
         @Override
@@ -166,7 +200,9 @@ public class IndexingStats implements Streamable, ToXContent {
             out.writeVLong(noopUpdateCount);
             out.writeBoolean(isThrottled);
             out.writeLong(throttleTimeInMillis);
-
+            out.writeVLong(deleteByQueryCount);
+            out.writeVLong(deleteByQueryTimeInMillis);
+            out.writeVLong(deleteByQueryPending);
         }
 
         @Override
@@ -180,6 +216,10 @@ public class IndexingStats implements Streamable, ToXContent {
             builder.timeValueField(Fields.DELETE_TIME_IN_MILLIS, Fields.DELETE_TIME, deleteTimeInMillis);
             builder.field(Fields.DELETE_CURRENT, deleteCurrent);
 
+            builder.field(Fields.DELETE_BY_QUERY_TOTAL, deleteByQueryCount);
+            builder.timeValueField(Fields.DELETE_BY_QUERY_TIME_IN_MILLIS, Fields.DELETE_BY_QUERY_TIME, deleteByQueryTimeInMillis);
+            builder.field(Fields.DELETE_BY_QUERY_PENDING, deleteByQueryPending);
+
             builder.field(Fields.NOOP_UPDATE_TOTAL, noopUpdateCount);
 
             builder.field(Fields.IS_THROTTLED, isThrottled);
@@ -271,6 +311,10 @@ public class IndexingStats implements Streamable, ToXContent {
         static final String DELETE_TIME = "delete_time";
         static final String DELETE_TIME_IN_MILLIS = "delete_time_in_millis";
         static final String DELETE_CURRENT = "delete_current";
+        static final String DELETE_BY_QUERY_TOTAL = "delete_by_query_total";
+        static final String DELETE_BY_QUERY_TIME = "delete_by_query_time";
+        static final String DELETE_BY_QUERY_TIME_IN_MILLIS = "delete_by_query_time_in_millis";
+        static final String DELETE_BY_QUERY_PENDING = "delete_by_query_pending";
         static final String NOOP_UPDATE_TOTAL = "noop_update_total";
         static final String IS_THROTTLED = "is_throttled";
         static final String THROTTLED_TIME_IN_MILLIS = "throttle_time_in_millis";
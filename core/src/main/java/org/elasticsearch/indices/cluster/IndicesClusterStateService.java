@@ -53,6 +53,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.Callback;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.env.ShardLockObtainFailedException;
 import org.elasticsearch.gateway.GatewayService;
 import org.elasticsearch.index.Index;
@@ -79,10 +80,14 @@ import org.elasticsearch.snapshots.SnapshotShardsService;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.elasticsearch.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason.CLOSED;
@@ -118,6 +123,10 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
     private final boolean sendRefreshMapping;
     private final List<IndexEventListener> buildInIndexListener;
 
+    // number of threads used to open new local shards in parallel, and the shared pool opening them (null when opened sequentially).
+    private final int shardOpenThreads = Integer.getInteger(ClusterService.SETTING_SYSTEM_SHARD_OPEN_THREADS, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private final ExecutorService shardOpenExecutor;
+
     @Inject
     public IndicesClusterStateService(Settings settings, IndicesService indicesService, ClusterService clusterService,
                                       ThreadPool threadPool, PeerRecoveryTargetService recoveryTargetService,
@@ -150,6 +159,10 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
         this.restoreService = restoreService;
         this.repositoriesService = repositoriesService;
         this.sendRefreshMapping = this.settings.getAsBoolean("indices.cluster.send_refresh_mapping", true);
+        this.shardOpenExecutor = (shardOpenThreads > 1) ?
+                EsExecutors.newScaling("shard_open", 0, shardOpenThreads, 60, TimeUnit.SECONDS,
+                        EsExecutors.daemonThreadFactory(settings, "shard_open"), threadPool.getThreadContext()) :
+                null;
     }
 
     @Override
@@ -169,6 +182,8 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
 
     @Override
     protected void doClose() {
+        if (shardOpenExecutor != null)
+            ThreadPool.terminate(shardOpenExecutor, 10, TimeUnit.SECONDS);
     }
 
     @Override
@@ -393,7 +408,8 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
      * @param event
      */
     private void applyNewIndices(final ClusterChangedEvent event) {
-        ClusterState state = event.state();
+        final List<IndexMetaData> newShards = new ArrayList<>();
+        final Set<Index> newIndices = new HashSet<>();
         for (IndexMetaData indexMetaData : event.state().metaData()) {
             AllocatedIndex<? extends Shard> indexService = indicesService.indexService(indexMetaData.getIndex());
             if (indexService == null && indexMetaData.getState() == State.OPEN) {
@@ -402,47 +418,90 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
                 }
                 try {
                     indexService = indicesService.createIndex(indexMetaData, buildInIndexListener);
-                    indexService.updateMapping(indexMetaData);
+                    newIndices.add(indexMetaData.getIndex());
                 } catch (Throwable e) {
                     if (logger.isWarnEnabled()) {
                         logger.warn("[{}][{}] failed to create index", indexMetaData.getIndex(),  indexMetaData.getIndexUUID(), e);
                     }
                 }
             }
-            
-            DiscoveryNodes nodes = event.state().nodes();
-            RoutingTable routingTable = event.state().routingTable();
-            
             if (indexService != null && indexService.getShardOrNull(0) == null && indexMetaData.getState() == State.OPEN) {
+                newShards.add(indexMetaData);
+            }
+        }
+        if (newShards.isEmpty())
+            return;
+
+        // index services are created sequentially (IndicesService.createIndex is synchronized), mappings and shards are opened
+        // in parallel on the shard_open pool, while the cluster state applier thread waits for all of them.
+        final long start = System.nanoTime();
+        final int threads = Math.min(newShards.size(), shardOpenThreads);
+        if (shardOpenExecutor == null || threads <= 1) {
+            for (IndexMetaData indexMetaData : newShards)
+                applyNewIndex(event, indexMetaData, newIndices.contains(indexMetaData.getIndex()));
+        } else {
+            final List<Future<?>> futures = new ArrayList<>(newShards.size());
+            for (IndexMetaData indexMetaData : newShards)
+                futures.add(shardOpenExecutor.submit(() -> applyNewIndex(event, indexMetaData, newIndices.contains(indexMetaData.getIndex()))));
+            boolean interrupted = false;
+            for (Future<?> future : futures) {
                 try {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("[{}][{}] creating new shard INITIALIZING", indexMetaData.getIndex(), 0);
-                    }
-                    ShardRouting shardRouting = new ShardRouting(new ShardId(indexMetaData.getIndex(), 0), clusterService.localNode().getId(), null, true, 
-                            ShardRoutingState.INITIALIZING, 
-                            RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE,
-                            IndexRoutingTable.UNASSIGNED_INFO_INDEX_CREATED, 
-                            ShardRouting.DUMMY_ALLOCATION_ID, 0,
-                            AbstractSearchStrategy.EMPTY_RANGE_TOKEN_LIST);
-                    createShard(nodes, routingTable, shardRouting, state);
-                    
-                    //IndexShard indexShard = indexService.createShard(shardRouting);
-                    //indexShard.shardRouting(shardRouting);
-                    //indexShard.addFailedEngineListener(failedEngineHandler);
-                    //this.clusterService.recoverShard(indexMetaData.getIndex());  // post-applied shard recovery by CassandraIndicesClusterStateService
-                } catch (IndexShardAlreadyExistsException e) {
-                    // ignore this, the method call can happen several times
-                } catch (Throwable e) {
-                    logger.error("Unexpected error", e);
-                    final String failShardReason;
-                    if (indexService == null) {
-                        failShardReason = "failed to create index";
-                    } else {
-                        failShardReason = "failed to update mapping for index";
-                        indicesService.removeIndex(indexMetaData.getIndex(), FAILURE, "removing index (mapping update failed)");
+                    // wait for every shard, as the next steps of the cluster state apply expect them to be created.
+                    while (true) {
+                        try {
+                            future.get();
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
                     }
+                } catch (ExecutionException e) {
+                    logger.error("Unexpected error", e.getCause());
                 }
             }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        if (logger.isInfoEnabled() && newShards.size() > 1)
+            logger.info("{} new shards opened in {}ms with {} threads", newShards.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Math.max(1, threads));
+    }
+
+    /**
+     * Update the mapping of a newly created index, and create its INITIALIZING local shard, recovered from store on the generic thread pool.
+     */
+    private void applyNewIndex(final ClusterChangedEvent event, final IndexMetaData indexMetaData, boolean created) {
+        AllocatedIndex<? extends Shard> indexService = indicesService.indexService(indexMetaData.getIndex());
+        if (created) {
+            try {
+                indexService.updateMapping(indexMetaData);
+            } catch (Throwable e) {
+                logger.warn((Supplier<?>) () -> new ParameterizedMessage("[{}][{}] failed to update mapping of new index",
+                        indexMetaData.getIndex(), indexMetaData.getIndexUUID()), e);
+                indicesService.removeIndex(indexMetaData.getIndex(), FAILURE, "removing index (mapping update failed)");
+                return;
+            }
+        }
+        
+        ClusterState state = event.state();
+        DiscoveryNodes nodes = state.nodes();
+        RoutingTable routingTable = state.routingTable();
+        try {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}][{}] creating new shard INITIALIZING", indexMetaData.getIndex(), 0);
+            }
+            ShardRouting shardRouting = new ShardRouting(new ShardId(indexMetaData.getIndex(), 0), clusterService.localNode().getId(), null, true, 
+                    ShardRoutingState.INITIALIZING, 
+                    RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE,
+                    IndexRoutingTable.UNASSIGNED_INFO_INDEX_CREATED, 
+                    ShardRouting.DUMMY_ALLOCATION_ID, 0,
+                    AbstractSearchStrategy.EMPTY_RANGE_TOKEN_LIST);
+            createShard(nodes, routingTable, shardRouting, state);
+        } catch (IndexShardAlreadyExistsException e) {
+            // ignore this, the method call can happen several times
+        } catch (Throwable e) {
+            logger.error("Unexpected error", e);
+            indicesService.removeIndex(indexMetaData.getIndex(), FAILURE, "removing index (mapping update failed)");
         }
     }
     
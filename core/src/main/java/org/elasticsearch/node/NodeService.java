@@ -58,6 +58,7 @@ public class NodeService extends AbstractComponent implements Closeable {
 
 
     private final Discovery discovery;
+    private final ClusterService clusterService;
 
     NodeService(Settings settings, ThreadPool threadPool, MonitorService monitorService, Discovery discovery,
                        TransportService transportService, IndicesService indicesService, PluginsService pluginService,
@@ -76,6 +77,7 @@ public class NodeService extends AbstractComponent implements Closeable {
         this.ingestService = ingestService;
         this.settingsFilter = settingsFilter;
         this.scriptService = scriptService;
+        this.clusterService = clusterService;
         clusterService.addStateApplier(ingestService.getPipelineStore());
         clusterService.addStateApplier(ingestService.getPipelineExecutionService());
     }
@@ -99,6 +101,12 @@ public class NodeService extends AbstractComponent implements Closeable {
     public NodeStats stats(CommonStatsFlags indices, boolean os, boolean process, boolean jvm, boolean threadPool,
                            boolean fs, boolean transport, boolean http, boolean circuitBreaker,
                            boolean script, boolean discoveryStats, boolean ingest) {
+        return stats(indices, os, process, jvm, threadPool, fs, transport, http, circuitBreaker, script, discoveryStats, ingest, false);
+    }
+
+    public NodeStats stats(CommonStatsFlags indices, boolean os, boolean process, boolean jvm, boolean threadPool,
+                           boolean fs, boolean transport, boolean http, boolean circuitBreaker,
+                           boolean script, boolean discoveryStats, boolean ingest, boolean elassandra) {
         // for indices stats we want to include previous allocated shards stats as well (it will
         // only be applied to the sensible ones to use, like refresh/merge/flush/indexing stats)
         return new NodeStats(discovery.localNode(), System.currentTimeMillis(),
@@ -113,7 +121,8 @@ public class NodeService extends AbstractComponent implements Closeable {
                 circuitBreaker ? circuitBreakerService.stats() : null,
                 script ? scriptService.stats() : null,
                 discoveryStats ? discovery.stats() : null,
-                ingest ? ingestService.getPipelineExecutionService().stats() : null
+                ingest ? ingestService.getPipelineExecutionService().stats() : null,
+                elassandra ? clusterService.writePathMetrics().stats(clusterService.state().metaData()) : null
         );
     }
 
@@ -25,6 +25,8 @@ import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Counter;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elassandra.index.search.TTLExpiry;
 import org.elassandra.search.SearchProcessor;
 import org.elasticsearch.action.search.SearchTask;
 import org.elasticsearch.action.search.SearchType;
@@ -291,11 +293,22 @@ final class DefaultSearchContext extends SearchContext {
         }
 
         if (sliceBuilder != null) {
-            filters.add(sliceBuilder.toFilter(queryShardContext, shardTarget().getShardId().getId(),
+            if (TokenFieldMapper.NAME.equals(sliceBuilder.getField())) {
+                // token range slice, a contiguous part of the shard token ranges.
+                filters.add(this.clusterService().tokenRangesService().getTokenRangesSliceQuery(request.tokenRanges(), sliceBuilder.getId(), sliceBuilder.getMax()));
+            } else {
+                filters.add(sliceBuilder.toFilter(queryShardContext, shardTarget().getShardId().getId(),
                     queryShardContext.getIndexSettings().getNumberOfShards()));
+            }
+        }
+
+        // exclude TTL-expired documents not yet purged.
+        Query expiredFilter = null;
+        if (indexService.ttlExpiry()) {
+            expiredFilter = TTLExpiry.expiredFilter(request.nowInMillis());
         }
 
-        if (filters.isEmpty()) {
+        if (filters.isEmpty() && expiredFilter == null) {
             return query;
         } else {
             BooleanQuery.Builder builder = new BooleanQuery.Builder();
@@ -303,6 +316,9 @@ final class DefaultSearchContext extends SearchContext {
             for (Query filter : filters) {
                 builder.add(filter, Occur.FILTER);
             }
+            if (expiredFilter != null) {
+                builder.add(expiredFilter, Occur.MUST_NOT);
+            }
             return builder.build();
         }
     }
@@ -22,6 +22,7 @@ package org.elasticsearch.search;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.IOUtils;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elassandra.index.search.TokenRangesSearcherWrapper;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ExceptionsHelper;
@@ -82,6 +83,7 @@ import org.elasticsearch.search.rescore.RescoreBuilder;
 import org.elasticsearch.search.searchafter.SearchAfterBuilder;
 import org.elasticsearch.search.sort.SortAndFormats;
 import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.suggest.Suggest;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -728,6 +730,17 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
                 throw new SearchContextException(context, "`slice` cannot be used outside of a scroll context");
             }
             context.sliceBuilder(source.slice());
+            if (TokenFieldMapper.NAME.equals(source.slice().getField()) && source.sorts() == null) {
+                // token range slices are fetched in partition order, so that Cassandra reads are sequential.
+                try {
+                    Optional<SortAndFormats> optionalSort = SortBuilder.buildSort(Collections.singletonList(SortBuilders.fieldSort(TokenFieldMapper.NAME)), context.getQueryShardContext());
+                    if (optionalSort.isPresent()) {
+                        context.sort(optionalSort.get());
+                    }
+                } catch (IOException e) {
+                    throw new SearchContextException(context, "failed to create sort elements", e);
+                }
+            }
         }
 
         if (source.storedFields() != null) {
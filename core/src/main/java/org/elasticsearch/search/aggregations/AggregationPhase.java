@@ -123,7 +123,13 @@ public class AggregationPhase implements SearchPhase {
         }
 
         List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
+        final InternalAggregations groupsAggregations = context.aggregations().groupsAggregations();
         for (Aggregator aggregator : context.aggregations().aggregators()) {
+            if (groupsAggregations != null && aggregator instanceof GlobalAggregator == false) {
+                // already collected and reduced over the segment groups by the query phase
+                aggregations.add(groupsAggregations.get(aggregator.name()));
+                continue;
+            }
             try {
                 aggregator.postCollection();
                 aggregations.add(aggregator.buildAggregation(0));
@@ -25,6 +25,7 @@ public class SearchContextAggregations {
 
     private final AggregatorFactories factories;
     private Aggregator[] aggregators;
+    private InternalAggregations groupsAggregations;
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -50,4 +51,16 @@ public class SearchContextAggregations {
         this.aggregators = aggregators;
     }
 
+    /**
+     * @return the non-global top level aggregations collected and reduced over concurrently searched segment groups,
+     * or null when collected by the top level aggregators.
+     */
+    public InternalAggregations groupsAggregations() {
+        return groupsAggregations;
+    }
+
+    public void groupsAggregations(InternalAggregations groupsAggregations) {
+        this.groupsAggregations = groupsAggregations;
+    }
+
 }
@@ -19,13 +19,16 @@
 
 package org.elasticsearch.search.fetch;
 
+import org.apache.cassandra.cql3.ColumnSpecification;
 import org.apache.cassandra.cql3.QueryOptions;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.ResultSet;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.cql3.UntypedResultSet.Row;
 import org.apache.cassandra.cql3.statements.ParsedStatement;
-import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.cql3.statements.SelectStatement;
+import org.apache.cassandra.exceptions.RequestExecutionException;
+import org.apache.cassandra.exceptions.RequestValidationException;
 import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.service.QueryState;
 import org.apache.cassandra.transport.messages.ResultMessage;
@@ -37,6 +40,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BitSet;
+import org.elassandra.index.RowImage;
 import org.elassandra.index.mapper.internal.NodeFieldMapper;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
@@ -48,17 +52,21 @@ import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.fieldvisitor.CustomFieldsVisitor;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.index.fieldvisitor.SingleFieldsVisitor;
+import org.elasticsearch.index.fieldvisitor.SourceFieldsVisitor;
 import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.IdFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.ObjectMapper;
 import org.elasticsearch.index.mapper.SourceFieldMapper;
+import org.elasticsearch.index.mapper.UidFieldMapper;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.SearchHits;
@@ -67,10 +75,15 @@ import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.fetch.subphase.InnerHitsFetchSubPhase;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.lookup.SourceLookup;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfiler;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfiler.Step;
 import org.elasticsearch.tasks.TaskCancelledException;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -78,6 +91,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.contentBuilder;
 
@@ -157,6 +174,12 @@ public class FetchPhase implements SearchPhase {
             }
         }
 
+        final FetchPolicy fetchPolicy = fetchPolicy(context);
+        final Map<Integer, RowRead> rowReads =
+            (fieldsVisitor != null && fetchPolicy != FetchPolicy.LOCAL && context.docIdsToLoadSize() > 1 && context.mapperService().hasNested() == false) ?
+            readRows(context, fieldsVisitor, fetchPolicy) : Collections.emptyMap();
+        final Collection<String> sourceFields = context.sourceRequested() ? Collections.emptyList() : sourceFields(context);
+
         SearchHit[] hits = new SearchHit[context.docIdsToLoadSize()];
         FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
         for (int index = 0; index < context.docIdsToLoadSize(); index++) {
@@ -174,7 +197,7 @@ public class FetchPhase implements SearchPhase {
                 if (rootDocId != -1) {
                     searchHit = createNestedSearchHit(context, docId, subDocId, rootDocId, fieldNames, fieldNamePatterns, subReaderContext);
                 } else {
-                    searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext);
+                    searchHit = createSearchHit(context, fieldsVisitor, docId, subDocId, subReaderContext, fetchPolicy, rowReads, sourceFields);
                 }
             } catch (IOException e) {
                 throw ExceptionsHelper.convertToElastic(e);
@@ -192,6 +215,9 @@ public class FetchPhase implements SearchPhase {
         }
 
         context.fetchResult().hits(new SearchHits(hits, context.queryResult().getTotalHits(), context.queryResult().getMaxScore()));
+        if (context.getProfilers() != null) {
+            context.fetchResult().cassandraFetchProfileResult(context.getProfilers().getCassandraFetchProfiler().result());
+        }
     }
 
     private int findRootDocumentIfNested(SearchContext context, LeafReaderContext subReaderContext, int subDocId) throws IOException {
@@ -204,11 +230,12 @@ public class FetchPhase implements SearchPhase {
         return -1;
     }
 
-    protected SearchHit createSearchHit(SearchContext context, FieldsVisitor fieldsVisitor, int docId, int subDocId, LeafReaderContext subReaderContext) {
+    protected SearchHit createSearchHit(SearchContext context, FieldsVisitor fieldsVisitor, int docId, int subDocId, LeafReaderContext subReaderContext,
+            FetchPolicy fetchPolicy, Map<Integer, RowRead> rowReads, Collection<String> sourceFields) {
         if (fieldsVisitor == null) {
             return new SearchHit(docId);
         }
-        loadStoredFields(context, subReaderContext, fieldsVisitor, subDocId);
+        loadStoredFields(context, subReaderContext, fieldsVisitor, subDocId, fetchPolicy, rowReads);
         fieldsVisitor.postProcess(context.mapperService());
 
         Map<String, SearchHitField> searchFields = null;
@@ -233,6 +260,9 @@ public class FetchPhase implements SearchPhase {
         sourceLookup.setSegmentAndDocument(subReaderContext, subDocId);
         if (fieldsVisitor.source() != null) {
             sourceLookup.setSource(fieldsVisitor.source());
+        } else if (sourceFields == null || sourceFields.isEmpty() == false) {
+            // read the columns of the sub phases from cassandra when they read the _source.
+            sourceLookup.setSourceLoader(() -> loadSource(context, subReaderContext, subDocId, fetchPolicy, sourceFields));
         }
         return searchHit;
     }
@@ -242,7 +272,7 @@ public class FetchPhase implements SearchPhase {
         // otherwise highlighting will attempt to fetch the _source from the nested doc, which will fail,
         // because the entire _source is only stored with the root document.
         final FieldsVisitor rootFieldsVisitor = new FieldsVisitor(context.sourceRequested() || context.highlight() != null);
-        loadStoredFields(context, subReaderContext, rootFieldsVisitor, rootSubDocId);
+        loadStoredFields(context, subReaderContext, rootFieldsVisitor, rootSubDocId, fetchPolicy(context), Collections.emptyMap());
         rootFieldsVisitor.postProcess(context.mapperService());
 
         Map<String, SearchHitField> searchFields = getSearchFields(context, nestedSubDocId, fieldNames, fieldNamePatterns, subReaderContext);
@@ -304,7 +334,7 @@ public class FetchPhase implements SearchPhase {
             FieldsVisitor nestedFieldsVisitor = new CustomFieldsVisitor(fieldNames == null ? Collections.emptySet() : fieldNames,
                 fieldNamePatterns == null ? Collections.emptyList() : fieldNamePatterns, false);
             if (nestedFieldsVisitor != null) {
-                loadStoredFields(context, subReaderContext, nestedFieldsVisitor, nestedSubDocId);
+                loadStoredFields(context, subReaderContext, nestedFieldsVisitor, nestedSubDocId, fetchPolicy(context), Collections.emptyMap());
                 nestedFieldsVisitor.postProcess(context.mapperService());
                 if (!nestedFieldsVisitor.fields().isEmpty()) {
                     searchFields = new HashMap<>(nestedFieldsVisitor.fields().size());
@@ -402,10 +432,14 @@ public class FetchPhase implements SearchPhase {
     }
     
     protected void processCqlResultSet(SearchContext searchContext, IndexService indexService, FieldsVisitor fieldVisitor, ResultSet resultSet) throws IOException {
+        final CassandraFetchProfiler profiler = searchContext.getProfilers() == null ? null : searchContext.getProfilers().getCassandraFetchProfiler();
         UntypedResultSet rs = UntypedResultSet.create(resultSet);
         if (!rs.isEmpty()) {
             Row row = rs.one();
+            long start = System.nanoTime();
             Map<String, Object> mapObject = clusterService.rowAsMap(indexService, fieldVisitor.uid().type(), row);
+            if (profiler != null)
+                profiler.record(Step.ROW_AS_MAP, start);
             if (searchContext.includeNode()) {
                 mapObject.put(NodeFieldMapper.NAME, clusterService.state().nodes().getLocalNodeId());
             }
@@ -418,12 +452,174 @@ public class FetchPhase implements SearchPhase {
                 }
             }
             if (fieldVisitor.loadSource()) {
+                start = System.nanoTime();
                 fieldVisitor.source( clusterService.source(indexService, searchContext.mapperService().documentMapper(fieldVisitor.uid().type()), mapObject, fieldVisitor.uid()) );
+                if (profiler != null)
+                    profiler.record(Step.SOURCE, start, fieldVisitor.source() == null ? 0 : fieldVisitor.source().length());
+            }
+        } else if (profiler != null) {
+            profiler.missingRow(fieldVisitor.uid().id());
+        }
+    }
+    
+    private static long resultSetSize(ResultSet resultSet) {
+        long size = 0;
+        for (List<ByteBuffer> row : resultSet.rows) {
+            for (ByteBuffer value : row) {
+                if (value != null)
+                    size += value.remaining();
             }
         }
+        return size;
     }
     
-    private void loadStoredFields(SearchContext searchContext, LeafReaderContext readerContext, FieldsVisitor fieldVisitor, int docId) {
+    /**
+     * @return the union of the _source fields of the fetch sub phases, null if any field may be read.
+     */
+    private Collection<String> sourceFields(SearchContext context) {
+        final Set<String> sourceFields = new HashSet<>();
+        for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
+            Collection<String> subPhaseSourceFields = fetchSubPhase.sourceFields(context);
+            if (subPhaseSourceFields == null)
+                return null;
+            sourceFields.addAll(subPhaseSourceFields);
+        }
+        return sourceFields;
+    }
+
+    /**
+     * Deferred load of the _source of a hit restricted to the columns of sourceFields (all columns if null).
+     */
+    private BytesReference loadSource(SearchContext context, LeafReaderContext readerContext, int docId, FetchPolicy fetchPolicy, Collection<String> sourceFields) {
+        final SourceFieldsVisitor sourceFieldsVisitor = new SourceFieldsVisitor(sourceFields);
+        loadStoredFields(context, readerContext, sourceFieldsVisitor, docId, fetchPolicy, Collections.emptyMap());
+        return sourceFieldsVisitor.source();
+    }
+
+    /**
+     * Rebuild the CQL result of a hit from the row image stored in the document, see {@link RowImage}.
+     * @return the result set, null if the row image was written for other table columns or does not contain all selected columns.
+     */
+    private static ResultSet rowImageResultSet(SearchContext searchContext, FieldsVisitor fieldVisitor, String typeKey, ParsedStatement.Prepared cqlStatement) throws IOException {
+        if (!(cqlStatement.statement instanceof SelectStatement))
+            return null;
+        final SelectStatement select = (SelectStatement) cqlStatement.statement;
+        // cached with the prepared statement, built for the same table schema.
+        RowImage.Columns columns = searchContext.getRowImageColumns(typeKey);
+        if (columns == null) {
+            columns = new RowImage.Columns(select.cfm);
+            searchContext.putRowImageColumns(typeKey, columns);
+        }
+        final Map<String, ByteBuffer> values = columns.read(fieldVisitor.rowImage());
+        if (values == null)
+            return null;
+        final ResultSet.ResultMetadata metadata = select.getResultMetadata();
+        final List<ByteBuffer> row = new ArrayList<>(metadata.names.size());
+        for (ColumnSpecification spec : metadata.names) {
+            // computed columns like _token or _routing are not in the row image.
+            String name = spec.name.toString();
+            if (!values.containsKey(name))
+                return null;
+            row.add(values.get(name));
+        }
+        return new ResultSet(metadata, Collections.singletonList(row));
+    }
+
+    /**
+     * @return the fetch policy of the search request, or of the index when not specified by the request.
+     */
+    static FetchPolicy fetchPolicy(SearchContext context) {
+        final Map<String, Object> extraParams = context.request().extraParams();
+        if (extraParams != null && extraParams.get(ClusterService.FETCH_POLICY) != null)
+            return FetchPolicy.fromString(extraParams.get(ClusterService.FETCH_POLICY).toString());
+        return context.indexShard().indexSettings().getValue(IndexMetaData.INDEX_FETCH_POLICY_SETTING);
+    }
+
+    private static ResultMessage executeRead(ParsedStatement.Prepared cqlStatement, List<ByteBuffer> values, FetchPolicy fetchPolicy)
+            throws RequestExecutionException, RequestValidationException {
+        final QueryState queryState = new QueryState(ClientState.forInternalCalls());
+        final QueryOptions queryOptions = QueryOptions.forInternalCalls(fetchPolicy.consistencyLevel(), values);
+        return (fetchPolicy == FetchPolicy.LOCAL) ?
+            cqlStatement.statement.executeInternal(queryState, queryOptions) :
+            cqlStatement.statement.execute(queryState, queryOptions, System.nanoTime());
+    }
+
+    // maximum number of search threads reading the rows of a page concurrently, in addition to the fetching thread.
+    private static final int MAX_ROW_READ_WORKERS = 4;
+
+    /**
+     * A coordinated cassandra read of a hit, with the statement and primary key values built by {@link #readRows}.
+     */
+    static final class RowRead {
+        final ParsedStatement.Prepared cqlStatement;
+        final FutureTask<ResultMessage> task;
+
+        RowRead(ParsedStatement.Prepared cqlStatement, List<ByteBuffer> values, FetchPolicy fetchPolicy) {
+            this.cqlStatement = cqlStatement;
+            this.task = new FutureTask<>(() -> executeRead(cqlStatement, values, fetchPolicy));
+        }
+    }
+
+    /**
+     * Prepare the coordinated cassandra reads of the hits, run by a few search threads pulling reads from a shared list,
+     * so that the rows of a page are read concurrently without flooding the search thread pool.
+     * Only the _uid of the hits is read here, stored fields are loaded once by {@link #loadStoredFields}.
+     * @return read by doc id, run by the fetching thread when not yet started.
+     */
+    private Map<Integer, RowRead> readRows(SearchContext context, FieldsVisitor fieldsVisitor, FetchPolicy fetchPolicy) {
+        final IndexService indexService = context.indexShard().indexService();
+        final List<LeafReaderContext> leaves = context.searcher().getIndexReader().leaves();
+        final SingleFieldsVisitor uidVisitor = new SingleFieldsVisitor(UidFieldMapper.NAME);
+        final Map<Integer, RowRead> rowReads = new HashMap<>();
+        final List<RowRead> reads = new ArrayList<>(context.docIdsToLoadSize());
+        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
+            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
+            LeafReaderContext subReaderContext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+            try {
+                uidVisitor.reset(UidFieldMapper.NAME);
+                subReaderContext.reader().document(docId - subReaderContext.docBase, uidVisitor);
+                DocPrimaryKey docPk = clusterService.parseElasticId(indexService, uidVisitor.uid().type(), uidVisitor.uid().id());
+                String typeKey = uidVisitor.uid().type();
+                if (docPk.isStaticDocument)
+                    typeKey += "_static";
+                ParsedStatement.Prepared cqlStatement = context.getCqlPreparedStatement(typeKey);
+                if (cqlStatement == null) {
+                    // the statement depends on the requested fields of the fields visitor.
+                    fieldsVisitor.reset();
+                    subReaderContext.reader().document(docId - subReaderContext.docBase, fieldsVisitor);
+                    cqlStatement = getCqlPreparedStatement(context, indexService, fieldsVisitor, typeKey, docPk.isStaticDocument);
+                    if (cqlStatement == null)
+                        continue;
+                }
+                RowRead rowRead = new RowRead(cqlStatement, docPk.serialize(cqlStatement), fetchPolicy);
+                rowReads.put(docId, rowRead);
+                reads.add(rowRead);
+            } catch (Exception e) {
+                throw new FetchPhaseExecutionException(context, "Failed to fetch doc id [" + docId + "] from cassandra", e);
+            }
+        }
+
+        final ThreadPool threadPool = indexService.getThreadPool();
+        final Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
+        final int workers = Math.min(reads.size() - 1, Math.min(MAX_ROW_READ_WORKERS, threadPool.info(ThreadPool.Names.SEARCH).getMax()));
+        final AtomicInteger nextRead = new AtomicInteger();
+        final Runnable worker = () -> {
+            int i;
+            while ((i = nextRead.getAndIncrement()) < reads.size())
+                reads.get(i).task.run(); // no-op when already run by the fetching thread
+        };
+        for (int i = 0; i < workers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (EsRejectedExecutionException e) {
+                break; // remaining rows are read by the fetching thread.
+            }
+        }
+        return rowReads;
+    }
+
+    private void loadStoredFields(SearchContext searchContext, LeafReaderContext readerContext, FieldsVisitor fieldVisitor, int docId,
+            FetchPolicy fetchPolicy, Map<Integer, RowRead> rowReads) {
         fieldVisitor.reset();
         try {
             readerContext.reader().document(docId, fieldVisitor);
@@ -433,17 +629,51 @@ public class FetchPhase implements SearchPhase {
         
         // load field from cassandra
         IndexService indexService = searchContext.indexShard().indexService();
+        final CassandraFetchProfiler profiler = searchContext.getProfilers() == null ? null : searchContext.getProfilers().getCassandraFetchProfiler();
         try {
-            DocPrimaryKey docPk = clusterService.parseElasticId(indexService, fieldVisitor.uid().type(), fieldVisitor.uid().id());
+            // the statement and primary key values of a prepared row read are reused.
+            final RowRead rowRead = rowReads.get(readerContext.docBase + docId);
+            long start = System.nanoTime();
+            final DocPrimaryKey docPk = (rowRead != null) ? null : clusterService.parseElasticId(indexService, fieldVisitor.uid().type(), fieldVisitor.uid().id());
+            if (profiler != null && rowRead == null)
+                profiler.record(Step.PARSE_ELASTIC_ID, start);
             String typeKey = fieldVisitor.uid().type();
-            if (docPk.isStaticDocument) 
+            if (docPk != null && docPk.isStaticDocument) 
                 typeKey += "_static";
+            if (fieldVisitor instanceof SourceFieldsVisitor)
+                typeKey += "_source"; // projection of the deferred _source load
             
-            ParsedStatement.Prepared cqlStatement = getCqlPreparedStatement(searchContext, indexService, fieldVisitor, typeKey, docPk.isStaticDocument);
-            if (cqlStatement != null) {
-                ResultMessage result = cqlStatement.statement.executeInternal(new QueryState(ClientState.forInternalCalls()), QueryOptions.forInternalCalls(ConsistencyLevel.ONE, docPk.serialize(cqlStatement)));
+            start = System.nanoTime();
+            final ParsedStatement.Prepared cqlStatement = (rowRead != null) ? rowRead.cqlStatement :
+                getCqlPreparedStatement(searchContext, indexService, fieldVisitor, typeKey, docPk.isStaticDocument);
+            if (profiler != null && rowRead == null)
+                profiler.record(Step.GET_CQL_PREPARED_STATEMENT, start);
+            start = System.nanoTime();
+            final ResultSet rowImage = (cqlStatement != null && fetchPolicy == FetchPolicy.LOCAL && fieldVisitor.rowImage() != null) ?
+                    rowImageResultSet(searchContext, fieldVisitor, typeKey, cqlStatement) : null;
+            if (rowImage != null) {
+                if (profiler != null)
+                    profiler.record(Step.ROW_IMAGE, start, fieldVisitor.rowImage().length);
+                processCqlResultSet(searchContext, indexService, fieldVisitor, rowImage);
+            } else if (cqlStatement != null) {
+                start = System.nanoTime();
+                final ResultMessage result;
+                if (rowRead != null) {
+                    rowRead.task.run(); // no-op when already run by a search thread
+                    try {
+                        result = rowRead.task.get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                } else {
+                    result = executeRead(cqlStatement, docPk.serialize(cqlStatement), fetchPolicy);
+                }
+                if (profiler != null)
+                    profiler.record(Step.EXECUTE_INTERNAL, start, (result instanceof ResultMessage.Rows) ? resultSetSize(((ResultMessage.Rows)result).result) : 0);
                 if (result instanceof ResultMessage.Rows) {
                     processCqlResultSet(searchContext, indexService, fieldVisitor, ((ResultMessage.Rows)result).result);
+                } else if (profiler != null) {
+                    profiler.missingRow(fieldVisitor.uid().id());
                 }
             } else {
                 // when only requesting for field _node
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.fetch;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+
+import java.util.Locale;
+
+/**
+ * How the fetch phase reads the rows of the search hits from cassandra.
+ */
+public enum FetchPolicy {
+
+    /**
+     * Read the local replica at consistency level ONE, without any coordination.
+     */
+    LOCAL(ConsistencyLevel.ONE),
+
+    /**
+     * Coordinated read at LOCAL_ONE, the dynamic snitch chooses the replica and the read is speculatively
+     * retried on another replica of the local datacenter according to the speculative_retry option of the table.
+     */
+    SPECULATIVE(ConsistencyLevel.LOCAL_ONE),
+
+    /**
+     * Coordinated read at LOCAL_QUORUM, for strongly consistent hits.
+     */
+    LOCAL_QUORUM(ConsistencyLevel.LOCAL_QUORUM);
+
+    private final ConsistencyLevel consistencyLevel;
+
+    FetchPolicy(ConsistencyLevel consistencyLevel) {
+        this.consistencyLevel = consistencyLevel;
+    }
+
+    public ConsistencyLevel consistencyLevel() {
+        return consistencyLevel;
+    }
+
+    public static FetchPolicy fromString(String policy) {
+        try {
+            return valueOf(policy.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown fetch policy [" + policy + "], expecting one of [local, speculative, local_quorum]");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -25,6 +25,7 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfileShardResult;
 import org.elasticsearch.search.query.QuerySearchResult;
 
 import java.io.IOException;
@@ -32,6 +33,7 @@ import java.io.IOException;
 public final class FetchSearchResult extends SearchPhaseResult {
 
     private SearchHits hits;
+    private CassandraFetchProfileShardResult cassandraFetchProfileResult;
     // client side counter
     private transient int counter;
 
@@ -69,6 +71,17 @@ public final class FetchSearchResult extends SearchPhaseResult {
         return hits;
     }
 
+    public void cassandraFetchProfileResult(CassandraFetchProfileShardResult cassandraFetchProfileResult) {
+        this.cassandraFetchProfileResult = cassandraFetchProfileResult;
+    }
+
+    /**
+     * @return the cassandra fetch profile when the search request is profiled, null otherwise.
+     */
+    public CassandraFetchProfileShardResult cassandraFetchProfileResult() {
+        return cassandraFetchProfileResult;
+    }
+
     public FetchSearchResult initCounter() {
         counter = 0;
         return this;
@@ -89,6 +102,7 @@ public final class FetchSearchResult extends SearchPhaseResult {
         super.readFrom(in);
         requestId = in.readLong();
         hits = SearchHits.readSearchHits(in);
+        cassandraFetchProfileResult = in.readOptionalWriteable(CassandraFetchProfileShardResult::new);
     }
 
     @Override
@@ -96,5 +110,6 @@ public final class FetchSearchResult extends SearchPhaseResult {
         super.writeTo(out);
         out.writeLong(requestId);
         hits.writeTo(out);
+        out.writeOptionalWriteable(cassandraFetchProfileResult);
     }
 }
@@ -25,6 +25,8 @@ import org.apache.lucene.search.IndexSearcher;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.internal.SearchContext;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -83,4 +85,13 @@ public interface FetchSubPhase {
 
 
     default void hitsExecute(SearchContext context, SearchHit[] hits) {}
+
+    /**
+     * Fields of the _source read by this sub phase, so that only their cassandra columns are read on demand
+     * when the _source is not requested.
+     * @return field names or patterns, an empty collection if the _source is not read, or null if any field may be read.
+     */
+    default Collection<String> sourceFields(SearchContext context) {
+        return Collections.emptyList();
+    }
 }
@@ -32,6 +32,12 @@ import java.util.List;
 
 public final class ScriptFieldsFetchSubPhase implements FetchSubPhase {
 
+    @Override
+    public Collection<String> sourceFields(SearchContext context) {
+        // scripts may read any field of the _source.
+        return context.hasScriptFields() ? null : Collections.emptyList();
+    }
+
     @Override
     public void hitExecute(SearchContext context, HitContext hitContext) {
         if (context.hasScriptFields() == false) {
@@ -32,6 +32,7 @@ import org.elasticsearch.index.mapper.TextFieldMapper;
 import org.elasticsearch.search.fetch.FetchSubPhase;
 import org.elasticsearch.search.internal.SearchContext;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -49,6 +50,21 @@ public class HighlightPhase extends AbstractComponent implements FetchSubPhase {
         this.highlighters = highlighters;
     }
 
+    @Override
+    public Collection<String> sourceFields(SearchContext context) {
+        if (context.highlight() == null) {
+            return Collections.emptyList();
+        }
+        List<String> fields = new ArrayList<>();
+        for (SearchContextHighlight.Field field : context.highlight().fields()) {
+            fields.add(field.field());
+            if (field.fieldOptions().matchedFields() != null) {
+                fields.addAll(field.fieldOptions().matchedFields());
+            }
+        }
+        return fields;
+    }
+
     @Override
     public void hitExecute(SearchContext context, HitContext hitContext) {
         if (context.highlight() == null) {
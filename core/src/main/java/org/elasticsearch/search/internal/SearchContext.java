@@ -24,6 +24,7 @@ import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.Counter;
+import org.elassandra.index.RowImage;
 import org.elassandra.search.SearchProcessor;
 import org.elasticsearch.action.search.SearchTask;
 import org.elasticsearch.action.search.SearchType;
@@ -107,6 +108,7 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
     protected SearchProcessor processor = null;
     protected boolean includeNode;
     protected ConcurrentMap<String, ParsedStatement.Prepared> cqlStatementCache = new ConcurrentHashMap<String, ParsedStatement.Prepared>();
+    protected ConcurrentMap<String, RowImage.Columns> rowImageColumnsCache = new ConcurrentHashMap<String, RowImage.Columns>();
     
     @Override
     public final void close() {
@@ -173,6 +175,14 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
     public void putCqlPreparedStatement(String key, ParsedStatement.Prepared query) {
         cqlStatementCache.put(key, query);
     }
+
+    public RowImage.Columns getRowImageColumns(String key) {
+        return rowImageColumnsCache.get(key);
+    }
+
+    public void putRowImageColumns(String key, RowImage.Columns columns) {
+        rowImageColumnsCache.put(key, columns);
+    }
     
     /** Automatically apply all required filters to the given query such as
      *  alias filters, types filters, etc. */
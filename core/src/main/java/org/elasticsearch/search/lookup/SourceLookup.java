@@ -33,6 +33,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static java.util.Collections.emptyMap;
 
@@ -48,6 +49,7 @@ public class SourceLookup implements Map {
     private BytesReference sourceAsBytes;
     private Map<String, Object> source;
     private XContentType sourceContentType;
+    private Supplier<BytesReference> sourceLoader;
 
     public Map<String, Object> source() {
         return source;
@@ -61,6 +63,16 @@ public class SourceLookup implements Map {
         if (source != null) {
             return source;
         }
+        if (sourceLoader != null) {
+            // deferred load of the _source from cassandra
+            sourceAsBytes = sourceLoader.get();
+            sourceLoader = null;
+            if (sourceAsBytes == null) {
+                this.source = emptyMap();
+                this.sourceContentType = null;
+                return this.source;
+            }
+        }
         if (sourceAsBytes != null) {
             Tuple<XContentType, Map<String, Object>> tuple = sourceAsMapAndType(sourceAsBytes);
             sourceContentType = tuple.v1();
@@ -101,9 +113,17 @@ public class SourceLookup implements Map {
         this.reader = context.reader();
         this.source = null;
         this.sourceAsBytes = null;
+        this.sourceLoader = null;
         this.docId = docId;
     }
 
+    /**
+     * Set a loader of the _source of the current document, called when the _source is first read.
+     */
+    public void setSourceLoader(Supplier<BytesReference> sourceLoader) {
+        this.sourceLoader = sourceLoader;
+    }
+
     public void setSource(BytesReference source) {
         this.sourceAsBytes = source;
     }
@@ -23,6 +23,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Writeable;
 import org.elasticsearch.search.profile.aggregation.AggregationProfileShardResult;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfileShardResult;
 import org.elasticsearch.search.profile.query.QueryProfileShardResult;
 
 import java.io.IOException;
@@ -36,6 +37,9 @@ public class ProfileShardResult implements Writeable {
 
     private final AggregationProfileShardResult aggProfileShardResult;
 
+    // set on the coordinating node from the fetch phase result, after the query phase reduce.
+    private CassandraFetchProfileShardResult cassandraFetchProfileResult;
+
     public ProfileShardResult(List<QueryProfileShardResult> queryProfileResults, AggregationProfileShardResult aggProfileShardResult) {
         this.aggProfileShardResult = aggProfileShardResult;
         this.queryProfileResults = Collections.unmodifiableList(queryProfileResults);
@@ -50,6 +54,7 @@ public class ProfileShardResult implements Writeable {
         }
         this.queryProfileResults = Collections.unmodifiableList(queryProfileResults);
         this.aggProfileShardResult = new AggregationProfileShardResult(in);
+        this.cassandraFetchProfileResult = in.readOptionalWriteable(CassandraFetchProfileShardResult::new);
     }
 
     @Override
@@ -59,6 +64,7 @@ public class ProfileShardResult implements Writeable {
             queryShardResult.writeTo(out);
         }
         aggProfileShardResult.writeTo(out);
+        out.writeOptionalWriteable(cassandraFetchProfileResult);
     }
 
     public List<QueryProfileShardResult> getQueryProfileResults() {
@@ -68,4 +74,15 @@ public class ProfileShardResult implements Writeable {
     public AggregationProfileShardResult getAggregationProfileResults() {
         return aggProfileShardResult;
     }
+
+    /**
+     * @return the cassandra fetch profile, or null when the shard was not fetched.
+     */
+    public CassandraFetchProfileShardResult getCassandraFetchProfileResult() {
+        return cassandraFetchProfileResult;
+    }
+
+    public void setCassandraFetchProfileResult(CassandraFetchProfileShardResult cassandraFetchProfileResult) {
+        this.cassandraFetchProfileResult = cassandraFetchProfileResult;
+    }
 }
@@ -27,6 +27,7 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.search.profile.aggregation.AggregationProfileShardResult;
 import org.elasticsearch.search.profile.aggregation.AggregationProfiler;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfileShardResult;
 import org.elasticsearch.search.profile.query.QueryProfileShardResult;
 import org.elasticsearch.search.profile.query.QueryProfiler;
 
@@ -101,6 +102,9 @@ public final class SearchProfileShardResults implements Writeable, ToXContent{
             }
             builder.endArray();
             profileShardResult.getAggregationProfileResults().toXContent(builder, params);
+            if (profileShardResult.getCassandraFetchProfileResult() != null) {
+                profileShardResult.getCassandraFetchProfileResult().toXContent(builder, params);
+            }
             builder.endObject();
         }
         builder.endArray().endObject();
@@ -126,6 +130,7 @@ public final class SearchProfileShardResults implements Writeable, ToXContent{
         ensureExpectedToken(XContentParser.Token.START_OBJECT, token, parser::getTokenLocation);
         List<QueryProfileShardResult> queryProfileResults = new ArrayList<>();
         AggregationProfileShardResult aggProfileShardResult = null;
+        CassandraFetchProfileShardResult cassandraFetchProfileResult = null;
         String id = null;
         String currentFieldName = null;
         while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
@@ -147,11 +152,19 @@ public final class SearchProfileShardResults implements Writeable, ToXContent{
                 } else {
                     throwUnknownField(currentFieldName, parser.getTokenLocation());
                 }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (CassandraFetchProfileShardResult.CASSANDRA_FETCH.equals(currentFieldName)) {
+                    cassandraFetchProfileResult = CassandraFetchProfileShardResult.fromXContent(parser);
+                } else {
+                    throwUnknownField(currentFieldName, parser.getTokenLocation());
+                }
             } else {
                 throwUnknownToken(token, parser.getTokenLocation());
             }
         }
-        searchProfileResults.put(id, new ProfileShardResult(queryProfileResults, aggProfileShardResult));
+        ProfileShardResult profileShardResult = new ProfileShardResult(queryProfileResults, aggProfileShardResult);
+        profileShardResult.setCassandraFetchProfileResult(cassandraFetchProfileResult);
+        searchProfileResults.put(id, profileShardResult);
     }
 
     /**
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.profile.fetch;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfiler.Step;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.elasticsearch.common.xcontent.XContentParserUtils.ensureExpectedToken;
+import static org.elasticsearch.common.xcontent.XContentParserUtils.throwUnknownField;
+import static org.elasticsearch.common.xcontent.XContentParserUtils.throwUnknownToken;
+
+/**
+ * Cassandra fetch profile of a shard: count, time and bytes of each fetch step, and hits whose row is missing.
+ */
+public final class CassandraFetchProfileShardResult implements Writeable, ToXContent {
+
+    public static final String CASSANDRA_FETCH = "cassandra_fetch";
+    private static final String COUNT = "count";
+    private static final String TIME = "time";
+    private static final String TIME_NANOS = "time_in_nanos";
+    private static final String BYTES = "bytes";
+    private static final String MISSING_ROWS = "missing_rows";
+    private static final String MISSING_IDS = "missing_ids";
+
+    private final long[] counts;
+    private final long[] nanos;
+    private final long[] bytes;
+    private final long missingRows;
+    private final List<String> missingIds;
+
+    public CassandraFetchProfileShardResult(long[] counts, long[] nanos, long[] bytes, long missingRows, List<String> missingIds) {
+        this.counts = counts;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.missingRows = missingRows;
+        this.missingIds = missingIds;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public CassandraFetchProfileShardResult(StreamInput in) throws IOException {
+        counts = in.readVLongArray();
+        nanos = in.readVLongArray();
+        bytes = in.readVLongArray();
+        missingRows = in.readVLong();
+        missingIds = in.readList(StreamInput::readString);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLongArray(counts);
+        out.writeVLongArray(nanos);
+        out.writeVLongArray(bytes);
+        out.writeVLong(missingRows);
+        out.writeStringList(missingIds);
+    }
+
+    public long getCount(Step step) {
+        return counts[step.ordinal()];
+    }
+
+    public long getTime(Step step) {
+        return nanos[step.ordinal()];
+    }
+
+    public long getBytes(Step step) {
+        return bytes[step.ordinal()];
+    }
+
+    public long getMissingRows() {
+        return missingRows;
+    }
+
+    /**
+     * @return ids of the hits whose row is missing, limited to {@link CassandraFetchProfiler#MAX_MISSING_IDS}.
+     */
+    public List<String> getMissingIds() {
+        return Collections.unmodifiableList(missingIds);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(CASSANDRA_FETCH);
+        for (Step step : Step.values()) {
+            builder.startObject(step.fieldName());
+            builder.field(COUNT, counts[step.ordinal()]);
+            if (builder.humanReadable()) {
+                builder.field(TIME, String.format(Locale.US, "%.10gms", nanos[step.ordinal()] / 1000000.0));
+            }
+            builder.field(TIME_NANOS, nanos[step.ordinal()]);
+            builder.field(BYTES, bytes[step.ordinal()]);
+            builder.endObject();
+        }
+        builder.field(MISSING_ROWS, missingRows);
+        builder.field(MISSING_IDS, missingIds);
+        builder.endObject();
+        return builder;
+    }
+
+    public static CassandraFetchProfileShardResult fromXContent(XContentParser parser) throws IOException {
+        XContentParser.Token token = parser.currentToken();
+        ensureExpectedToken(XContentParser.Token.START_OBJECT, token, parser::getTokenLocation);
+        long[] counts = new long[Step.values().length];
+        long[] nanos = new long[Step.values().length];
+        long[] bytes = new long[Step.values().length];
+        long missingRows = 0;
+        List<String> missingIds = new ArrayList<>();
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if (MISSING_ROWS.equals(currentFieldName)) {
+                    missingRows = parser.longValue();
+                } else {
+                    throwUnknownField(currentFieldName, parser.getTokenLocation());
+                }
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                if (MISSING_IDS.equals(currentFieldName)) {
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        missingIds.add(parser.text());
+                    }
+                } else {
+                    throwUnknownField(currentFieldName, parser.getTokenLocation());
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                Step step = null;
+                for (Step s : Step.values()) {
+                    if (s.fieldName().equals(currentFieldName))
+                        step = s;
+                }
+                if (step == null) {
+                    throwUnknownField(currentFieldName, parser.getTokenLocation());
+                }
+                String stepFieldName = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        stepFieldName = parser.currentName();
+                    } else if (COUNT.equals(stepFieldName)) {
+                        counts[step.ordinal()] = parser.longValue();
+                    } else if (TIME_NANOS.equals(stepFieldName)) {
+                        nanos[step.ordinal()] = parser.longValue();
+                    } else if (BYTES.equals(stepFieldName)) {
+                        bytes[step.ordinal()] = parser.longValue();
+                    } else if (TIME.equals(stepFieldName) == false) {
+                        throwUnknownField(stepFieldName, parser.getTokenLocation());
+                    }
+                }
+            } else {
+                throwUnknownToken(token, parser.getTokenLocation());
+            }
+        }
+        return new CassandraFetchProfileShardResult(counts, nanos, bytes, missingRows, missingIds);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.profile.fetch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates, for a shard, the count, elapsed time and bytes of each step of the fetch phase
+ * reading search hits from cassandra, and the ids of hits whose row no longer exists.
+ * A profiler is used by a single fetch phase, so it is not thread-safe.
+ */
+public class CassandraFetchProfiler {
+
+    /**
+     * Maximum number of reported ids of hits whose row is missing.
+     */
+    public static final int MAX_MISSING_IDS = 100;
+
+    public enum Step {
+        PARSE_ELASTIC_ID("parse_elastic_id"),           // ClusterService.parseElasticId
+        GET_CQL_PREPARED_STATEMENT("get_cql_prepared_statement"), // CQL statement build and lookup
+        EXECUTE_INTERNAL("execute_internal"),           // CQL read, bytes are the size of the returned cells
+        ROW_IMAGE("row_image"),                         // row image decoding instead of the CQL read, bytes are the size of the image
+        ROW_AS_MAP("row_as_map"),                       // ClusterService.rowAsMap
+        SOURCE("source");                               // _source serialization, bytes are the size of the _source
+
+        private final String fieldName;
+
+        Step(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        public String fieldName() {
+            return fieldName;
+        }
+    }
+
+    private final long[] counts = new long[Step.values().length];
+    private final long[] nanos = new long[Step.values().length];
+    private final long[] bytes = new long[Step.values().length];
+    private long missingRows = 0;
+    private final List<String> missingIds = new ArrayList<>();
+
+    /**
+     * Record a step started at startNanos (from {@link System#nanoTime()}).
+     */
+    public void record(Step step, long startNanos) {
+        record(step, startNanos, 0);
+    }
+
+    public void record(Step step, long startNanos, long size) {
+        nanos[step.ordinal()] += System.nanoTime() - startNanos;
+        counts[step.ordinal()]++;
+        bytes[step.ordinal()] += size;
+    }
+
+    /**
+     * Flag a search hit whose cassandra row no longer exists.
+     */
+    public void missingRow(String id) {
+        missingRows++;
+        if (missingIds.size() < MAX_MISSING_IDS)
+            missingIds.add(id);
+    }
+
+    public CassandraFetchProfileShardResult result() {
+        return new CassandraFetchProfileShardResult(counts.clone(), nanos.clone(), bytes.clone(), missingRows, new ArrayList<>(missingIds));
+    }
+}
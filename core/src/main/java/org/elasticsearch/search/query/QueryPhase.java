@@ -52,6 +52,7 @@ import org.elasticsearch.search.DocValueFormat;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.SearchService;
 import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.ScrollContext;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.profile.ProfileShardResult;
@@ -152,6 +153,11 @@ public class QueryPhase implements SearchPhase {
             queryResult.from(searchContext.from());
             queryResult.size(searchContext.size());
 
+            final int segmentGroups = SegmentGroupsSearch.groups(searchContext, searcher);
+            if (segmentGroups > 1) {
+                return SegmentGroupsSearch.execute(searchContext, (ContextIndexSearcher) searcher, segmentGroups);
+            }
+
             Query query = searchContext.query();
 
             final int totalNumDocs = searcher.getIndexReader().numDocs();
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.search.query;
+
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.Weight;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elassandra.search.aggregations.bucket.token.RangeAggregator;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.MinimumScoreCollector;
+import org.elasticsearch.common.lucene.search.FilteredCollector;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.aggregations.AggregationPhase;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.BucketCollector;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregator;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.rescore.RescoreSearchContext;
+import org.elasticsearch.search.sort.SortAndFormats;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Concurrent search of the single shard of an index on a node, over groups of doc id ranges:
+ * <ul>
+ * <li>groups of contiguous segments, see {@link IndexMetaData#INDEX_SEARCH_SEGMENT_GROUPS_SETTING},</li>
+ * <li>or token sub-shards when segments are sorted by token, see {@link IndexMetaData#INDEX_TOKEN_SUB_SHARDS_SETTING}.
+ * A token sub-shard is an equal width range of the Murmur3 token space, made of one contiguous range of doc ids per segment,
+ * and sub-shards not intersecting the token ranges of the request are not searched. Sorting segments by token
+ * adds a sort cost to every flush and merge of the index, trading write throughput for search concurrency.</li>
+ * </ul>
+ * Each group is collected by its own top docs collector and aggregators on the search thread pool,
+ * then top docs are merged with {@link TopDocs#merge} and aggregations are reduced with a non-final
+ * {@link InternalAggregations#reduce}, as the results of several shards would be.
+ * The searching thread also searches groups, so that a saturated search thread pool
+ * degrades to a sequential search rather than waiting for it.
+ */
+final class SegmentGroupsSearch {
+
+    private SegmentGroupsSearch() {}
+
+    /**
+     * Contiguous doc ids [minDoc, maxDoc) of a segment.
+     */
+    static final class DocRange {
+        final LeafReaderContext leaf;
+        final int minDoc;
+        final int maxDoc;
+
+        DocRange(LeafReaderContext leaf, int minDoc, int maxDoc) {
+            this.leaf = leaf;
+            this.minDoc = minDoc;
+            this.maxDoc = maxDoc;
+        }
+    }
+
+    /**
+     * @return the number of segment groups or token sub-shards to search concurrently, 1 when the search is sequential.
+     */
+    static int groups(SearchContext searchContext, IndexSearcher searcher) {
+        if (searcher instanceof ContextIndexSearcher == false || searchContext.indexShard() == null)
+            return 1;
+        final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        final IndexSettings indexSettings = searchContext.indexShard().indexSettings();
+        final int subShards = tokenSubShards(indexSettings, leaves);
+        final int groups = subShards > 1 ? subShards :
+            Math.min(indexSettings.getValue(IndexMetaData.INDEX_SEARCH_SEGMENT_GROUPS_SETTING), leaves.size());
+        if (groups <= 1)
+            return 1;
+
+        // scroll, collapse, terminate_after and profiling rely on a single collection.
+        if (searchContext.scrollContext() != null || searchContext.request().scroll() != null ||
+            searchContext.collapse() != null ||
+            searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER ||
+            searchContext.getProfilers() != null)
+            return 1;
+
+        // scripts (query, sort, aggregation or script fields) share the non thread-safe search lookup of the context.
+        if (searchContext.getQueryShardContext() == null || searchContext.getQueryShardContext().hasLookup())
+            return 1;
+
+        // only the aggregation collector can be collected by segment groups.
+        for (Class<?> key : searchContext.queryCollectors().keySet()) {
+            if (key != AggregationPhase.class)
+                return 1;
+        }
+
+        // hit counts without aggregations are cheap enough.
+        if (searchContext.size() == 0 && searchContext.aggregations() == null)
+            return 1;
+        return groups;
+    }
+
+    /**
+     * @return the number of token sub-shards of the index, 1 when disabled or when some segments are not sorted by token.
+     */
+    static int tokenSubShards(IndexSettings indexSettings, List<LeafReaderContext> leaves) {
+        final int subShards = indexSettings.getValue(IndexMetaData.INDEX_TOKEN_SUB_SHARDS_SETTING);
+        if (subShards <= 1 || leaves.isEmpty())
+            return 1;
+        for (LeafReaderContext leaf : leaves) {
+            if (TokenFieldMapper.INDEX_SORT.equals(leaf.reader().getIndexSort()) == false)
+                return 1;
+        }
+        return subShards;
+    }
+
+    /**
+     * Split leaves into at most maxGroups groups of contiguous leaves having about the same number of documents.
+     * Groups are ordered by doc id, so that merging top docs breaks ties as a sequential search would.
+     */
+    static List<List<DocRange>> segmentGroups(List<LeafReaderContext> leaves, int maxGroups) {
+        long totalDocs = 0;
+        for (LeafReaderContext leaf : leaves)
+            totalDocs += leaf.reader().maxDoc();
+        final long target = (totalDocs + maxGroups - 1) / maxGroups;
+
+        final List<List<DocRange>> groups = new ArrayList<>(maxGroups);
+        List<DocRange> group = new ArrayList<>();
+        long groupDocs = 0;
+        for (LeafReaderContext leaf : leaves) {
+            group.add(new DocRange(leaf, 0, leaf.reader().maxDoc()));
+            groupDocs += leaf.reader().maxDoc();
+            if (groupDocs >= target && groups.size() < maxGroups - 1) {
+                groups.add(group);
+                group = new ArrayList<>();
+                groupDocs = 0;
+            }
+        }
+        if (group.isEmpty() == false)
+            groups.add(group);
+        return groups;
+    }
+
+    /**
+     * Split the token space into subShards equal width ranges, each one made of a range of doc ids per token sorted leaf.
+     * Token sub-shards not intersecting tokenRanges (when not null) or empty are skipped, but at least one group is returned.
+     */
+    static List<List<DocRange>> tokenSubShardGroups(List<LeafReaderContext> leaves, int subShards,
+            Collection<Range<Token>> tokenRanges) throws IOException {
+        final long width = Long.divideUnsigned(-1L, subShards);
+        final SortedNumericDocValues[] tokens = new SortedNumericDocValues[leaves.size()];
+        final int[] minDocs = new int[leaves.size()]; // first doc of the current sub-shard in each leaf
+        for (int j = 0; j < tokens.length; j++)
+            tokens[j] = DocValues.getSortedNumeric(leaves.get(j).reader(), TokenFieldMapper.NAME);
+
+        final List<List<DocRange>> groups = new ArrayList<>(subShards);
+        for (int i = 0; i < subShards; i++) {
+            final long lower = Long.MIN_VALUE + i * width;
+            final boolean last = (i == subShards - 1);
+            final long upper = last ? Long.MAX_VALUE : lower + width - 1;
+            final boolean searched = intersects(lower, upper, tokenRanges);
+            final List<DocRange> group = new ArrayList<>();
+            for (int j = 0; j < tokens.length; j++) {
+                final int maxDoc = last ? leaves.get(j).reader().maxDoc() : firstDoc(tokens[j], minDocs[j], leaves.get(j).reader().maxDoc(), upper + 1);
+                if (searched && maxDoc > minDocs[j])
+                    group.add(new DocRange(leaves.get(j), minDocs[j], maxDoc));
+                minDocs[j] = maxDoc;
+            }
+            if (group.isEmpty() == false)
+                groups.add(group);
+        }
+        if (groups.isEmpty())
+            groups.add(new ArrayList<>());
+        return groups;
+    }
+
+    /**
+     * @return the first doc in [minDoc, maxDoc) having a token greater or equal to token, or maxDoc.
+     * Documents without token are sorted as token 0, like the {@link TokenFieldMapper#INDEX_SORT} missing value.
+     */
+    static int firstDoc(SortedNumericDocValues tokens, int minDoc, int maxDoc, long token) {
+        int low = minDoc;
+        int high = maxDoc;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            tokens.setDocument(mid);
+            final long value = tokens.count() == 0 ? 0L : tokens.valueAt(0);
+            if (value < token)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return true if the tokens [lower, upper] intersect one of the (left, right] token ranges, or if tokenRanges is null.
+     */
+    static boolean intersects(long lower, long upper, Collection<Range<Token>> tokenRanges) {
+        if (tokenRanges == null)
+            return true;
+        for (Range<Token> range : tokenRanges) {
+            final long left = (Long) range.left.getTokenValue();
+            final long right = (Long) range.right.getTokenValue();
+            if (left == right) {
+                // partition key search
+                if (lower <= left && left <= upper)
+                    return true;
+            } else if (left > right || (right >= lower && left < upper)) {
+                // wrapping ranges are always searched.
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Search doc id ranges with a weight shared by concurrent groups, as {@link IndexSearcher#search(List, Weight, Collector)}.
+     */
+    static void search(List<DocRange> ranges, Weight weight, Collector collector) throws IOException {
+        for (DocRange range : ranges) {
+            final LeafCollector leafCollector;
+            try {
+                leafCollector = collector.getLeafCollector(range.leaf);
+            } catch (CollectionTerminatedException e) {
+                // there is no doc of interest in this reader context
+                continue;
+            }
+            final BulkScorer scorer = weight.bulkScorer(range.leaf);
+            if (scorer != null) {
+                try {
+                    scorer.score(leafCollector, range.leaf.reader().getLiveDocs(), range.minDoc, range.maxDoc);
+                } catch (CollectionTerminatedException e) {
+                    // collection was terminated prematurely
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute the query over segment groups or token sub-shards.
+     * @return whether the rescoring phase should be executed
+     */
+    static boolean execute(SearchContext searchContext, ContextIndexSearcher searcher, int maxGroups) throws Exception {
+        final QuerySearchResult queryResult = searchContext.queryResult();
+        final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        final int subShards = tokenSubShards(searchContext.indexShard().indexSettings(), leaves);
+        final List<List<DocRange>> groups = subShards > 1 ?
+            tokenSubShardGroups(leaves, subShards, searchContext.request().tokenRanges()) :
+            segmentGroups(leaves, maxGroups);
+        final int numGroups = groups.size();
+
+        final int totalNumDocs = searcher.getIndexReader().numDocs();
+        int numDocs = Math.max(1, Math.min(searchContext.from() + searchContext.size(), totalNumDocs));
+        boolean rescore = false;
+        DocValueFormat[] sortValueFormats = new DocValueFormat[0];
+        final SortAndFormats sort = searchContext.sort();
+        if (searchContext.size() > 0) {
+            if (sort != null) {
+                sortValueFormats = sort.formats;
+            } else {
+                rescore = !searchContext.rescore().isEmpty();
+                for (RescoreSearchContext rescoreContext : searchContext.rescore()) {
+                    numDocs = Math.max(rescoreContext.window(), numDocs);
+                }
+            }
+        }
+
+        final Weight postFilterWeight = searchContext.parsedPostFilter() == null ? null :
+            searcher.createNormalizedWeight(searchContext.parsedPostFilter().query(), false);
+        final boolean timeoutSet = searchContext.timeout() != null && !searchContext.timeout().equals(SearchService.NO_TIMEOUT);
+
+        // build collectors and aggregators of each group on the searching thread.
+        final Collector[] topCollectors = new Collector[numGroups];
+        final List<List<Aggregator>> groupAggregators = new ArrayList<>(numGroups);
+        final Collector[] collectors = new Collector[numGroups];
+        boolean needsScores = false;
+        for (int i = 0; i < numGroups; i++) {
+            final Collector topCollector;
+            if (searchContext.size() == 0) {
+                topCollector = new TotalHitCountCollector();
+            } else if (sort != null) {
+                topCollector = TopFieldCollector.create(sort.sort, numDocs, (FieldDoc) searchContext.searchAfter(), true,
+                    searchContext.trackScores(), searchContext.trackScores());
+            } else {
+                topCollector = TopScoreDocCollector.create(numDocs);
+            }
+            topCollectors[i] = topCollector;
+            Collector collector = topCollector;
+            if (postFilterWeight != null) {
+                collector = new FilteredCollector(collector, postFilterWeight);
+            }
+            final List<Aggregator> aggregators = new ArrayList<>();
+            if (searchContext.aggregations() != null) {
+                for (Aggregator aggregator : searchContext.aggregations().factories().createTopLevelAggregators()) {
+                    if (aggregator instanceof GlobalAggregator == false) {
+                        if (subShards > 1 && aggregator instanceof RangeAggregator) {
+                            // a sub-shard only collects a doc id range of each segment.
+                            ((RangeAggregator) aggregator).collectDocRanges();
+                        }
+                        aggregators.add(aggregator);
+                    }
+                }
+                if (aggregators.isEmpty() == false) {
+                    BucketCollector bucketCollector = BucketCollector.wrap(aggregators);
+                    bucketCollector.preCollection();
+                    collector = MultiCollector.wrap(collector, bucketCollector);
+                }
+            }
+            groupAggregators.add(aggregators);
+            if (searchContext.minimumScore() != null) {
+                collector = new MinimumScoreCollector(collector, searchContext.minimumScore());
+            }
+            if (timeoutSet) {
+                collector = Lucene.wrapTimeLimitingCollector(collector, searchContext.timeEstimateCounter(), searchContext.timeout().millis());
+            }
+            collector = new CancellableCollector(searchContext.getTask()::isCancelled, searchContext.lowLevelCancellation(), collector);
+            collectors[i] = collector;
+            needsScores |= collector.needsScores();
+        }
+
+        final Weight weight = searcher.createNormalizedWeight(searchContext.query(), needsScores);
+        final AtomicInteger nextGroup = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(numGroups);
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Runnable worker = () -> {
+            int i;
+            while ((i = nextGroup.getAndIncrement()) < numGroups) {
+                try {
+                    search(groups.get(i), weight, collectors[i]);
+                } catch (TimeLimitingCollector.TimeExceededException e) {
+                    assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+                    timedOut.set(true);
+                } catch (Exception e) {
+                    if (failure.compareAndSet(null, e) == false)
+                        failure.get().addSuppressed(e);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        };
+        try {
+            final ThreadPool threadPool = searchContext.indexShard().indexService().getThreadPool();
+            final Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
+            final int workers = Math.min(numGroups, threadPool.info(ThreadPool.Names.SEARCH).getMax());
+            for (int i = 1; i < workers; i++) {
+                try {
+                    executor.execute(worker);
+                } catch (EsRejectedExecutionException e) {
+                    break; // remaining groups are searched by this thread.
+                }
+            }
+            worker.run();
+            latch.await();
+        } finally {
+            searchContext.clearReleasables(SearchContext.Lifetime.COLLECTION);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        queryResult.searchTimedOut(timedOut.get());
+
+        // merge top docs, segment groups are ordered by doc id.
+        final TopDocs topDocs;
+        if (searchContext.size() == 0) {
+            int totalHits = 0;
+            for (Collector topCollector : topCollectors)
+                totalHits += ((TotalHitCountCollector) topCollector).getTotalHits();
+            topDocs = new TopDocs(totalHits, Lucene.EMPTY_SCORE_DOCS, 0);
+        } else if (sort != null) {
+            final TopFieldDocs[] groupTopDocs = new TopFieldDocs[numGroups];
+            for (int i = 0; i < numGroups; i++)
+                groupTopDocs[i] = ((TopFieldCollector) topCollectors[i]).topDocs();
+            topDocs = TopDocs.merge(sort.sort, 0, numDocs, groupTopDocs, true);
+        } else {
+            final TopDocs[] groupTopDocs = new TopDocs[numGroups];
+            for (int i = 0; i < numGroups; i++)
+                groupTopDocs[i] = ((TopDocsCollector<?>) topCollectors[i]).topDocs();
+            topDocs = TopDocs.merge(0, numDocs, groupTopDocs, true);
+        }
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            scoreDoc.shardIndex = -1; // doc ids are shard level.
+        }
+        queryResult.topDocs(topDocs, sortValueFormats);
+
+        // reduce aggregations of the groups, global aggregators are executed by the aggregation phase.
+        if (searchContext.aggregations() != null) {
+            final List<InternalAggregations> aggregationsList = new ArrayList<>(numGroups);
+            for (List<Aggregator> aggregators : groupAggregators) {
+                final List<InternalAggregation> aggregations = new ArrayList<>(aggregators.size());
+                for (Aggregator aggregator : aggregators) {
+                    aggregator.postCollection();
+                    aggregations.add(aggregator.buildAggregation(0));
+                }
+                aggregationsList.add(new InternalAggregations(aggregations));
+            }
+            final InternalAggregation.ReduceContext reduceContext = new InternalAggregation.ReduceContext(searchContext.bigArrays(),
+                searchContext.getQueryShardContext().getScriptService(), false);
+            searchContext.aggregations().groupsAggregations(InternalAggregations.reduce(aggregationsList, reduceContext));
+        }
+        return rescore;
+    }
+}
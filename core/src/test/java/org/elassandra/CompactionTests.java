@@ -21,13 +21,17 @@ import com.codahale.metrics.MetricFilter;
 
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.commitlog.CommitLogPosition;
 import org.apache.cassandra.metrics.CassandraMetricsRegistry;
 import org.apache.cassandra.service.StorageService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
@@ -35,6 +39,8 @@ import java.util.Map;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
 
 /**
  * Elassandra SSTable compactions tests.
@@ -313,4 +319,173 @@ public class CompactionTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.wildcardQuery("c","*")).get().getHits().getTotalHits(), equalTo(2*N));
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.wildcardQuery("b","*")).get().getHits().getTotalHits(), equalTo(N));
     }
+
+    @Test
+    public void expiredTtlSweeperTest() throws Exception {
+        createIndex("test", Settings.builder()
+                .put(IndexMetaData.SETTING_INDEX_TTL_EXPIRY, true)
+                .put(IndexMetaData.SETTING_TTL_EXPIRY_INTERVAL, "1s")
+                .build());
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        
+        for(int i=0 ; i < 10; i++) {
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?) USING TTL 2", i, "x"+i);
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", 100+i, "y"+i);
+        }
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L));
+        
+        // expired documents are filtered out, and then purged without compaction.
+        Thread.sleep(3000);
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(10L));
+        assertBusy(() -> {
+            client().admin().indices().prepareRefresh("test").get();
+            assertThat(client().admin().indices().prepareStats("test").setDocs(true).get().getTotal().getDocs().getCount(), equalTo(10L));
+        });
+    }
+    
+    @Test
+    public void coalescedFlushTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t2 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t2").setSource("{ \"t2\" : { \"discover\" : \".*\" }}").get());
+        
+        for(int i=0 ; i < 10; i++) {
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+            process(ConsistencyLevel.ONE,"insert into test.t2 (a,b) VALUES (?,?)", i, "y"+i);
+        }
+        StorageService.instance.forceKeyspaceFlush("test");
+        
+        // the Lucene commit records the commitlog position of both tables.
+        IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0);
+        Map<String, String> positions = indexShard.getEngine().getCommitLogPositions();
+        assertThat(positions.containsKey("test.t1"), equalTo(true));
+        assertThat(positions.containsKey("test.t2"), equalTo(true));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L));
+    }
+
+    private static CommitLogPosition commitLogPosition(IndexShard indexShard, String table) throws Exception {
+        String position = indexShard.store().readLastCommittedSegmentsInfo().getUserData().get(Engine.COMMITLOG_POSITION_PREFIX + table);
+        assertThat(position, notNullValue());
+        String[] parts = position.split(":");
+        assertThat(parts.length, equalTo(2));
+        return new CommitLogPosition(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+    
+    @Test
+    public void commitLogPositionTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        
+        for(int i=0 ; i < 10; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+        StorageService.instance.forceKeyspaceFlush("test");
+        
+        // the position is stored in the user data of the Lucene commit, and read back by the engine.
+        IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0);
+        CommitLogPosition first = commitLogPosition(indexShard, "test.t1");
+        assertThat(first, greaterThan(CommitLogPosition.NONE));
+        assertThat(indexShard.getEngine().getCommitLogPositions().get("test.t1"), equalTo(first.segmentId + ":" + first.position));
+        
+        // the next flush moves the position forward.
+        for(int i=10 ; i < 20; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+        StorageService.instance.forceKeyspaceFlush("test");
+        CommitLogPosition second = commitLogPosition(indexShard, "test.t1");
+        assertThat(second, greaterThan(first));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L));
+    }
+    
+    @Test
+    public void commitLogPositionReopenTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        
+        for(int i=0 ; i < 10; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+        StorageService.instance.forceKeyspaceFlush("test");
+        CommitLogPosition position = commitLogPosition(getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0), "test.t1");
+        
+        // a new engine reads the position back from the last Lucene commit.
+        assertAcked(client().admin().indices().prepareClose("test").get());
+        assertAcked(client().admin().indices().prepareOpen("test").get());
+        ensureGreen("test");
+        IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0);
+        assertThat(indexShard.getEngine().getCommitLogPositions().get("test.t1"), equalTo(position.segmentId + ":" + position.position));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(10L));
+    }
+    
+    @Test
+    public void updatedTtlRowMarkerTest() throws Exception {
+        createIndex("test", Settings.builder()
+                .put(IndexMetaData.SETTING_INDEX_TTL_EXPIRY, true)
+                .put(IndexMetaData.SETTING_TTL_EXPIRY_INTERVAL, "1s")
+                .build());
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        
+        // the row is kept alive by the row marker of the first insert, when the TTL update has expired.
+        process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (1,'x')");
+        process(ConsistencyLevel.ONE,"update test.t1 USING TTL 2 SET b = 'y' WHERE a = 1");
+        Thread.sleep(3000);
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE a = 1").size(), equalTo(1));
+    }
+    
+    @Test
+    public void metaTtlExpiryTest() throws Exception {
+        createIndex("test", Settings.builder().put(IndexMetaData.SETTING_TTL_EXPIRY_INTERVAL, "1s").build());
+        ensureGreen("test");
+        
+        // index_ttl_expiry enabled by the _meta of the mapping only.
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1")
+                .setSource("{ \"t1\" : { \"discover\" : \".*\", \"_meta\" : { \"index_ttl_expiry\" : true } }}").get());
+        
+        for(int i=0 ; i < 10; i++) {
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?) USING TTL 2", i, "x"+i);
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", 100+i, "y"+i);
+        }
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L));
+        
+        Thread.sleep(3000);
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(10L));
+        assertBusy(() -> {
+            client().admin().indices().prepareRefresh("test").get();
+            assertThat(client().admin().indices().prepareStats("test").setDocs(true).get().getTotal().getDocs().getCount(), equalTo(10L));
+        });
+    }
+    
+    @Test
+    public void shorterTtlRowTest() throws Exception {
+        createIndex("test", Settings.builder()
+                .put(IndexMetaData.SETTING_INDEX_TTL_EXPIRY, true)
+                .put(IndexMetaData.SETTING_TTL_EXPIRY_INTERVAL, "1s")
+                .build());
+        ensureGreen("test");
+        
+        // column c is not indexed, but keeps the row alive.
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, c text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \"^(a|b)$\" }}").get());
+        
+        process(ConsistencyLevel.ONE,"insert into test.t1 (a,b,c) VALUES (1,'x','z') USING TTL 3600");
+        process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (1,'y') USING TTL 2");
+        Thread.sleep(3000);
+        assertThat(process(ConsistencyLevel.ONE,"SELECT * FROM test.t1 WHERE a = 1").size(), equalTo(1));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(1L));
+    }
 }
@@ -22,6 +22,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.IndexingStats;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
@@ -352,6 +353,46 @@ curl -XGET "http://$NODE:9200/test/timeseries/_search?pretty=true&q=meta.region:
         assertThat(((Map)source.get("meta")).get("region"), equalTo("west"));
     }
     
+    @Test
+    public void testTimeserieStaticJoinTest() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("properties")
+                        .startObject("m").field("type", "keyword").field("cql_collection", "singleton").field("cql_primary_key_order", 0).field("cql_partition_key", true).endObject()
+                        .startObject("t").field("type", "date").field("cql_collection", "singleton").field("cql_primary_key_order", 1).endObject()
+                        .startObject("v").field("type", "double").field("cql_collection", "singleton").endObject()
+                        .startObject("region").field("type", "keyword").field("cql_collection", "singleton").field("cql_static_column", true).endObject()
+                    .endObject()
+                    .startObject("_meta")
+                        .field("index_static_join",true)
+                    .endObject()
+                .endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("timeseries", mapping));
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, region) VALUES ('server1-cpu', 'west');");
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, region) VALUES ('server2-cpu', 'east');");
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, t, v) VALUES ('server1-cpu', '2016-04-10 13:30', 10);");
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, t, v) VALUES ('server1-cpu', '2016-04-10 13:31', 20);");
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, t, v) VALUES ('server2-cpu', '2016-04-10 13:32', 15);");
+        
+        // static columns are only indexed in static documents.
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.termQuery("region", "west")).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.hasStaticQuery(QueryBuilders.termQuery("region", "west"))).get().getHits().getTotalHits(), equalTo(2L));
+        
+        // updating the static column re-indexes only the static document.
+        process(ConsistencyLevel.ONE,"UPDATE test.timeseries SET region = 'east' WHERE m = 'server1-cpu';");
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.hasStaticQuery(QueryBuilders.termQuery("region", "west"))).get().getHits().getTotalHits(), equalTo(0L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.rangeQuery("v").gte(15))
+                        .filter(QueryBuilders.hasStaticQuery(QueryBuilders.termQuery("region", "east"))))
+                .get().getHits().getTotalHits(), equalTo(2L));
+    }
+    
     @Test
     public void testTimeserieWithIndexedStaticOnlyTest() throws Exception {
         XContentBuilder mapping = XContentFactory.jsonBuilder()
@@ -458,4 +499,37 @@ curl -XGET "http://$NODE:9200/test/timeseries/_search?pretty=true&q=meta.region:
     
     
 
+    @Test
+    public void testBufferedRangeTombstones() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ts WITH REPLICATION = { 'class' : 'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS ts.t1 ( partition text, clustering int, data text, primary key ((partition),clustering) )");
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover",".*").endObject().endObject();
+        assertAcked(client().admin().indices().prepareCreate("ts").addMapping("t1", mapping).get());
+        ensureGreen("ts");
+        
+        for(int i=0; i < 10; i++) {
+            process(ConsistencyLevel.ONE,"INSERT INTO ts.t1 (partition, clustering, data) VALUES (?, ?, ?)", "one", i, "foo");
+            process(ConsistencyLevel.ONE,"INSERT INTO ts.t1 (partition, clustering, data) VALUES (?, ?, ?)", "two", i, "bar");
+        }
+        assertThat(client().prepareSearch().setIndices("ts").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L));
+        
+        // range tombstones are buffered and applied at refresh time
+        process(ConsistencyLevel.ONE,"DELETE FROM ts.t1 WHERE partition = ? AND clustering < ?", "one", 3);
+        process(ConsistencyLevel.ONE,"DELETE FROM ts.t1 WHERE partition = ? AND clustering >= ?", "one", 8);
+        // partition delete on a single type index is a delete by term on _routing
+        process(ConsistencyLevel.ONE,"DELETE FROM ts.t1 WHERE partition = ?", "two");
+        client().admin().indices().prepareRefresh("ts").get();
+        assertThat(client().prepareSearch().setIndices("ts").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(5L));
+        
+        // re-inserted rows must not be removed by a buffered delete.
+        process(ConsistencyLevel.ONE,"DELETE FROM ts.t1 WHERE partition = ? AND clustering > ?", "one", 5);
+        process(ConsistencyLevel.ONE,"INSERT INTO ts.t1 (partition, clustering, data) VALUES (?, ?, ?)", "one", 9, "foo");
+        client().admin().indices().prepareRefresh("ts").get();
+        assertThat(client().prepareSearch().setIndices("ts").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(4L));
+        
+        IndexingStats.Stats stats = client().admin().indices().prepareStats("ts").setIndexing(true).get().getTotal().getIndexing().getTotal();
+        assertThat(stats.getDeleteByQueryCount(), equalTo(4L));
+        assertThat(stats.getDeleteByQueryPending(), equalTo(0L));
+    }
+    
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.service.StorageService;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * CQL search with an es_query expression executed by the elassandra secondary index searcher.
+ */
+public class CqlSearchTests extends ESSingleNodeTestCase {
+    static int N = 500;
+
+    @Test
+    public void cqlSearchTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int, b int, c text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        process(ConsistencyLevel.ONE,"ALTER TABLE test.t1 ADD es_query text");
+        process(ConsistencyLevel.ONE,"ALTER TABLE test.t1 ADD es_options text");
+        for(int i=0 ; i < N; i++) {
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b,c) VALUES (?,?,?)", i, i % 10, "x"+i);
+            if (i == N / 2)
+                StorageService.instance.forceKeyspaceFlush("test","t1");
+        }
+        client().admin().indices().prepareRefresh("test").get();
+
+        long expected = client().prepareSearch().setIndices("test").setTypes("t1").setSize(0)
+                .setQuery(QueryBuilders.termQuery("b", 3)).get().getHits().getTotalHits();
+        assertThat(expected, equalTo((long)N / 10));
+
+        UntypedResultSet rs = process(ConsistencyLevel.ONE, "SELECT a, b FROM test.t1 WHERE es_query='{\"query\":{\"term\":{\"b\":3}}}'");
+        assertThat((long)rs.size(), equalTo(expected));
+        long previousToken = Long.MIN_VALUE;
+        for(UntypedResultSet.Row row : rs) {
+            assertThat(row.getInt("b"), equalTo(3));
+            long token = (Long) StorageService.instance.getTokenMetadata().partitioner.getToken(row.getBlob("a")).getTokenValue();
+            assertThat(token >= previousToken, equalTo(true));
+            previousToken = token;
+        }
+
+        // CQL limit
+        rs = process(ConsistencyLevel.ONE, "SELECT a FROM test.t1 WHERE es_query='{\"query\":{\"term\":{\"b\":3}}}' LIMIT 7");
+        assertThat(rs.size(), equalTo(7));
+
+        // restricted to a partition
+        rs = process(ConsistencyLevel.ONE, "SELECT a FROM test.t1 WHERE es_query='{\"query\":{\"term\":{\"b\":3}}}' AND a = 13");
+        assertThat(rs.size(), equalTo(1));
+        rs = process(ConsistencyLevel.ONE, "SELECT a FROM test.t1 WHERE es_query='{\"query\":{\"term\":{\"b\":3}}}' AND a = 14");
+        assertThat(rs.size(), equalTo(0));
+
+        // target indices
+        rs = process(ConsistencyLevel.ONE, "SELECT a FROM test.t1 WHERE es_query='{\"query\":{\"match_all\":{}}}' AND es_options='indices=test*'");
+        assertThat(rs.size(), equalTo(N));
+        rs = process(ConsistencyLevel.ONE, "SELECT a FROM test.t1 WHERE es_query='{\"query\":{\"match_all\":{}}}' AND es_options='indices=foo'");
+        assertThat(rs.size(), equalTo(0));
+    }
+}
@@ -35,6 +35,7 @@ import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.mapper.GeoPointFieldMapper;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
@@ -552,6 +553,47 @@ public class CqlTypesTests extends ESSingleNodeTestCase {
         assertThat(resp.getHits().getHits()[0].getSource().get("end"), equalTo("2010-10-10T00:00:00.000Z"));
     }
     
+    // fields written from cell values when _all is disabled.
+    @Test
+    public void testCellWriters() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+        
+        process(ConsistencyLevel.ONE,"CREATE TABLE test.t1 (id int, l bigint, i int, s smallint, d double, f float, ts timestamp, day date, b boolean, k text, PRIMARY KEY (id));");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1")
+                .setSource("{ \"t1\" : { \"discover\" : \".*\", \"_all\": { \"enabled\": false }, \"properties\":{ \"k\":{\"type\":\"keyword\",\"cql_collection\":\"singleton\",\"ignore_above\":4}}}}").get());
+        
+        for(int j=0; j < 10; j++)
+            process(ConsistencyLevel.ONE,"INSERT INTO test.t1 (id, l, i, s, d, f, ts, day, b, k) VALUES (?,?,?,?,?,?,?,?,?,?)", 
+                j, (long)j, j, (short)j, (double)j + 0.5, (float)j + 0.5f, new Date(1500000000000L + j), 
+                SimpleDateSerializer.dateStringToDays("2010-10-10"), j % 2 == 0, (j < 5) ? "k"+j : "long"+j);
+        
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.rangeQuery("l").gte(5)).get().getHits().getTotalHits(), equalTo(5L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("i", 3)).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.rangeQuery("s").lt(3)).get().getHits().getTotalHits(), equalTo(3L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.rangeQuery("d").gt(8.0)).get().getHits().getTotalHits(), equalTo(2L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("f", 2.5f)).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.rangeQuery("ts").gte(1500000000005L)).get().getHits().getTotalHits(), equalTo(5L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("day:2010-10-10")).get().getHits().getTotalHits(), equalTo(10L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("b", true)).get().getHits().getTotalHits(), equalTo(5L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("k", "k3")).get().getHits().getTotalHits(), equalTo(1L));
+        // keywords longer than ignore_above are not indexed.
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.existsQuery("k")).get().getHits().getTotalHits(), equalTo(5L));
+        
+        // doc values
+        SearchResponse resp = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery())
+                .addSort("d", SortOrder.DESC).addSort("k", SortOrder.ASC).get();
+        assertThat(((Number)resp.getHits().getHits()[0].getSortValues()[0]).doubleValue(), equalTo(9.5));
+        assertThat(resp.getHits().getHits()[9].getSortValues()[1], equalTo("k0"));
+        
+        // partial update and column deletion
+        process(ConsistencyLevel.ONE,"UPDATE test.t1 SET l = 100 WHERE id = 1");
+        process(ConsistencyLevel.ONE,"DELETE b FROM test.t1 WHERE id = 2");
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.rangeQuery("l").gte(5)).get().getHits().getTotalHits(), equalTo(6L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("i", 1)).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.termQuery("b", true)).get().getHits().getTotalHits(), equalTo(4L));
+    }
+    
     // see issue #128
     @Test
     public void testFetchMultipleTypes() throws Exception {
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.fetch.FetchPolicy;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Elassandra fetch policy test.
+ */
+public class FetchPolicyTests extends ESSingleNodeTestCase {
+
+    private SearchResponse search(FetchPolicy fetchPolicy) {
+        return client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.matchAllQuery())
+                .addSort("id", SortOrder.ASC).setSize(20).setFetchPolicy(fetchPolicy).get();
+    }
+
+    @Test
+    public void testFetchPolicy() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("ks").addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks");
+
+        for(int i = 0; i < 20; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, name) VALUES (?, ?)", i, "name"+i);
+
+        SearchResponse local = search(FetchPolicy.LOCAL);
+        assertThat(local.getHits().getHits().length, equalTo(20));
+        for (FetchPolicy fetchPolicy : new FetchPolicy[] { FetchPolicy.SPECULATIVE, FetchPolicy.LOCAL_QUORUM }) {
+            SearchResponse resp = search(fetchPolicy);
+            assertThat(resp.getHits().getHits().length, equalTo(20));
+            for(int i = 0; i < 20; i++) {
+                assertThat(resp.getHits().getAt(i).getId(), equalTo(local.getHits().getAt(i).getId()));
+                assertThat(resp.getHits().getAt(i).getSourceAsMap(), equalTo(local.getHits().getAt(i).getSourceAsMap()));
+            }
+        }
+
+        // index level fetch policy
+        assertAcked(client().admin().indices().prepareUpdateSettings("ks").setSettings(Settings.builder().put("index.fetch_policy", "local_quorum").build()));
+        SearchResponse resp = client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.termQuery("name", "name3")).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        assertThat(resp.getHits().getAt(0).getSourceAsMap().get("name"), equalTo("name3"));
+    }
+}
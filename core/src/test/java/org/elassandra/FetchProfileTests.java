@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfileShardResult;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfiler.Step;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Elassandra cassandra fetch profile test.
+ */
+public class FetchProfileTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testCassandraFetchProfile() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("ks").addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks");
+
+        for(int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, name) VALUES (?, ?)", i, "name"+i);
+
+        SearchResponse resp = client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.matchAllQuery()).setProfile(true).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(10L));
+        assertThat(resp.getProfileResults().size(), equalTo(1));
+        ProfileShardResult shardResult = resp.getProfileResults().values().iterator().next();
+        CassandraFetchProfileShardResult fetchProfile = shardResult.getCassandraFetchProfileResult();
+        assertThat(fetchProfile.getCount(Step.PARSE_ELASTIC_ID), equalTo(10L));
+        assertThat(fetchProfile.getCount(Step.EXECUTE_INTERNAL), equalTo(10L));
+        assertThat(fetchProfile.getCount(Step.SOURCE), equalTo(10L));
+        assertThat(fetchProfile.getBytes(Step.SOURCE), greaterThan(0L));
+        assertThat(fetchProfile.getMissingRows(), equalTo(0L));
+
+        // not profiled
+        resp = client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.matchAllQuery()).get();
+        assertThat(resp.getProfileResults().isEmpty(), equalTo(true));
+    }
+}
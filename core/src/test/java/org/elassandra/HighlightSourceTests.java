@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfileShardResult;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfiler.Step;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Elassandra highlighting without _source test, highlighted columns are read from cassandra on demand.
+ */
+public class HighlightSourceTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testHighlightWithoutSource() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, title text, body text)");
+        assertAcked(client().admin().indices().prepareCreate("ks").addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks");
+
+        for(int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, title, body) VALUES (?, ?, ?)", i, "title"+i+" elassandra", "a long body "+i);
+
+        SearchResponse resp = client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.matchQuery("title", "elassandra"))
+                .setFetchSource(false).highlighter(new HighlightBuilder().field("title")).setProfile(true).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(10L));
+        for(int i = 0; i < 10; i++) {
+            assertThat(resp.getHits().getAt(i).getSourceAsString(), nullValue());
+            assertThat(resp.getHits().getAt(i).getHighlightFields().get("title").fragments()[0].string(), containsString("<em>elassandra</em>"));
+        }
+
+        // one cassandra read per hit, for the highlighted column only.
+        ProfileShardResult shardResult = resp.getProfileResults().values().iterator().next();
+        CassandraFetchProfileShardResult fetchProfile = shardResult.getCassandraFetchProfileResult();
+        assertThat(fetchProfile.getCount(Step.EXECUTE_INTERNAL), equalTo(10L));
+    }
+}
@@ -86,6 +86,36 @@ public class IndexBuildTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(2*N));
     }
     
+    // partitions of SSTables are indexed in parallel by the ElasticIndexBuilder, as for streamed SSTables.
+    @Test
+    public void indexMultiSSTableRebuildTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+
+        // close index and write 4 SSTables, each one with N new partitions and N partitions present in all SSTables.
+        assertAcked(client().admin().indices().prepareClose("test").get());
+        int i=1000;
+        for(int k=0; k < 4; k++) {
+            for(int j=0 ; j < N; j++) {
+                i++;
+                process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+                process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", j, "y"+k);
+            }
+            StorageService.instance.forceKeyspaceFlush("test","t1");
+        }
+
+        assertAcked(client().admin().indices().prepareOpen("test").get());
+        ensureGreen("test");
+
+        StorageService.instance.rebuildSecondaryIndex("test", "t1", "elastic_t1_idx");
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(5*N));
+        // partitions present in several SSTables are indexed once.
+        assertThat(client().admin().indices().prepareStats("test").setIndexing(true).get().getTotal().getIndexing().getTotal().getIndexCount(), equalTo(5*N));
+    }
+
     @Test
     public void indexFirstBuildTest() throws Exception {
         createIndex("test");
@@ -16,11 +16,15 @@
 package org.elassandra;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 
 import java.util.Locale;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.index.MessageFormatPartitionFunction;
+import org.elassandra.index.PartitionFunction;
+import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -127,4 +131,208 @@ public class PartitionedIndexTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("fb").setTypes("messages").get().getHits().getTotalHits(), equalTo(1L));
         assertThat(client().prepareSearch().setIndices("fb2").setTypes("messages").get().getHits().getTotalHits(), equalTo(1L));
     }
+    
+    @Test
+    public void multipleIndicesFanoutTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, age int, primary key (name))");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .field("discover", ".*")
+                    .endObject()
+                .endObject();
+        // same mapping => document built once and shared
+        for(int i=0; i < 4; i++) {
+            createIndex("ks_"+i, Settings.builder().put("index.keyspace","ks").build(),"t1", mapping);
+            ensureGreen("ks_"+i);
+        }
+        
+        XContentBuilder mapping2 = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .startObject("properties")
+                            .startObject("name").field("type", "text").field("cql_collection","singleton").endObject()
+                         .endObject()
+                    .endObject()
+                .endObject();
+        createIndex("ks_text", Settings.builder().put("index.keyspace","ks").build(),"t1", mapping2);
+        ensureGreen("ks_text");
+        
+        for(int j=0; j < 100; j++)
+            process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, age) VALUES ('name%d', %d)",j,j));
+        
+        for(int i=0; i < 4; i++) {
+            assertThat(client().prepareSearch().setIndices("ks_"+i).setTypes("t1").setQuery(QueryBuilders.queryStringQuery("*:*")).get().getHits().getTotalHits(), equalTo(100L));
+            assertThat(client().prepareSearch().setIndices("ks_"+i).setTypes("t1").setQuery(QueryBuilders.termQuery("age", 42)).get().getHits().getTotalHits(), equalTo(1L));
+        }
+        assertThat(client().prepareSearch().setIndices("ks_text").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("*:*")).get().getHits().getTotalHits(), equalTo(100L));
+        assertThat(client().prepareSearch().setIndices("ks_text").setTypes("t1").setQuery(QueryBuilders.termQuery("age", 42)).get().getHits().getTotalHits(), equalTo(0L));
+    }
+    
+    @Test
+    public void multipleIndicesFanoutFailureTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, loc text, primary key (name))");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .field("discover", ".*")
+                    .endObject()
+                .endObject();
+        createIndex("ks_0", Settings.builder().put("index.keyspace","ks").build(),"t1", mapping);
+        ensureGreen("ks_0");
+        
+        // a text column mapped as a geo_point, indexed in another document group.
+        XContentBuilder mapping2 = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .startObject("properties")
+                            .startObject("loc").field("type", "geo_point").field("cql_collection","singleton").endObject()
+                         .endObject()
+                    .endObject()
+                .endObject();
+        createIndex("ks_geo", Settings.builder().put("index.keyspace","ks").build(),"t1", mapping2);
+        ensureGreen("ks_geo");
+        
+        process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (name, loc) VALUES ('name1', '41.12,-71.34')");
+        assertThat(client().prepareSearch().setIndices("ks_geo").setTypes("t1").get().getHits().getTotalHits(), equalTo(1L));
+        
+        // an invalid geo_point fails the write, whatever the group indexed in the caller thread.
+        boolean failed = false;
+        try {
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (name, loc) VALUES ('name2', 'invalid')");
+        } catch (Exception e) {
+            failed = true;
+        }
+        assertThat(failed, equalTo(true));
+    }
+    
+    @Test
+    public void multipleIndicesFanoutParseSettingsTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, loc text, primary key (name))");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .startObject("properties")
+                            .startObject("loc").field("type", "geo_point").field("cql_collection","singleton").endObject()
+                         .endObject()
+                    .endObject()
+                .endObject();
+        // same mapping, but only ks_a ignores malformed values, so documents are not shared.
+        createIndex("ks_a", Settings.builder().put("index.keyspace","ks").put("index.mapping.ignore_malformed", true).build(),"t1", mapping);
+        createIndex("ks_b", Settings.builder().put("index.keyspace","ks").build(),"t1", mapping);
+        ensureGreen("ks_a", "ks_b");
+        
+        process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (name, loc) VALUES ('name1', '41.12,-71.34')");
+        assertThat(client().prepareSearch().setIndices("ks_a").setTypes("t1").get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("ks_b").setTypes("t1").get().getHits().getTotalHits(), equalTo(1L));
+        
+        boolean failed = false;
+        try {
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (name, loc) VALUES ('name2', 'invalid')");
+        } catch (Exception e) {
+            failed = true;
+        }
+        assertThat(failed, equalTo(true));
+    }
+    
+    @Test
+    public void datePartitionFunctionTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, ts timestamp, primary key (name))");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .field("discover", ".*")
+                    .endObject()
+                .endObject();
+        
+        // MessageFormat formats dates in the JVM default timezone.
+        java.text.SimpleDateFormat dayFormat = new java.text.SimpleDateFormat("yyyy.MM.dd", Locale.ROOT);
+        long day = 24 * 3600 * 1000L;
+        long start = dayFormat.parse("2017.01.01").getTime();
+        for(int i=0; i < 5; i++) {
+            String index = "ks_" + dayFormat.format(new java.util.Date(start + i * day));
+            createIndex(index, Settings.builder().put("index.keyspace","ks")
+                    .put("index.partition_function", "byday ks_{0,date,yyyy.MM.dd} ts")
+                    .put("index.partition_function_class", "org.elassandra.index.MessageFormatPartitionFunction")
+                    .build(),"t1", mapping);
+            ensureGreen(index);
+        }
+        // rows in the same day share the cached target index.
+        for(int i=0; i < 5; i++) {
+            for(int j=0; j <= i; j++)
+                process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, ts) VALUES ('name%d-%d', %d)", i, j, start + i * day + j * 3600 * 1000L));
+        }
+        
+        for(int i=0; i < 5; i++) {
+            String index = "ks_" + dayFormat.format(new java.util.Date(start + i * day));
+            assertThat(client().prepareSearch().setIndices(index).setTypes("t1").setQuery(QueryBuilders.queryStringQuery("*:*")).get().getHits().getTotalHits(), equalTo((long)i+1));
+        }
+    }
+    
+    @Test
+    public void partitionPruningTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, ts timestamp, primary key (name))");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .field("discover", ".*")
+                    .endObject()
+                .endObject();
+        
+        java.text.SimpleDateFormat dayFormat = new java.text.SimpleDateFormat("yyyy.MM.dd", Locale.ROOT);
+        long day = 24 * 3600 * 1000L;
+        long start = dayFormat.parse("2017.01.01").getTime();
+        for(int i=0; i < 10; i++) {
+            String index = "logs_" + dayFormat.format(new java.util.Date(start + i * day));
+            createIndex(index, Settings.builder().put("index.keyspace","ks")
+                    .put("index.partition_function", "byday logs_{0,date,yyyy.MM.dd} ts")
+                    .put("index.partition_function_class", "org.elassandra.index.MessageFormatPartitionFunction")
+                    .build(),"t1", mapping);
+            ensureGreen(index);
+            process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, ts) VALUES ('name%d', %d)", i, start + i * day + 3600 * 1000L));
+        }
+        
+        SearchResponse rsp = client().prepareSearch().setIndices("logs_*").setTypes("t1")
+                .setQuery(QueryBuilders.boolQuery().filter(QueryBuilders.rangeQuery("ts").gte(start + 2 * day).lt(start + 4 * day)))
+                .get();
+        assertThat(rsp.getHits().getTotalHits(), equalTo(2L));
+        assertThat(rsp.getTotalShards(), equalTo(2));
+        
+        // no pruning without a filter on the partition field.
+        rsp = client().prepareSearch().setIndices("logs_*").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get();
+        assertThat(rsp.getHits().getTotalHits(), equalTo(10L));
+        assertThat(rsp.getTotalShards(), equalTo(10));
+    }
+    
+    @Test
+    public void partitionBoundsTest() throws Exception {
+        MessageFormatPartitionFunction function = new MessageFormatPartitionFunction();
+        java.text.SimpleDateFormat dayFormat = new java.text.SimpleDateFormat("yyyy.MM.dd", Locale.ROOT);
+        PartitionFunction.Bounds bounds = function.compile("logs_{0,date,yyyy.MM.dd}").bounds("logs_2017.01.02");
+        assertThat(bounds.date, equalTo(true));
+        assertThat(bounds.lower, equalTo((double) dayFormat.parse("2017.01.02").getTime()));
+        assertThat(bounds.upper, equalTo((double) dayFormat.parse("2017.01.03").getTime() - 1));
+        assertThat(function.compile("logs_{0,date,yyyy.MM}").bounds("logs_2017.01").upper, equalTo((double) dayFormat.parse("2017.02.01").getTime() - 1));
+        assertThat(function.compile("logs_{0,number,#}").bounds("logs_10").lower, equalTo(9.0));
+
+        // patterns missing coarser fields parse to 1970 and must not be pruned.
+        assertThat(function.compile("logs_{0,date,dd}").bounds("logs_02"), nullValue());
+        assertThat(function.compile("logs_{0,date,MM}").bounds("logs_02"), nullValue());
+        assertThat(function.compile("logs_{0,date,yyyy.dd}").bounds("logs_2017.02"), nullValue());
+        assertThat(function.compile("logs_{0,date,EEE}").bounds("logs_Mon"), nullValue());
+        assertThat(function.compile("logs_{0,date,yyyy.ww}").bounds("logs_2017.02"), nullValue());
+        assertThat(function.compile("logs_{0,date,yyyy.DDD}").bounds("logs_2017.032"), nullValue());
+        assertThat(function.compile("logs_{0,date,yyyy.MM.dd.u}").bounds("logs_2017.01.02.1"), nullValue());
+        assertThat(function.compile("logs_{0,choice,0#low|10#high}").bounds("logs_high"), nullValue());
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfileShardResult;
+import org.elasticsearch.search.profile.fetch.CassandraFetchProfiler.Step;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Elassandra row image test, hits are rebuilt from the document without reading cassandra.
+ */
+public class RowImageTests extends ESSingleNodeTestCase {
+
+    private CassandraFetchProfileShardResult fetchProfile(SearchResponse resp) {
+        return resp.getProfileResults().values().iterator().next().getCassandraFetchProfileResult();
+    }
+
+    @Test
+    public void testRowImageFetch() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, name text, cnt bigint, ts timestamp, tags list<text>)");
+        assertAcked(client().admin().indices().prepareCreate("ks").addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        assertAcked(client().admin().indices().prepareCreate("ks_image")
+                .setSettings(Settings.builder().put("index.keyspace", "ks").put("index.index_row_image", true).build())
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks", "ks_image");
+
+        for(int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, name, cnt, ts, tags) VALUES (?, ?, ?, ?, ?)",
+                    i, "name"+i, (long) i, new Date(1500000000000L + i), Arrays.asList("a"+i, "b"+i));
+
+        // no cassandra read, and the same _source as a cassandra read.
+        SearchResponse resp = client().prepareSearch().setIndices("ks_image").setQuery(QueryBuilders.matchAllQuery()).setSize(10).setProfile(true).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(10L));
+        assertThat(fetchProfile(resp).getCount(Step.EXECUTE_INTERNAL), equalTo(0L));
+        assertThat(fetchProfile(resp).getCount(Step.ROW_IMAGE), equalTo(10L));
+        for(SearchHit hit : resp.getHits().getHits()) {
+            SearchResponse expected = client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.termQuery("_id", hit.getId())).get();
+            assertThat(hit.getSourceAsMap(), equalTo(expected.getHits().getAt(0).getSourceAsMap()));
+        }
+
+        // updated row image on update.
+        process(ConsistencyLevel.ONE,"UPDATE ks.t1 SET name = 'updated' WHERE id = 1");
+        resp = client().prepareSearch().setIndices("ks_image").setQuery(QueryBuilders.termQuery("_id", "1")).setProfile(true).get();
+        assertThat(resp.getHits().getAt(0).getSourceAsMap().get("name"), equalTo("updated"));
+        assertThat(fetchProfile(resp).getCount(Step.EXECUTE_INTERNAL), equalTo(0L));
+
+        // no row image when cells have a TTL.
+        process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, name) VALUES (100, 'ttl') USING TTL 3600");
+        resp = client().prepareSearch().setIndices("ks_image").setQuery(QueryBuilders.termQuery("_id", "100")).setProfile(true).get();
+        assertThat(resp.getHits().getAt(0).getSourceAsMap().get("name"), equalTo("ttl"));
+        assertThat(fetchProfile(resp).getCount(Step.EXECUTE_INTERNAL), equalTo(1L));
+
+        // computed fields are read from cassandra.
+        resp = client().prepareSearch().setIndices("ks_image").setQuery(QueryBuilders.termQuery("_id", "2")).addStoredField("_token").setProfile(true).get();
+        assertThat(fetchProfile(resp).getCount(Step.EXECUTE_INTERNAL), equalTo(1L));
+    }
+
+    @Test
+    public void testRowImageStaticColumns() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t2 (m text, t int, v double, region text static, PRIMARY KEY (m, t))");
+        assertAcked(client().admin().indices().prepareCreate("ks")
+                .setSettings(Settings.builder().put("index.index_row_image", true).put("index.index_static_columns", true).build())
+                .addMapping("t2", "{ \"t2\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks");
+
+        process(ConsistencyLevel.ONE,"INSERT INTO ks.t2 (m, t, v, region) VALUES ('server1', 1, 10, 'west')");
+        process(ConsistencyLevel.ONE,"INSERT INTO ks.t2 (m, t, v) VALUES ('server1', 2, 20)");
+
+        // a static-only update does not reindex row documents, static columns are read from cassandra.
+        process(ConsistencyLevel.ONE,"UPDATE ks.t2 SET region = 'east' WHERE m = 'server1'");
+        SearchResponse resp = client().prepareSearch().setIndices("ks").setQuery(QueryBuilders.termQuery("t", 1)).setProfile(true).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        assertThat(resp.getHits().getAt(0).getSourceAsMap().get("region"), equalTo("east"));
+        assertThat(resp.getHits().getAt(0).getSourceAsMap().get("v"), equalTo(10.0));
+        assertThat(fetchProfile(resp).getCount(Step.EXECUTE_INTERNAL), equalTo(1L));
+    }
+}
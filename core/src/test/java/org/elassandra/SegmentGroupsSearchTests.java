@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.search.aggregations.bucket.token.TokenRangeAggregationBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Elassandra concurrent search over segment groups and token sub-shards test.
+ */
+public class SegmentGroupsSearchTests extends ESSingleNodeTestCase {
+
+    private SearchResponse search() {
+        return search("ks");
+    }
+
+    private SearchResponse search(String index) {
+        return client().prepareSearch().setIndices(index).setQuery(QueryBuilders.rangeQuery("id").gte(10))
+                .addSort("id", SortOrder.DESC).setSize(20)
+                .addAggregation(AggregationBuilders.terms("colors").field("color"))
+                .addAggregation(AggregationBuilders.sum("total").field("id"))
+                .get();
+    }
+
+    @Test
+    public void testSegmentGroupsSearch() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, color text)");
+        assertAcked(client().admin().indices().prepareCreate("ks")
+                .setSettings(Settings.builder().put("index.search_segment_groups", 4).build())
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks");
+
+        // one segment per refresh
+        String[] colors = new String[] { "red", "green", "blue" };
+        for(int i = 0; i < 100; i++) {
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, color) VALUES (?, ?)", i, colors[i % colors.length]);
+            if (i % 10 == 9)
+                client().admin().indices().prepareRefresh("ks").get();
+        }
+        assertThat(client().admin().indices().prepareSegments("ks").get().getIndices().get("ks").getShards().get(0).getShards()[0].getSegments().size(), greaterThan(1));
+
+        SearchResponse concurrent = search();
+        assertAcked(client().admin().indices().prepareUpdateSettings("ks").setSettings(Settings.builder().put("index.search_segment_groups", 1).build()));
+        SearchResponse sequential = search();
+
+        assertThat(concurrent.getHits().getTotalHits(), equalTo(90L));
+        assertThat(concurrent.getHits().getTotalHits(), equalTo(sequential.getHits().getTotalHits()));
+        assertThat(concurrent.getHits().getHits().length, equalTo(20));
+        for(int i = 0; i < 20; i++)
+            assertThat(concurrent.getHits().getAt(i).getId(), equalTo(sequential.getHits().getAt(i).getId()));
+
+        Sum concurrentSum = concurrent.getAggregations().get("total");
+        Sum sequentialSum = sequential.getAggregations().get("total");
+        assertThat(concurrentSum.getValue(), equalTo(sequentialSum.getValue()));
+        Terms concurrentTerms = concurrent.getAggregations().get("colors");
+        Terms sequentialTerms = sequential.getAggregations().get("colors");
+        assertThat(concurrentTerms.getBuckets().size(), equalTo(3));
+        for (Terms.Bucket bucket : sequentialTerms.getBuckets())
+            assertThat(concurrentTerms.getBucketByKey(bucket.getKeyAsString()).getDocCount(), equalTo(bucket.getDocCount()));
+    }
+
+    @Test
+    public void testTokenSubShardsSearch() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, color text)");
+        assertAcked(client().admin().indices().prepareCreate("ks")
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        assertAcked(client().admin().indices().prepareCreate("ks_sub")
+                .setSettings(Settings.builder().put("index.keyspace", "ks").put("index.token_sub_shards", 4).build())
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks", "ks_sub");
+
+        String[] colors = new String[] { "red", "green", "blue" };
+        for(int i = 0; i < 100; i++) {
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, color) VALUES (?, ?)", i, colors[i % colors.length]);
+            if (i % 10 == 9)
+                client().admin().indices().prepareRefresh("ks", "ks_sub").get();
+        }
+
+        SearchResponse subShards = search("ks_sub");
+        SearchResponse sequential = search("ks");
+
+        assertThat(subShards.getHits().getTotalHits(), equalTo(90L));
+        assertThat(subShards.getHits().getTotalHits(), equalTo(sequential.getHits().getTotalHits()));
+        assertThat(subShards.getHits().getHits().length, equalTo(20));
+        for(int i = 0; i < 20; i++)
+            assertThat(subShards.getHits().getAt(i).getId(), equalTo(sequential.getHits().getAt(i).getId()));
+
+        Sum subShardsSum = subShards.getAggregations().get("total");
+        Sum sequentialSum = sequential.getAggregations().get("total");
+        assertThat(subShardsSum.getValue(), equalTo(sequentialSum.getValue()));
+        Terms subShardsTerms = subShards.getAggregations().get("colors");
+        Terms sequentialTerms = sequential.getAggregations().get("colors");
+        for (Terms.Bucket bucket : sequentialTerms.getBuckets())
+            assertThat(subShardsTerms.getBucketByKey(bucket.getKeyAsString()).getDocCount(), equalTo(bucket.getDocCount()));
+    }
+
+    @Test
+    public void testTokenSubShardsReopen() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, color text)");
+        assertAcked(client().admin().indices().prepareCreate("ks")
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        assertAcked(client().admin().indices().prepareCreate("ks_sub")
+                .setSettings(Settings.builder().put("index.keyspace", "ks").put("index.token_sub_shards", 4).build())
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks", "ks_sub");
+
+        String[] colors = new String[] { "red", "green", "blue" };
+        for(int i = 0; i < 50; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, color) VALUES (?, ?)", i, colors[i % colors.length]);
+        client().admin().indices().prepareFlush("ks", "ks_sub").get();
+
+        // reopen sorted segments with the same index sort, then write new segments along.
+        assertAcked(client().admin().indices().prepareClose("ks", "ks_sub").get());
+        assertAcked(client().admin().indices().prepareOpen("ks", "ks_sub").get());
+        ensureGreen("ks", "ks_sub");
+        assertThat(client().admin().indices().prepareGetSettings("ks_sub").get().getSetting("ks_sub", "index.token_sub_shards"), equalTo("4"));
+
+        for(int i = 50; i < 100; i++) {
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, color) VALUES (?, ?)", i, colors[i % colors.length]);
+            if (i % 10 == 9)
+                client().admin().indices().prepareRefresh("ks", "ks_sub").get();
+        }
+
+        SearchResponse subShards = search("ks_sub");
+        SearchResponse sequential = search("ks");
+        assertThat(subShards.getFailedShards(), equalTo(0));
+        assertThat(subShards.getHits().getTotalHits(), equalTo(90L));
+        assertThat(subShards.getHits().getTotalHits(), equalTo(sequential.getHits().getTotalHits()));
+        for(int i = 0; i < 20; i++)
+            assertThat(subShards.getHits().getAt(i).getId(), equalTo(sequential.getHits().getAt(i).getId()));
+    }
+
+    @Test
+    public void testTokenSubShardsTokenRangeAggregation() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int PRIMARY KEY, color text)");
+        assertAcked(client().admin().indices().prepareCreate("ks")
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        assertAcked(client().admin().indices().prepareCreate("ks_sub")
+                .setSettings(Settings.builder().put("index.keyspace", "ks").put("index.token_sub_shards", 4).build())
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks", "ks_sub");
+
+        for(int i = 0; i < 100; i++) {
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, color) VALUES (?, 'red')", i);
+            if (i % 10 == 9)
+                client().admin().indices().prepareRefresh("ks", "ks_sub").get();
+        }
+
+        // match_all keeps segment level counting, which must be restricted to the doc range of each sub-shard.
+        for(String index : new String[] { "ks", "ks_sub" }) {
+            SearchResponse rsp = client().prepareSearch().setIndices(index).setQuery(QueryBuilders.matchAllQuery()).setSize(1)
+                    .addAggregation(new TokenRangeAggregationBuilder("halves").field("_token")
+                            .addRange(Long.MIN_VALUE, 0).addRange(0, Long.MAX_VALUE))
+                    .addAggregation(new TokenRangeAggregationBuilder("overlapping").field("_token")
+                            .addRange(Long.MIN_VALUE, Long.MAX_VALUE).addRange(Long.MIN_VALUE, 0))
+                    .get();
+            assertThat(rsp.getHits().getTotalHits(), equalTo(100L));
+            Range halves = rsp.getAggregations().get("halves");
+            assertThat(halves.getBuckets().get(0).getDocCount() + halves.getBuckets().get(1).getDocCount(), equalTo(100L));
+            Range overlapping = rsp.getAggregations().get("overlapping");
+            assertThat(overlapping.getBuckets().get(0).getDocCount() + overlapping.getBuckets().get(1).getDocCount(),
+                    equalTo(100L + halves.getBuckets().get(0).getDocCount()));
+        }
+    }
+}
@@ -31,7 +31,9 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.snapshot.LuceneSnapshot;
 import org.elasticsearch.common.io.PathUtils;
+import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -174,4 +176,42 @@ public class SnapshotTests extends ESSingleNodeTestCase {
         Thread.sleep(3000);
         assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("*:*")).get().getHits().getTotalHits(), equalTo(1000L));
     }
+    
+    @Test
+    public void incrementalSnapshotTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, age int, primary key (name))");
+        
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover", ".*").endObject().endObject();
+        createIndex("ks", Settings.builder().put("index.snapshot_with_sstable",true).build(),"t1", mapping);
+        ensureGreen("ks");
+        Index index = resolveIndex("ks");
+        
+        for(long i=0; i < 1000; i++)
+           process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, age) VALUES ('name%d', %d)",i,i));
+        StorageService.instance.takeSnapshot("snap1", "ks");
+        for(long i=1000; i < 1100; i++)
+            process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, age) VALUES ('name%d', %d)",i,i));
+        StorageService.instance.takeSnapshot("snap2", "ks");
+        
+        // snap2 shares the segments of snap1
+        String dataLocation = DatabaseDescriptor.getAllDataFileLocations()[0];
+        Path snapshotIndex = PathUtils.get(dataLocation+"/elasticsearch.data/nodes/0/snapshots/"+ index.getUUID());
+        LuceneSnapshot snap1 = LuceneSnapshot.readManifest(snapshotIndex.resolve("snap1"));
+        LuceneSnapshot snap2 = LuceneSnapshot.readManifest(snapshotIndex.resolve("snap2"));
+        assertThat(snap1.newBytes(), equalTo(snap1.totalBytes()));
+        assertThat(snap2.newBytes() < snap2.totalBytes(), equalTo(true));
+        
+        // restore snap1
+        process(ConsistencyLevel.ONE,"TRUNCATE ks.t1");
+        assertAcked(client().admin().indices().prepareClose("ks").get());
+        UUID cfId = Schema.instance.getCFMetaData("ks", "t1").cfId;
+        restoreSSTable(dataLocation, "ks", "t1", cfId, cfId, "snap1");
+        LuceneSnapshot.restore(snapshotIndex.resolve("snap1"), PathUtils.get(dataLocation+"/elasticsearch.data/nodes/0/indices/" + index.getUUID() + "/0/index/"), Loggers.getLogger(SnapshotTests.class));
+        
+        StorageService.instance.loadNewSSTables("ks", "t1");
+        assertAcked(client().admin().indices().prepareOpen("ks").get());
+        ensureGreen("ks");
+        assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("*:*")).get().getHits().getTotalHits(), equalTo(1000L));
+    }
 }
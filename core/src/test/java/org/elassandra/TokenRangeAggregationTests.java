@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.service.StorageService;
+import org.elassandra.search.aggregations.bucket.token.TokenRangeAggregationBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.bucket.range.Range;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Token range aggregation tests, with and without per-document collection.
+ */
+public class TokenRangeAggregationTests extends ESSingleNodeTestCase {
+    static long N = 1000;
+
+    @Test
+    public void tokenRangeAggregationTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        for(int i=0 ; i < N; i++) {
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+            if (i == N / 2)
+                StorageService.instance.forceKeyspaceFlush("test","t1");
+        }
+        StorageService.instance.forceKeyspaceFlush("test","t1");
+
+        long[] bounds = new long[] { Long.MIN_VALUE, -4611686018427387904L, 0L, 4611686018427387904L, Long.MAX_VALUE };
+        TokenRangeAggregationBuilder agg = new TokenRangeAggregationBuilder("tokens").field("_token");
+        for(int i = 0; i < bounds.length - 1; i++)
+            agg.addRange(bounds[i], bounds[i+1]);
+
+        // match_all query, documents counted per segment.
+        SearchResponse rsp = client().prepareSearch().setIndices("test").setTypes("t1").setSize(0).addAggregation(agg).get();
+        Range tokens = rsp.getAggregations().get("tokens");
+        long total = 0;
+        for(int i = 0; i < bounds.length - 1; i++) {
+            long expected = client().prepareSearch().setIndices("test").setTypes("t1").setSize(0)
+                    .setQuery(QueryBuilders.rangeQuery("_token").gte(bounds[i]).lt(bounds[i+1])).get().getHits().getTotalHits();
+            assertThat(tokens.getBuckets().get(i).getDocCount(), equalTo(expected));
+            total += tokens.getBuckets().get(i).getDocCount();
+        }
+        assertThat(total, equalTo(N));
+
+        // filtered query, documents collected one by one.
+        rsp = client().prepareSearch().setIndices("test").setTypes("t1").setSize(0)
+                .setQuery(QueryBuilders.rangeQuery("a").lt(N / 2)).addAggregation(agg).get();
+        tokens = rsp.getAggregations().get("tokens");
+        total = 0;
+        for(Range.Bucket bucket : tokens.getBuckets())
+            total += bucket.getDocCount();
+        assertThat(total, equalTo(N / 2));
+
+        // a single range covering all segments.
+        rsp = client().prepareSearch().setIndices("test").setTypes("t1").setSize(0)
+                .addAggregation(new TokenRangeAggregationBuilder("all").field("_token").addRange(Long.MIN_VALUE, Long.MAX_VALUE)).get();
+        tokens = rsp.getAggregations().get("all");
+        assertThat(tokens.getBuckets().get(0).getDocCount(), equalTo(N));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.elassandra.index.search.TokenRangesService;
+import org.elassandra.search.TokenRangeScan;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Token range sliced scroll tests.
+ */
+public class TokenRangeScanTests extends ESSingleNodeTestCase {
+    static long N = 1000;
+
+    @Test
+    public void sliceTokenRangesTest() throws Exception {
+        List<Range<Token>> ranges = Arrays.asList(
+                new Range<Token>(new LongToken(-100), new LongToken(-50)),
+                new Range<Token>(new LongToken(0), new LongToken(150)));
+
+        // 200 tokens split in 4 contiguous slices of 50 tokens.
+        assertThat(TokenRangesService.sliceTokenRanges(ranges, 0, 4), equalTo(Arrays.asList(new Range<Token>(new LongToken(-100), new LongToken(-50)))));
+        assertThat(TokenRangesService.sliceTokenRanges(ranges, 1, 4), equalTo(Arrays.asList(new Range<Token>(new LongToken(0), new LongToken(50)))));
+        assertThat(TokenRangesService.sliceTokenRanges(ranges, 3, 4), equalTo(Arrays.asList(new Range<Token>(new LongToken(100), new LongToken(150)))));
+
+        // a slice across two ranges
+        assertThat(TokenRangesService.sliceTokenRanges(ranges, 0, 2), equalTo(Arrays.asList(
+                new Range<Token>(new LongToken(-100), new LongToken(-50)),
+                new Range<Token>(new LongToken(0), new LongToken(50)))));
+
+        // full ring
+        assertThat(TokenRangesService.sliceTokenRanges(null, 0, 2), equalTo(Arrays.asList(new Range<Token>(new LongToken(Long.MIN_VALUE), new LongToken(-1)))));
+        assertThat(TokenRangesService.sliceTokenRanges(null, 1, 2), equalTo(Arrays.asList(new Range<Token>(new LongToken(-1), new LongToken(Long.MAX_VALUE)))));
+    }
+
+    @Test
+    public void tokenRangeScanTest() throws Exception {
+        createIndex("test");
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}").get());
+        for(int i=0 ; i < N; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x"+i);
+
+        // each slice is sorted by token
+        long total = 0;
+        for(int id=0; id < 4; id++) {
+            SearchHit[] hits = client().prepareSearch().setIndices("test").setTypes("t1").setScroll(TimeValue.timeValueMinutes(1))
+                .setQuery(QueryBuilders.matchAllQuery()).setTokenRangeSlice(id, 4).setSize((int) N).get().getHits().getHits();
+            for(int j=1; j < hits.length; j++)
+                assertThat(((Number) hits[j].getSortValues()[0]).longValue(), greaterThan(((Number) hits[j-1].getSortValues()[0]).longValue()));
+            total += hits.length;
+        }
+        assertThat(total, equalTo(N));
+
+        // scroll all slices in parallel
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        SearchRequest request = client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).setSize(100).request();
+        long hits = new TokenRangeScan(client(), request, 3, TimeValue.timeValueMinutes(1)).execute(page -> {
+            for(SearchHit hit : page)
+                ids.add(hit.getId());
+        });
+        assertThat(hits, equalTo(N));
+        assertThat((long) ids.size(), equalTo(N));
+    }
+}
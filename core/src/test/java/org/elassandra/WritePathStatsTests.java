@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.index.WritePathMetrics.Counter;
+import org.elassandra.index.WritePathMetrics.Stage;
+import org.elassandra.index.WritePathStats;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+/**
+ * Elassandra write path node stats test.
+ */
+public class WritePathStatsTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testWritePathStats() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'NetworkTopologyStrategy', 'DC1': '1'}");
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (id int, c int, a text, b text, PRIMARY KEY (id, c))");
+        assertAcked(client().admin().indices().prepareCreate("ks").setSettings(Settings.builder().put("index.synchronous_refresh", true).build())
+                .addMapping("t1", "{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON));
+        ensureGreen("ks");
+
+        for(int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (id, c, a, b) VALUES (?, ?, ?, ?)", i, i, "a"+i, "b"+i);
+        // partial update, missing column b read before write.
+        process(ConsistencyLevel.ONE,"UPDATE ks.t1 SET a = 'x' WHERE id = 0 AND c = 0");
+        process(ConsistencyLevel.ONE,"DELETE FROM ks.t1 WHERE id = 1");
+
+        NodesStatsResponse response = client().admin().cluster().prepareNodesStats().clear().elassandra(true).get();
+        assertThat(response.getNodes().size(), equalTo(1));
+        WritePathStats stats = response.getNodes().get(0).getWritePathStats();
+        WritePathStats.IndexStats indexStats = stats.getIndices().get("ks");
+        assertThat(indexStats.getCount(Counter.INDEXED), equalTo(11L));
+        assertThat(indexStats.getCount(Counter.REREAD), equalTo(1L));
+        assertThat(indexStats.getLatency(Stage.INDEX).getCount(), equalTo(11L));
+        assertThat(indexStats.getLatency(Stage.READ_BEFORE_WRITE).getCount(), equalTo(1L));
+        assertThat(indexStats.getLatency(Stage.DELETE_BY_QUERY).getCount(), equalTo(1L));
+        assertThat(indexStats.getLatency(Stage.REFRESH).getCount(), greaterThan(0L));
+
+        // not requested
+        response = client().admin().cluster().prepareNodesStats().clear().get();
+        assertThat(response.getNodes().get(0).getWritePathStats() == null, equalTo(true));
+    }
+}
@@ -275,6 +275,7 @@ public class SearchModuleTests extends ModuleTestCase {
             "geo_polygon",
             "geo_shape",
             "geohash_cell",
+            "has_static",
             "ids",
             "indices",
             "match",